@@ -53,21 +53,52 @@
  *     parameters' units:   [none] [deg] [deg] [ft] [deg] [knot] [fpm] [s]
  *
  *     2nd.
- *     The severity of each run with minimum horizontal, minim  vertical and 
- *     other data is written directly to the terminal. The format is comma 
- *     separated values.
+ *     A summary of the runs (mean, standard deviation, extrema and quantiles
+ *     of the maximum severity, minimum horizontal and vertical distances and
+ *     implementation delay, and a histogram of the severity) is written
+ *     directly to the terminal. The severity of each run with minimum horizontal,
+ *     minim  vertical and other data can be written to a file of comma
+ *     separated values (--csv), or to a binary file (--records).
  *   
  *     Examples of usage:
  *     java SimDaidalus_2_3_1_wind --conf sim.conf scenario_1.ic
  *     java SimDaidalus_2_3_1_wind --conf sim.conf scenario_1.ic > scenario_1_severity.data
+ *     java BatchSimDaidalus_2_3_1 --threads 8 --runs 100000 --conf sim.conf scenario_1.ic
+ *     java BatchSimDaidalus_2_3_1 --conf sim.conf --csv scenario_1_severity.data scenario_1.ic
+ *     java BatchSimDaidalus_2_3_1 --estimate p-severity:20 --ci-width 0.002 --runs 1000000 scenario_1.ic
+ *
+ *     With --estimate and --ci-width, runs are simulated until the 95% confidence
+ *     interval of the estimate is narrow enough, instead of a fixed number of runs.
+ *     For rare events, --importance draws the perturbations of the initial state
+ *     from wider distributions and weights the runs by their likelihood ratio.
+ *
+ *     The runs can be simulated on several threads (--threads). Each run draws its
+ *     random values from its own streams, derived from the seed (--seed) and the run
+ *     number, and starts from a fresh copy of the Daidalus object, so the results are
+ *     the same, and in the same order, whatever the number of threads.
  *     
  */
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gov.nasa.larcfm.Util.*;
 
@@ -75,8 +106,6 @@ import gov.nasa.larcfm.ACCoRD.*;
 
 public class BatchSimDaidalus_2_3_1 {
 
-    static Optional<Detection3D> detector;
-    
     static void printHelpMsg() {
 	System.out.println("Generates a file in \"daa\" format with the states of the aircraft");
 	System.out.println("Usage:");
@@ -86,6 +115,24 @@ public class BatchSimDaidalus_2_3_1 {
 	System.out.println("  --help\n\tPrint this message");
 	System.out.println("  --config <file.txt>\n\tLoad configuration <file.txt>");
 	System.out.println("  --output <file.daa>\n\tOutout file <file.daa>");
+	System.out.println("  --threads <n>\n\tSimulate the runs on <n> threads, the results do not depend on <n> (default: 1)");
+	System.out.println("  --seed <n>\n\tSeed of the random streams of the runs (default: 1)");
+	System.out.println("  --runs <n>\n\tNumber of runs (default: 10000)");
+	System.out.println("  --duration <s>\n\tDuration of each run in seconds (default: 150)");
+	System.out.println("  --wind <knot>\n\tMagnitude of the random direction wind (default: 50)");
+	System.out.println("  --delay <s>\n\tMean of the pilot's implementation delay, Rayleigh distribution (default: 5)");
+	System.out.println("  --sigma-trk <deg>\n\tStandard deviation of the initial track (default: 1)");
+	System.out.println("  --sigma-gs <knot>\n\tStandard deviation of the initial ground speed (default: 5)");
+	System.out.println("  --sigma-vs <fpm>\n\tStandard deviation of the initial vertical speed (default: 25)");
+	System.out.println("  --sigma-pos <m>\n\tStandard deviation of the initial horizontal position (default: 50)");
+	System.out.println("  --sigma-alt <ft>\n\tStandard deviation of the initial altitude (default: 50)");
+	System.out.println("  --early-stop <s>\n\tStop a run when the aircraft have passed the closest point of approach, are diverging, and the regions of the ownship's direction and vertical speed are clear, for <s> seconds");
+	System.out.println("  --estimate <statistic>\n\tEstimate <statistic> with a 95% confidence interval, where <statistic> is p-severity:<pct> (probability that the severity exceeds <pct> %), severity, min-hor, min-vert (mean severity, minimum horizontal and vertical distances), or delay");
+	System.out.println("  --ci-width <w>\n\tSimulate runs until the width of the confidence interval of the estimate is at most <w>, --runs is then the maximum number of runs");
+	System.out.println("  --min-runs <n>\n\tMinimum number of runs before --ci-width can stop the simulation (default: 1000)");
+	System.out.println("  --importance <k>\n\tImportance sampling: draw the perturbations of track, ground speed and position with <k> times their standard deviation and weight the runs of the estimate by their likelihood ratio");
+	System.out.println("  --csv <file.csv>\n\tWrite the severity of each run to <file.csv>");
+	System.out.println("  --records <file.bin>\n\tWrite the binary record of each run to <file.bin>");
 	System.exit(0);
     }
 
@@ -105,20 +152,85 @@ public class BatchSimDaidalus_2_3_1 {
 	String config = null;
 	String scenario = null;
 	String output = null;
+	String csv = null;
+	String records = null;
+	int threads = 1;
+	Parameters params = new Parameters();
 	
 	/* Reading and processing options */
 	int a=0;
-	for (;a < args.length && args[a].startsWith("-"); ++a) {
-	    if (args[a].equals("--help") || args[a].equals("-help") || args[a].equals("-h")) {
-		printHelpMsg();
-	    } else if (args[a].startsWith("--conf") || args[a].startsWith("-conf") || args[a].equals("-c")) {
-		config = args[++a];
-	    } else if (args[a].startsWith("--out") || args[a].startsWith("-out") || args[a].equals("-o")) {
-		output = args[++a];
-	    } else if (args[a].startsWith("-")) {
-		System.err.println("** Error: Invalid option ("+args[a]+")");
-		System.exit(1);
+	try {
+	    for (;a < args.length && args[a].startsWith("-"); ++a) {
+		if (args[a].equals("--help") || args[a].equals("-help") || args[a].equals("-h")) {
+		    printHelpMsg();
+		} else if (args[a].startsWith("--conf") || args[a].startsWith("-conf") || args[a].equals("-c")) {
+		    config = args[++a];
+		} else if (args[a].startsWith("--out") || args[a].startsWith("-out") || args[a].equals("-o")) {
+		    output = args[++a];
+		} else if (args[a].startsWith("--csv") || args[a].startsWith("-csv")) {
+		    csv = args[++a];
+		} else if (args[a].startsWith("--records") || args[a].startsWith("-records")) {
+		    records = args[++a];
+		} else if (args[a].startsWith("--thread") || args[a].startsWith("-thread") || args[a].equals("-t")) {
+		    threads = Math.max(1, Integer.parseInt(args[++a]));
+		} else if (args[a].startsWith("--seed") || args[a].startsWith("-seed")) {
+		    params.seed = Long.parseLong(args[++a]);
+		} else if (args[a].startsWith("--runs") || args[a].startsWith("-runs")) {
+		    params.number_runs = Math.max(1, Integer.parseInt(args[++a]));
+		} else if (args[a].startsWith("--duration") || args[a].startsWith("-duration")) {
+		    params.sim_duration = Math.max(1, Integer.parseInt(args[++a]));
+		} else if (args[a].startsWith("--wind") || args[a].startsWith("-wind")) {
+		    params.wind_speed = Double.parseDouble(args[++a]);
+		} else if (args[a].startsWith("--delay") || args[a].startsWith("-delay")) {
+		    // The mean of a Rayleigh distribution is sigma*sqrt(PI/2).
+		    params.sigma_delay_2 = Double.parseDouble(args[++a])/Math.sqrt(Math.PI/2);
+		} else if (args[a].startsWith("--early-stop") || args[a].startsWith("-early-stop")) {
+		    params.hold_time = Math.max(1, Double.parseDouble(args[++a]));
+		} else if (args[a].startsWith("--estimate") || args[a].startsWith("-estimate")) {
+		    String estimate[] = args[++a].split(":");
+		    params.estimate = estimate[0];
+		    if (estimate.length > 1) {
+			params.threshold = Double.parseDouble(estimate[1]);
+		    }
+		    if (!Estimator.isValid(params.estimate)) {
+			System.err.println("** Error: Invalid estimate ("+args[a]+")");
+			System.exit(1);
+		    }
+		} else if (args[a].startsWith("--ci-width") || args[a].startsWith("-ci-width")) {
+		    params.ci_width = Double.parseDouble(args[++a]);
+		} else if (args[a].startsWith("--min-runs") || args[a].startsWith("-min-runs")) {
+		    params.min_runs = Math.max(1, Integer.parseInt(args[++a]));
+		} else if (args[a].startsWith("--importance") || args[a].startsWith("-importance")) {
+		    params.is_scale = Double.parseDouble(args[++a]);
+		    if (params.is_scale <= 0) {
+			System.err.println("** Error: Invalid importance sampling scale ("+args[a]+")");
+			System.exit(1);
+		    }
+		} else if (args[a].startsWith("--sigma-trk") || args[a].startsWith("-sigma-trk")) {
+		    params.sigma_trk = Units.from("deg", Double.parseDouble(args[++a]));
+		} else if (args[a].startsWith("--sigma-gs") || args[a].startsWith("-sigma-gs")) {
+		    params.sigma_gs = Units.from("knot", Double.parseDouble(args[++a]));
+		} else if (args[a].startsWith("--sigma-vs") || args[a].startsWith("-sigma-vs")) {
+		    params.sigma_vs = Units.from("fpm", Double.parseDouble(args[++a]));
+		} else if (args[a].startsWith("--sigma-alt") || args[a].startsWith("-sigma-alt")) {
+		    params.sigma_alt = Units.from("ft", Double.parseDouble(args[++a]));
+		} else if (args[a].startsWith("--sigma-pos") || args[a].startsWith("-sigma-pos")) {
+		    // The default standard deviations of latitude and longitude are 50 meters.
+		    double sigma_pos = Double.parseDouble(args[++a]);
+		    params.sigma_lat = 0.0000078533533657*sigma_pos/50.0;
+		    params.sigma_lon = 0.0000098334637853*sigma_pos/50.0;
+		} else if (args[a].startsWith("-")) {
+		    System.err.println("** Error: Invalid option ("+args[a]+")");
+		    System.exit(1);
+		}
 	    }
+	} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+	    System.err.println("** Error: Missing or invalid value for option "+args[a-1]);
+	    System.exit(1);
+	}
+	if (params.ci_width > 0 && params.estimate == null) {
+	    System.err.println("** Error: Option --ci-width requires --estimate. Try --help for usage.");
+	    System.exit(1);
 	}
 	if (a+1 != args.length) {
 	    System.err.println("** Error: Expecting exactly one input file. Try --help for usage.");
@@ -126,6 +238,8 @@ public class BatchSimDaidalus_2_3_1 {
 	} 
 	String input = args[a];
 	File file = new File(input);
+	PrintWriter csv_out = null;
+	DataOutputStream records_out = null;
 	if (!file.exists() || !file.canRead()) {
 	    System.err.println("** Error: File "+input+" cannot be read");
 	    System.exit(1);
@@ -139,73 +253,21 @@ public class BatchSimDaidalus_2_3_1 {
 	    out = new PrintWriter(new BufferedWriter(new FileWriter(output)),true);
 	    // System.out.println(" ");
 	    // System.out.println("Writing file "+output+"   ");
+	    if (csv != null) {
+		csv_out = new PrintWriter(new BufferedWriter(new FileWriter(csv)));
+	    }
+	    if (records != null) {
+		records_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(records)));
+		records_out.writeInt(RECORDS_MAGIC);
+		records_out.writeInt(RECORDS_VERSION);
+		records_out.writeLong(params.seed);
+		records_out.writeInt(params.sim_duration);
+	    }
 	} catch (Exception e) {
 	    System.err.println("** Error: "+e);
 	    System.exit(1);
 	}
 	
-	/***** Variable declarations and object construction. *******/
-	/*****                                                 *******/
-	
-	// Time varaibles.
-	double time_ic, time_sim, time_conflict;
-	// Start counting when hor direction is inside band 2 (MID) or 3 (NEAR).
-	double hd_delay_clock = 0.0;
-	// Start counting when ver speed is inside band 2 (MID) or 3 (NEAR).
-	double vs_delay_clock = 0.0;
-	double time_impl_delay;
-
-	// Resolution variables.
-	int hor_dir_region, hor_dir_region_initial, ver_speed_region;
-	double hor_dir_reso_right, hor_dir_reso_left;
-	double ver_speed_reso_up, ver_speed_reso_down;
-	boolean validR, validL;
-	boolean conflict_resolution_mode = false;
-	double time2CPA;
-	Alerter alerter; AlertThresholds athr;
-	double alerting_time_param;
-	
-	// State variables own
-	double trk_own_ic, ver_speed_own_ic;
-	double lat_own_ic,  lon_own_ic,  alt_own_ic, gs_own_ic;
-	double heading_own, heading_own_new, trk_own, trk_own_new;
-	double airspeed_own, gs_own;
-	Velocity velocity_own_ground, velocity_own_air;
-	double initial_heading = 0.0;
-	double initial_vert_speed = 0.0;
-	double initial_alt;
-	double ver_speed_own, ver_speed_own_new;
-	double trk_own_rand, ver_speed_own_rand;
-	double lat_own_rand, lon_own_rand, alt_own_rand, gs_own_rand;
-	Velocity velocity_own_rand;
-	Position position_own_rand;
-	Position position_own;
-	Vect2 hd_vs_new;
-	Velocity g_velocity_own;
-	
-	// State variables traffic
-	double trk_traf_ic, ver_speed_traf_ic;
-	double lat_traf_ic,  lon_traf_ic,  alt_traf_ic, gs_traf_ic;
-	double trk_traf_rand, ver_speed_traf_rand;
-	double lat_traf_rand, lon_traf_rand, alt_traf_rand, gs_traf_rand;
-	double heading_traf, trk_traf;
-	double airspeed_traf;
-	Velocity velocity_traf_ground, velocity_traf_air;
-	double ver_speed_traf;
-	Position position_traf;
-	Velocity velocity_traf_rand;
-	Position position_traf_rand;
-	
-	// Wind variable.
-	Velocity wind;
-	double wind_x, wind_y, wind_direction;
-	
-	// Severity variables.
-	Vect2 min_horizontal_distance = new Vect2(100000.0, 1000.0);
-	Vect2 min_vertical_distance =   new Vect2(100000.0, 1000.0);
-	Vect3 max_squircle = new Vect3(0.0, 100000.0, 100000.0);
-	Vect3 severity;
-	
 	// Create a Daidalus object and set the configuration parameters.
 	Daidalus daa = new Daidalus();
 	if (config != null && !daa.loadFromFile(config)) {
@@ -213,8 +275,6 @@ public class BatchSimDaidalus_2_3_1 {
 	    System.exit(1);
 	}
 	
-	ConflictData det;
-	
 	/* Get initial conditions from input file.
 	   The input file should have a header and the state of the 
 	   ownship and traffic aircraft.  
@@ -234,118 +294,806 @@ public class BatchSimDaidalus_2_3_1 {
 	// Get states from the initial conditions file.
 	// The initial conditions file has earth reference states. That is, track and ground speed.
 	walker.readState(daa);
-	String name_traf = daa.getAircraftStateAt(1).getId();
-
-	// Assign values to alerter and alerThresholds variables.
-	alerter = daa.getAlerterAt(1); // alerter for aircraft 1.
-	athr = alerter.getLevel(1); // Threshold parameters for Level 2 for aircraft 1.
-	
-	// Get the initial time.
-	time_ic = daa.getCurrentTime();
-
-	// Define wind. Wind is specified in the direction that it is blowing,
-	// not where is comming from.
-	// For example, an easterly wind is a wind in the 270 direction.
 	
-	// Zero wind.
-	wind = Velocity.makeVxyz(0.0, 0.0, "knot", 0.0, "fpm"); // x-knots, y-knots, z-fpm.
-
-	// North wind at 50 knots.
-	// wind = Velocity.makeVxyz(0.0, -50.0, "knot", 0.0, "fpm"); // x-knots, y-knots, z-fpm.
-	
-	// South wind at 50 knots.
-	// wind = Velocity.makeVxyz(0.0, 50.0, "knot", 0.0, "fpm"); // x-knots, y-knots, z-fpm.
+	System.out.printf("%s: %d, duration: %d [s], wind: %.1f [knot], delay: %.2f [s], seed: %d, threads: %d%s%n",
+			  params.ci_width > 0 ? "max runs" : "runs", params.number_runs, params.sim_duration, params.wind_speed,
+			  params.sigma_delay_2*Math.sqrt(Math.PI/2), params.seed, threads,
+			  params.hold_time > 0 ? ", early stop: "+params.hold_time+" [s]" : "");
+	if (params.estimate != null) {
+	    System.out.printf("estimate: %s%s%s%n", Estimator.label(params.estimate, params.threshold),
+			      params.ci_width > 0 ? ", target width: "+params.ci_width+", min runs: "+params.min_runs : "",
+			      params.is_scale != 1 ? ", importance sampling scale: "+params.is_scale : "");
+	}
 	
-	// West wind at 50 knots.
-	// wind = Velocity.makeVxyz(50, 0, "knot", 0, "fpm"); // x-knots, y-knots, z-fpm.
+	if (csv != null) {
+	    csv_out.print("severity %,         hor at worst sev,   vert at worst sev, ");
+	    csv_out.print(" min hor,            vert at min hor,   hor at min vert,   min vertical, ");
+	    csv_out.println(params.hold_time > 0 || params.is_scale != 1 ? "    imple delay 2,   steps, stop,   weight" : "    imple delay 2 ");
+	}
 	
-	// North-west wind at 50 knots.
-	// wind = Velocity.makeVxyz(35.35534, -35.35534, "knot", 0.0, "fpm");
+	/** Start Monte Carlo loop **/
+
+	// Runs are independent: each worker owns a copy of the Daidalus object and each run
+	// derives its random streams from the seed and the run number (see runStream).
+	// The runs are simulated in chunks of CHUNK_SIZE runs, each chunk is aggregated in
+	// run order and the chunk summaries are merged in chunk order, so the results do not
+	// depend on the number of threads.
+	Summary summary = new Summary(params);
+	ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+	List<Worker> workers = new ArrayList<Worker>();
+	for (int w = 0; w < threads; w++) {
+	    workers.add(new Worker(daa, params, out));
+	}
+	// Chunks are processed in blocks so that the per-run records can be written in run
+	// order while the simulation proceeds.
+	int number_chunks = (params.number_runs + CHUNK_SIZE - 1)/CHUNK_SIZE;
+	Chunk[] block = new Chunk[BLOCK_SIZE*threads];
+	// With --ci-width, the stopping rule is checked after each chunk, in chunk order, so that
+	// the number of runs does not depend on the number of threads either. The chunks of the
+	// block that follow the one that reaches the target are discarded.
+	boolean reached = false;
+	try {
+	    for (int lo = 0; lo < number_chunks && !reached; lo += block.length) {
+		final int first = lo;
+		final int last = Math.min(number_chunks, lo + block.length) - 1;
+		final AtomicInteger next = new AtomicInteger(first);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (Worker worker : workers) {
+		    tasks.add(() -> {
+			    for (int c = next.getAndIncrement(); c <= last; c = next.getAndIncrement()) {
+				block[c - first] = worker.runChunk(c*CHUNK_SIZE + 1, Math.min(params.number_runs, (c + 1)*CHUNK_SIZE));
+			    }
+			    return null;
+			});
+		}
+		if (pool == null) {
+		    tasks.get(0).call();
+		} else {
+		    for (Future<Void> f : pool.invokeAll(tasks)) {
+			f.get();
+		    }
+		}
+		for (int c = first; c <= last && !reached; c++) {
+		    summary.merge(block[c - first].summary);
+		    for (RunResult result : block[c - first].results) {
+			if (csv_out != null) {
+			    result.print(csv_out, params.hold_time > 0 || params.is_scale != 1);
+			}
+			if (records_out != null) {
+			    result.write(records_out);
+			}
+		    }
+		    reached = params.ci_width > 0 && summary.estimator.reached();
+		}
+	    }
+	    if (records_out != null) {
+		records_out.close();
+	    }
+	} catch (Exception e) {
+	    System.err.println("** Error: "+e);
+	    System.exit(1);
+	} finally {
+	    if (pool != null) {
+		pool.shutdown();
+	    }
+	}
+	if (csv_out != null) {
+	    csv_out.close();
+	}
+	out.close();
+	summary.print(System.out);
 	
-	// South-east wind at 50 knots.
-	// wind = Velocity.makeVxyz(-35.35534, 35.35534, "knot", 0.0, "fpm");
-
-	// Get the states of the aircraft.
-	trk_own_ic = daa.getOwnshipState().horizontalDirection(); // radians.
-	ver_speed_own_ic = daa.getOwnshipState().verticalSpeed(); // meters/second.
-	lat_own_ic = daa.getOwnshipState().getPosition().lat(); // radians.
-	lon_own_ic = daa.getOwnshipState().getPosition().lon(); // radians.
-	alt_own_ic = daa.getOwnshipState().getPosition().alt(); // meters.
-	gs_own_ic = daa.getOwnshipState().horizontalSpeed(); // meters/second.
-
-	trk_traf_ic = daa.getAircraftStateAt(1).horizontalDirection(); // radians.
-	ver_speed_traf_ic = daa.getAircraftStateAt(1).verticalSpeed(); // meters/second.
-	lat_traf_ic = daa.getAircraftStateAt(1).getPosition().lat(); // radians.
-	lon_traf_ic = daa.getAircraftStateAt(1).getPosition().lon(); // radians.
-	alt_traf_ic = daa.getAircraftStateAt(1).getPosition().alt(); // meters.
-	gs_traf_ic = daa.getAircraftStateAt(1).horizontalSpeed(); // meters/second.
-
-	// Define parameters for the virtual pilot's delay distributions, Rayleigh.
+    } //End main.
+    
+    /* Number of runs simulated and aggregated together by a worker. */
+    static final int CHUNK_SIZE = 16;
+    
+    /* Number of chunks per thread that are simulated before their records are written. */
+    static final int BLOCK_SIZE = 8;
+    
+    /* Parameters of the Monte Carlo simulation, in internal units. */
+    static class Parameters {
+	int number_runs = 10000;
+	// Simulaton duration, seconds (number of steps).
+	int sim_duration = 150;
+	// Magnitude of the random direction wind, knots.
+	double wind_speed = 50.0;
+	// Parameter of the virtual pilot's delay distribution, Rayleigh.
 	// double sigma_delay_3 = 3.9894228; // sigma = 3.989, mean = 5.0 seconds.
 	// double sigma_delay_2 = 7.9788456; // sigma = 7.979, mean = 10.0 seconds.
-        double sigma_delay_2 = 3.9894228; // sigma = 3.989, mean = 5.0 seconds.
+	double sigma_delay_2 = 3.9894228; // sigma = 3.989, mean = 5.0 seconds.
 	// double sigma_delay_3 = 11.9682684; // sigma = 11.968, mean = 15.0 seconds.
-	
-	System.out.print("severity %,         hor at worst sev,   vert at worst sev, ");
-	System.out.print(" min hor,            vert at min hor,   hor at min vert,   min vertical, ");
-	System.out.println("    imple delay 2 ");
-
-	/*********
-	// Set the wind field in the Daidalus object.
-	// The calcualted resolutions will be heading, 
-	// airspeed, and vertical speed.
-	daa.setWindVelocityTo(wind);
-	*********/
-
-	// Create a random number generator for the wind direction.
-	java.util.Random r2 = new java.util.Random(1);
-	
-	// Get the alerter and threshold parameters.
-	alerter = daa.getAlerterAt(1);
-	athr = alerter.getLevel(1);
-	alerting_time_param = athr.getAlertingTime();
-
-	boolean print_res = false;
+	// Standard deviations of the random components of the state of the aircraft.
+	double sigma_trk = 0.01745329252; // 1 deg (0.01745 radians) standard deviation.
+	double sigma_vs = 0.127; // 25 fpm (0.127 m/s) standard deviation.
+	double sigma_lat = 0.0000078533533657; // 50 meters (7.8E-06 radians) standard deviation.
+	double sigma_lon = 0.0000098334637853; // ~50 meters (9.8E-06 radians) (at 37deg lat) sd.
+	double sigma_alt = 15.24; // 50 ft (15.24 meters) standard deviation.
+	double sigma_gs = 2.57222222; // 5 kts (2.57 m/s) standard deviation.
+	// Statistic estimated with a confidence interval (see Estimator), null: none.
+	String estimate = null;
+	// Severity threshold of the probability estimate, percent.
+	double threshold = 0;
+	// Target width of the confidence interval (0: simulate number_runs runs).
+	double ci_width = 0;
+	int min_runs = 1000;
+	// Scale of the standard deviations of the importance sampling distribution (1: none).
+	double is_scale = 1.0;
+	// Hold time of the termination criterion, seconds (0: runs always last sim_duration).
+	double hold_time = 0;
+	long seed = 1;
 	int output_run_number = 0;
-	int number_runs = 10000;
+	boolean print_res = false;
+    }
+    
+    /* Results of consecutive runs simulated by a worker, with their summary. */
+    static class Chunk {
+	final List<RunResult> results = new ArrayList<RunResult>();
+	final Summary summary;
 
-	/** Start Monte Carlo loop **/
+	Chunk(Parameters params) {
+	    summary = new Summary(params);
+	}
+    }
+    
+    /* Format of the per-run record file (--records), big-endian:
+     *   header: int RECORDS_MAGIC, int RECORDS_VERSION, long seed, int duration [s]
+     *   one record per run, in run order: int run,
+     *     double severity [0..1], double range [m], double vertical distance [m] at worst severity,
+     *     double min horizontal distance [m], double vertical distance [m] at min horizontal distance,
+     *     double horizontal distance [m] at min vertical distance, double min vertical distance [m],
+     *     double implementation delay [s], int simulated steps, int stop reason (STOP_DURATION, STOP_DIVERGING),
+     *     double weight (likelihood ratio of the run, 1 without importance sampling)
+     *   The distances of a minimum that was never reached keep their initial values:
+     *   100000 meters for horizontal distances, 1000 meters for vertical distances.
+     */
+    static final int RECORDS_MAGIC = 0x42534452; // "BSDR"
+    static final int RECORDS_VERSION = 3;
+    
+    /* Reasons why a run stopped: it lasted the configured duration, or it met the termination
+       criterion (see --early-stop). */
+    static final int STOP_DURATION = 0;
+    static final int STOP_DIVERGING = 1;
+    static final String STOP_REASONS[] = { "duration", "diverging" };
+    
+    /* Streaming summary of the runs. Summaries of disjoint sets of runs can be merged. */
+    static class Summary {
+	final Parameters params;
+	final Estimator estimator;
+	long runs = 0;
+	final Statistic severity = new Statistic("severity", "%", new Histogram(0, 10, 10));
+	final Statistic min_horizontal_distance = new Statistic("min horizontal distance", "ft", null);
+	final Statistic min_vertical_distance = new Statistic("min vertical distance", "ft", null);
+	final Statistic time_impl_delay = new Statistic("implementation delay", "s", null);
+	final Statistic steps = new Statistic("simulated time", "s", null);
+	final long stops[] = new long[STOP_REASONS.length];
+
+	Summary(Parameters params) {
+	    this.params = params;
+	    this.estimator = params.estimate != null ? new Estimator(params) : null;
+	}
+
+	void add(RunResult result) {
+	    runs++;
+	    severity.add(result.max_squircle.x*100);
+	    if (result.hasMinHorizontalDistance()) {
+		min_horizontal_distance.add(result.min_horizontal_distance.x*3.281);
+	    }
+	    if (result.hasMinVerticalDistance()) {
+		min_vertical_distance.add(result.min_vertical_distance.y*3.281);
+	    }
+	    time_impl_delay.add(result.time_impl_delay);
+	    steps.add(result.steps);
+	    stops[result.stop_reason]++;
+	    if (estimator != null) {
+		estimator.add(result);
+	    }
+	}
+
+	void merge(Summary summary) {
+	    runs += summary.runs;
+	    severity.merge(summary.severity);
+	    min_horizontal_distance.merge(summary.min_horizontal_distance);
+	    min_vertical_distance.merge(summary.min_vertical_distance);
+	    time_impl_delay.merge(summary.time_impl_delay);
+	    steps.merge(summary.steps);
+	    for (int k = 0; k < stops.length; k++) {
+		stops[k] += summary.stops[k];
+	    }
+	    if (estimator != null) {
+		estimator.merge(summary.estimator);
+	    }
+	}
+
+	void print(PrintStream out) {
+	    out.printf("%-30s %8s %12s %12s %12s %12s %12s %12s %12s %12s%n",
+		       "statistic", "n", "mean", "sd", "min", "p5", "p50", "p95", "p99", "max");
+	    severity.print(out);
+	    min_horizontal_distance.print(out);
+	    min_vertical_distance.print(out);
+	    time_impl_delay.print(out);
+	    steps.print(out);
+	    severity.histogram.print(severity.label(), out);
+	    out.print("stop reasons:");
+	    for (int k = 0; k < stops.length; k++) {
+		out.print((k > 0 ? ", " : " ")+STOP_REASONS[k]+": "+stops[k]);
+	    }
+	    out.println();
+	    if (params.is_scale != 1) {
+		out.println("(the statistics above are not weighted, they describe the importance sampling distribution)");
+	    }
+	    if (estimator != null) {
+		estimator.print(out);
+		if (params.ci_width > 0) {
+		    out.println("target width "+params.ci_width+(estimator.reached() ? " reached after " : " not reached after ")+runs+" runs");
+		}
+	    }
+	}
+    }
+
+    /* Estimate of a statistic with a 95% confidence interval (--estimate). Each run is weighted
+     * by its likelihood ratio w (w = 1 without importance sampling). The estimate is the
+     * self-normalized mean sum(w*x)/sum(w) over the runs where the statistic is defined, and its
+     * variance is sum(w^2*(x - mean)^2)/sum(w)^2 (delta method), which are the sample mean and
+     * the variance of the sample mean when w = 1. The estimator only keeps sums, so estimators
+     * of disjoint sets of runs are merged by adding them.
+     */
+    static class Estimator {
+	static final String ESTIMATES[] = { "p-severity", "severity", "min-hor", "min-vert", "delay" };
+	// Two-sided 95% quantile of the normal distribution.
+	static final double Z = 1.959963984540054;
+	// Minimum number of runs with the event before a probability estimate can be stopped.
+	static final long MIN_EVENTS = 10;
+	final Parameters params;
+	final String estimate;
+	final double threshold;
+	long n = 0;
+	long events = 0;
+	double sum_w = 0;
+	double sum_w2 = 0;
+	double sum_wx = 0;
+	double sum_w2x = 0;
+	double sum_w2x2 = 0;
+
+	Estimator(Parameters params) {
+	    this.params = params;
+	    this.estimate = params.estimate;
+	    this.threshold = params.threshold;
+	}
+
+	static boolean isValid(String estimate) {
+	    return Arrays.asList(ESTIMATES).contains(estimate);
+	}
+
+	static String label(String estimate, double threshold) {
+	    switch (estimate) {
+	    case "p-severity": return "P(severity > "+threshold+" %)";
+	    case "severity": return "mean severity [%]";
+	    case "min-hor": return "mean min horizontal distance [ft]";
+	    case "min-vert": return "mean min vertical distance [ft]";
+	    default: return "mean implementation delay [s]";
+	    }
+	}
+
+	void add(RunResult result) {
+	    double x;
+	    switch (estimate) {
+	    case "p-severity":
+		x = result.max_squircle.x*100 > threshold ? 1 : 0;
+		events += (long) x;
+		break;
+	    case "severity":
+		x = result.max_squircle.x*100;
+		break;
+	    case "min-hor":
+		if (!result.hasMinHorizontalDistance()) {
+		    return;
+		}
+		x = result.min_horizontal_distance.x*3.281;
+		break;
+	    case "min-vert":
+		if (!result.hasMinVerticalDistance()) {
+		    return;
+		}
+		x = result.min_vertical_distance.y*3.281;
+		break;
+	    default:
+		x = result.time_impl_delay;
+	    }
+	    double w = result.weight;
+	    n++;
+	    sum_w += w;
+	    sum_w2 += w*w;
+	    sum_wx += w*x;
+	    sum_w2x += w*w*x;
+	    sum_w2x2 += w*w*x*x;
+	}
+
+	void merge(Estimator e) {
+	    n += e.n;
+	    events += e.events;
+	    sum_w += e.sum_w;
+	    sum_w2 += e.sum_w2;
+	    sum_wx += e.sum_wx;
+	    sum_w2x += e.sum_w2x;
+	    sum_w2x2 += e.sum_w2x2;
+	}
+
+	double mean() {
+	    return sum_wx/sum_w;
+	}
+
+	/* Half width of the confidence interval. */
+	double halfWidth() {
+	    double mean = mean();
+	    double variance = (sum_w2x2 - 2*mean*sum_w2x + mean*mean*sum_w2)/(sum_w*sum_w);
+	    return Z*Math.sqrt(Math.max(0, variance));
+	}
+
+	/* Kish's effective number of runs, n without importance sampling. */
+	double effectiveRuns() {
+	    return sum_w*sum_w/sum_w2;
+	}
+
+	/* Returns true if the confidence interval is at most params.ci_width wide, after
+	   params.min_runs runs and, for a probability, after MIN_EVENTS runs with the event. */
+	boolean reached() {
+	    return n >= params.min_runs && (!estimate.equals("p-severity") || events >= MIN_EVENTS) &&
+		2*halfWidth() <= params.ci_width;
+	}
+
+	void print(PrintStream out) {
+	    if (n == 0 || sum_w == 0) {
+		out.println(label(estimate, threshold)+": no runs");
+		return;
+	    }
+	    out.printf("%s: %.6g +/- %.6g (95%% confidence), runs: %d, effective runs: %.1f%s%n",
+		       label(estimate, threshold), mean(), halfWidth(), n, effectiveRuns(),
+		       estimate.equals("p-severity") ? ", runs with severity > "+threshold+" %: "+events : "");
+	}
+    }
+
+    /* Mean, standard deviation, extrema and quantiles of a statistic, in the units of the summary. */
+    static class Statistic {
+	final String name;
+	final String units;
+	final Sketch sketch = new Sketch(0.01);
+	final Histogram histogram;
+	long n = 0;
+	double mean = 0;
+	double m2 = 0;
+	double min = Double.POSITIVE_INFINITY;
+	double max = Double.NEGATIVE_INFINITY;
+
+	Statistic(String name, String units, Histogram histogram) {
+	    this.name = name;
+	    this.units = units;
+	    this.histogram = histogram;
+	}
+
+	String label() {
+	    return name+" ["+units+"]";
+	}
+
+	void add(double x) {
+	    // Welford's update of the mean and of the sum of squared deviations
+	    n++;
+	    double delta = x - mean;
+	    mean += delta/n;
+	    m2 += delta*(x - mean);
+	    min = Math.min(min, x);
+	    max = Math.max(max, x);
+	    sketch.add(x);
+	    if (histogram != null) {
+		histogram.add(x);
+	    }
+	}
+
+	void merge(Statistic s) {
+	    if (s.n == 0) {
+		return;
+	    }
+	    // Chan's pairwise combination of the means and of the sums of squared deviations
+	    long count = n + s.n;
+	    double delta = s.mean - mean;
+	    mean += delta*s.n/count;
+	    m2 += s.m2 + delta*delta*n*s.n/count;
+	    n = count;
+	    min = Math.min(min, s.min);
+	    max = Math.max(max, s.max);
+	    sketch.merge(s.sketch);
+	    if (histogram != null) {
+		histogram.merge(s.histogram);
+	    }
+	}
+
+	/* Quantile q, the estimate of the sketch is kept within the observed extrema. */
+	double quantile(double q) {
+	    return Math.max(min, Math.min(max, sketch.quantile(q)));
+	}
+
+	void print(PrintStream out) {
+	    if (n == 0) {
+		out.printf("%-30s %8d%n", label(), n);
+		return;
+	    }
+	    out.printf("%-30s %8d %12.6g %12.6g %12.6g %12.6g %12.6g %12.6g %12.6g %12.6g%n",
+		       label(), n, mean, n > 1 ? Math.sqrt(m2/(n - 1)) : 0.0,
+		       min, quantile(0.05), quantile(0.5), quantile(0.95), quantile(0.99), max);
+	}
+    }
+
+    /* Quantile sketch with relative accuracy alpha on positive values: a value x is counted in
+     * bucket k = ceil(log(x)/log(gamma)), gamma = (1+alpha)/(1-alpha), and the quantiles are
+     * estimated from the bucket counts. Sketches with the same accuracy are merged by adding
+     * their bucket counts, so merging gives the same sketch whatever the order of the values.
+     */
+    static class Sketch {
+	// Values below MIN_VALUE, including zero, are counted apart.
+	static final double MIN_VALUE = 1e-9;
+	final double gamma;
+	final double log_gamma;
+	long zero_count = 0;
+	long count = 0;
+	long buckets[] = new long[0];
+	// Bucket index of buckets[0].
+	int offset = 0;
+
+	Sketch(double alpha) {
+	    gamma = (1 + alpha)/(1 - alpha);
+	    log_gamma = Math.log(gamma);
+	}
+
+	void add(double x) {
+	    count++;
+	    if (x < MIN_VALUE) {
+		zero_count++;
+	    } else {
+		addToBucket((int) Math.ceil(Math.log(x)/log_gamma), 1);
+	    }
+	}
+
+	void addToBucket(int k, long c) {
+	    if (buckets.length == 0) {
+		buckets = new long[16];
+		offset = k - 8;
+	    } else if (k < offset || k >= offset + buckets.length) {
+		int lo = Math.min(offset, k);
+		int hi = Math.max(offset + buckets.length, k + 1);
+		long grown[] = new long[Math.max(2*buckets.length, hi - lo)];
+		System.arraycopy(buckets, 0, grown, offset - lo, buckets.length);
+		buckets = grown;
+		offset = lo;
+	    }
+	    buckets[k - offset] += c;
+	}
+
+	void merge(Sketch s) {
+	    count += s.count;
+	    zero_count += s.zero_count;
+	    for (int j = 0; j < s.buckets.length; j++) {
+		if (s.buckets[j] != 0) {
+		    addToBucket(s.offset + j, s.buckets[j]);
+		}
+	    }
+	}
+
+	double quantile(double q) {
+	    if (count == 0) {
+		return Double.NaN;
+	    }
+	    long rank = (long) (q*(count - 1));
+	    long seen = zero_count;
+	    if (rank < seen) {
+		return 0;
+	    }
+	    for (int j = 0; j < buckets.length; j++) {
+		seen += buckets[j];
+		if (rank < seen) {
+		    return 2*Math.pow(gamma, offset + j)/(gamma + 1);
+		}
+	    }
+	    return Double.NaN;
+	}
+    }
+
+    /* Histogram with bins of equal width, values outside the bins are counted in the first or last bin. */
+    static class Histogram {
+	final double lo;
+	final double width;
+	final long bins[];
+
+	Histogram(double lo, double width, int n) {
+	    this.lo = lo;
+	    this.width = width;
+	    this.bins = new long[n];
+	}
+
+	void add(double x) {
+	    int b = (int) Math.floor((x - lo)/width);
+	    bins[Math.max(0, Math.min(bins.length - 1, b))]++;
+	}
+
+	void merge(Histogram h) {
+	    for (int b = 0; b < bins.length; b++) {
+		bins[b] += h.bins[b];
+	    }
+	}
+
+	void print(String label, PrintStream out) {
+	    out.print(label+" histogram:");
+	    for (int b = 0; b < bins.length; b++) {
+		out.print(" ["+(lo + b*width)+","+(lo + (b + 1)*width)+(b == bins.length - 1 ? "]: " : "): ")+bins[b]);
+	    }
+	    out.println();
+	}
+    }
+    /* Severity of one run of the Monte Carlo simulation. */
+    static class RunResult {
+	final int run;
+	final Vect3 max_squircle;
+	final Vect2 min_horizontal_distance;
+	final Vect2 min_vertical_distance;
+	final double time_impl_delay;
+	final int steps;
+	final int stop_reason;
+	final double weight;
+
+	RunResult(int run, Vect3 max_squircle, Vect2 min_horizontal_distance, Vect2 min_vertical_distance, double time_impl_delay,
+		  int steps, int stop_reason, double weight) {
+	    this.run = run;
+	    this.max_squircle = max_squircle;
+	    this.min_horizontal_distance = min_horizontal_distance;
+	    this.min_vertical_distance = min_vertical_distance;
+	    this.time_impl_delay = time_impl_delay;
+	    this.steps = steps;
+	    this.stop_reason = stop_reason;
+	    this.weight = weight;
+	}
+
+	/* A minimum distance that was never updated keeps its initial value (100000 meters
+	   horizontally, 1000 meters vertically). */
+	boolean hasMinHorizontalDistance() {
+	    return min_horizontal_distance.x < 100000.0;
+	}
+
+	boolean hasMinVerticalDistance() {
+	    return min_vertical_distance.y < 1000.0;
+	}
+
+	void print(PrintWriter out, boolean extended) {
+	    out.print(+max_squircle.x*100+", "+max_squircle.y*3.281+", "+max_squircle.z*3.281);
+	    out.print(", "+min_horizontal_distance.x*3.281+", "+min_horizontal_distance.y*3.281);
+	    out.print(", "+min_vertical_distance.x*3.281+", "+min_vertical_distance.y*3.281);
+	    if (extended) {
+		out.println(", "+time_impl_delay+", "+steps+", "+STOP_REASONS[stop_reason]+", "+weight);
+	    } else {
+		out.println(", "+time_impl_delay);
+	    }
+	}
+
+	/* Writes the record of the run, see RECORDS_MAGIC for the format. */
+	void write(DataOutputStream out) throws IOException {
+	    out.writeInt(run);
+	    out.writeDouble(max_squircle.x);
+	    out.writeDouble(max_squircle.y);
+	    out.writeDouble(max_squircle.z);
+	    out.writeDouble(min_horizontal_distance.x);
+	    out.writeDouble(min_horizontal_distance.y);
+	    out.writeDouble(min_vertical_distance.x);
+	    out.writeDouble(min_vertical_distance.y);
+	    out.writeDouble(time_impl_delay);
+	    out.writeInt(steps);
+	    out.writeInt(stop_reason);
+	    out.writeDouble(weight);
+	}
+    }
+    
+    /* A worker simulates runs on its own copy of the Daidalus object, it must be used by one
+     * thread at a time. Each run starts from a fresh copy of that object with the configured
+     * alerting time, so the alerting time adjusted by the wrapper never leaks from one run into
+     * the next, and a run gives the same result whichever worker simulates it.
+     */
+    static class Worker {
+	final Daidalus daa_ic;
+	final String name_traf;
+	final double time_ic;
+	final double alerting_time_param;
+	final Parameters params;
+	final PrintWriter out;
+	// Log of the likelihood ratio of the perturbations drawn for the current run.
+	double log_weight;
+
+	// State variables own
+	final double trk_own_ic, ver_speed_own_ic;
+	final double lat_own_ic,  lon_own_ic,  alt_own_ic, gs_own_ic;
+
+	// State variables traffic
+	final double trk_traf_ic, ver_speed_traf_ic;
+	final double lat_traf_ic,  lon_traf_ic,  alt_traf_ic, gs_traf_ic;
+
+	Worker(Daidalus daa, Parameters params, PrintWriter out) {
+	    this.daa_ic = new Daidalus(daa);
+	    this.params = params;
+	    this.out = out;
+
+	    name_traf = daa.getAircraftStateAt(1).getId();
+
+	    // Get the initial time.
+	    time_ic = daa.getCurrentTime();
+
+	    // Get the alerter and threshold parameters.
+	    alerting_time_param = daa_ic.getAlerterAt(1).getLevel(1).getAlertingTime();
+
+	    // Get the states of the aircraft.
+	    trk_own_ic = daa.getOwnshipState().horizontalDirection(); // radians.
+	    ver_speed_own_ic = daa.getOwnshipState().verticalSpeed(); // meters/second.
+	    lat_own_ic = daa.getOwnshipState().getPosition().lat(); // radians.
+	    lon_own_ic = daa.getOwnshipState().getPosition().lon(); // radians.
+	    alt_own_ic = daa.getOwnshipState().getPosition().alt(); // meters.
+	    gs_own_ic = daa.getOwnshipState().horizontalSpeed(); // meters/second.
+
+	    trk_traf_ic = daa.getAircraftStateAt(1).horizontalDirection(); // radians.
+	    ver_speed_traf_ic = daa.getAircraftStateAt(1).verticalSpeed(); // meters/second.
+	    lat_traf_ic = daa.getAircraftStateAt(1).getPosition().lat(); // radians.
+	    lon_traf_ic = daa.getAircraftStateAt(1).getPosition().lon(); // radians.
+	    alt_traf_ic = daa.getAircraftStateAt(1).getPosition().alt(); // meters.
+	    gs_traf_ic = daa.getAircraftStateAt(1).horizontalSpeed(); // meters/second.
+	}
+
+	/* Returns a standard normal draw for a perturbation of the initial state. With importance
+	   sampling (--importance k), the draw g is scaled by k, and the likelihood ratio of k*g under
+	   N(0,1) and N(0,k^2), k*exp(-g^2*(k^2-1)/2), is accumulated in log_weight. */
+	double perturbation(SplittableRandom r) {
+	    double g = gaussian(r);
+	    double k = params.is_scale;
+	    if (k == 1) {
+		return g;
+	    }
+	    log_weight += Math.log(k) - g*g*(k*k - 1)/2;
+	    return k*g;
+	}
+
+	/* Simulates runs first..last of the Monte Carlo simulation. */
+	Chunk runChunk(int first, int last) {
+	    Chunk chunk = new Chunk(params);
+	    for (int i = first; i <= last; i++) {
+		RunResult result = run(i);
+		chunk.results.add(result);
+		chunk.summary.add(result);
+	    }
+	    return chunk;
+	}
+
+	/* Simulates run i of the Monte Carlo simulation. */
+	RunResult run(int i) {
+	    // Time varaibles.
+	    double time_sim, time_conflict;
+	    // Start counting when hor direction is inside band 2 (MID) or 3 (NEAR).
+	    double hd_delay_clock = 0.0;
+	    // Start counting when ver speed is inside band 2 (MID) or 3 (NEAR).
+	    double vs_delay_clock = 0.0;
+	    double time_impl_delay;
+	    
+	    // Resolution variables.
+	    int hor_dir_region, hor_dir_region_initial, ver_speed_region;
+	    double hor_dir_reso_right, hor_dir_reso_left;
+	    double ver_speed_reso_up, ver_speed_reso_down;
+	    boolean validR, validL;
+	    boolean conflict_resolution_mode = false;
+	    // Time during which the termination criterion holds, and why the run stopped.
+	    double clear_time = 0.0;
+	    int steps = 0;
+	    int stop_reason = STOP_DURATION;
+	    double time2CPA;
+	    Alerter alerter; AlertThresholds athr;
+	    
+	    // State variables own
+	    double heading_own, heading_own_new, trk_own, trk_own_new;
+	    double airspeed_own, gs_own;
+	    Velocity velocity_own_ground, velocity_own_air;
+	    double initial_heading = 0.0;
+	    double initial_vert_speed = 0.0;
+	    double initial_alt;
+	    double ver_speed_own, ver_speed_own_new;
+	    double trk_own_rand, ver_speed_own_rand;
+	    double lat_own_rand, lon_own_rand, alt_own_rand, gs_own_rand;
+	    Velocity velocity_own_rand;
+	    Position position_own_rand;
+	    Position position_own;
+	    Vect2 hd_vs_new;
+	    Velocity g_velocity_own;
+	    
+	    // State variables traffic
+	    double trk_traf_rand, ver_speed_traf_rand;
+	    double lat_traf_rand, lon_traf_rand, alt_traf_rand, gs_traf_rand;
+	    double heading_traf, trk_traf;
+	    double airspeed_traf;
+	    Velocity velocity_traf_ground, velocity_traf_air;
+	    double ver_speed_traf;
+	    Position position_traf;
+	    Velocity velocity_traf_rand;
+	    Position position_traf_rand;
+	    
+	    // Wind variable.
+	    Velocity wind;
+	    double wind_x, wind_y, wind_direction;
+	    
+	    // Severity variables.
+	    Vect2 min_horizontal_distance = new Vect2(100000.0, 1000.0);
+	    Vect2 min_vertical_distance =   new Vect2(100000.0, 1000.0);
+	    Vect3 max_squircle = new Vect3(0.0, 100000.0, 100000.0);
+	    Vect3 severity;
+	    
+	    
+	    // Each run has its own copy of the Daidalus object.
+	    Daidalus daa = new Daidalus(daa_ic);
+	    ConflictData det;
 
-	for (int i = 1; i <= number_runs; i++) {
-	
 	    // The time at the start of the simulation is the initial conditions time.
 	    time_sim = time_ic;
 	    
-	    // Create a random number generator.
-	    java.util.Random r = new java.util.Random(i);
+	    // Random streams of this run: one for the pilot delay and the states of the aircraft,
+	    // one for the wind direction.
+	    SplittableRandom r_run = runStream(params.seed, i);
+	    SplittableRandom r = r_run.split();
+	    SplittableRandom r_wind = r_run.split();
+	    
+	    // Get the alerter and threshold parameters, and start with the configured alerting time.
+	    alerter = daa.getAlerterAt(1);
+	    athr = alerter.getLevel(1);
+	    athr.setAlertingTime(alerting_time_param);
 	    
 	    // Assign a pilot delay for this run using a Rayleigh distribution.
-	    time_impl_delay = rayleigh(sigma_delay_2, r);
+	    time_impl_delay = rayleigh(params.sigma_delay_2, r);
+
+	    
+	    // Define wind. Wind is specified in the direction that it is blowing,
+	    // not where is comming from.
+	    // For example, an easterly wind is a wind in the 270 direction.
+	    
+	    // Zero wind.
+	    wind = Velocity.makeVxyz(0.0, 0.0, "knot", 0.0, "fpm"); // x-knots, y-knots, z-fpm.
 
+	    // North wind at 50 knots.
+	    // wind = Velocity.makeVxyz(0.0, -50.0, "knot", 0.0, "fpm"); // x-knots, y-knots, z-fpm.
+	    
+	    // South wind at 50 knots.
+	    // wind = Velocity.makeVxyz(0.0, 50.0, "knot", 0.0, "fpm"); // x-knots, y-knots, z-fpm.
+	    
+	    // West wind at 50 knots.
+	    // wind = Velocity.makeVxyz(50, 0, "knot", 0, "fpm"); // x-knots, y-knots, z-fpm.
 	    
-	    // Make a random direction wind vector with a 50 knots magnitude.
+	    // North-west wind at 50 knots.
+	    // wind = Velocity.makeVxyz(35.35534, -35.35534, "knot", 0.0, "fpm");
+	    
+	    // South-east wind at 50 knots.
+	    // wind = Velocity.makeVxyz(-35.35534, 35.35534, "knot", 0.0, "fpm");
+
+	    // Make a random direction wind vector with a 50 knots (--wind) magnitude.
 	    // Select the angle between [0, 2PI) ([0, 360) degrees).
-	    wind_direction = 2*Math.PI*r2.nextDouble();
-	    wind_x = 50*Math.sin(wind_direction);
-	    wind_y = 50*Math.cos(wind_direction);
+	    wind_direction = 2*Math.PI*r_wind.nextDouble();
+	    wind_x = params.wind_speed*Math.sin(wind_direction);
+	    wind_y = params.wind_speed*Math.cos(wind_direction);
 	    wind = Velocity.makeVxyz(wind_x, wind_y, "knot", 0, "fpm"); // x-knots, y-knots, z-fpm.
 	    // System.out.println("direction "+wind_direction*180/Math.PI+" wind_x "+wind_x+" wind_y "+wind_y);
 	   
 
-	    // Add random components to the state of the aircraft.
-	    trk_own_rand = trk_own_ic + 0.01745329252*r.nextGaussian(); // 1 deg (0.01745 radians) standard deviation.
-	    ver_speed_own_rand = ver_speed_own_ic + 0.127*r.nextGaussian(); // 25 fpm (0.127 m/s) standard deviation.
-	    lat_own_rand = lat_own_ic + 0.0000078533533657*r.nextGaussian(); // 50 meters (7.8E-06 radians) standard deviation.
-	    lon_own_rand = lon_own_ic + 0.0000098334637853*r.nextGaussian(); // ~50 meters (9.8E-06 radians) (at 37deg lat) sd.
-	    alt_own_rand = alt_own_ic + 15.24*r.nextGaussian(); // 50 ft (15.24 meters) standard deviation.
-	    gs_own_rand = gs_own_ic + 2.57222222*r.nextGaussian(); // 5 kts (2.57 m/s) standard deviation.
+	    // Add random components to the state of the aircraft (see Parameters for the standard deviations).
+	    log_weight = 0.0;
+	    trk_own_rand = trk_own_ic + params.sigma_trk*perturbation(r);
+	    ver_speed_own_rand = ver_speed_own_ic + params.sigma_vs*gaussian(r);
+	    lat_own_rand = lat_own_ic + params.sigma_lat*perturbation(r);
+	    lon_own_rand = lon_own_ic + params.sigma_lon*perturbation(r);
+	    alt_own_rand = alt_own_ic + params.sigma_alt*perturbation(r);
+	    gs_own_rand = gs_own_ic + params.sigma_gs*perturbation(r);
 	    
-	    trk_traf_rand = trk_traf_ic + 0.01745329252*r.nextGaussian(); // 1 deg (0.01745 radians) standard deviation.
-	    ver_speed_traf_rand = ver_speed_traf_ic + 0.127*r.nextGaussian(); // 25 fpm (0.127 m/s) standard deviation.
-	    lat_traf_rand = lat_traf_ic + 0.0000078533533657*r.nextGaussian(); // 50 meters (7.8E-06 radians) standard deviation.
-	    lon_traf_rand = lon_traf_ic + 0.0000098334637853*r.nextGaussian(); // ~50 meters (9.8E-06 radians) (at 37deg lat) sd.
-	    alt_traf_rand = alt_traf_ic + 15.24*r.nextGaussian(); // 50 ft (15.24 meters) standard deviation.
-	    gs_traf_rand = gs_traf_ic + 2.57222222*r.nextGaussian(); // 5 kts (2.57 m/s) standard deviation.
+	    trk_traf_rand = trk_traf_ic + params.sigma_trk*perturbation(r);
+	    ver_speed_traf_rand = ver_speed_traf_ic + params.sigma_vs*gaussian(r);
+	    lat_traf_rand = lat_traf_ic + params.sigma_lat*perturbation(r);
+	    lon_traf_rand = lon_traf_ic + params.sigma_lon*perturbation(r);
+	    alt_traf_rand = alt_traf_ic + params.sigma_alt*perturbation(r);
+	    gs_traf_rand = gs_traf_ic + params.sigma_gs*perturbation(r);
 	    
 	    position_own_rand = Position.mkLatLonAlt(lat_own_rand, lon_own_rand, alt_own_rand);
 	    velocity_own_rand = Velocity.mkTrkGsVs(trk_own_rand, gs_own_rand, ver_speed_own_rand);
@@ -369,7 +1117,7 @@ public class BatchSimDaidalus_2_3_1 {
 	    max_squircle = new Vect3(0.0, 100000.0, 100000.0);
 	    
 	    // Simulaton duration, seconds (number of steps).
-	    int sim_duration = 150;
+	    int sim_duration = params.sim_duration;
 
 	    /******* Start simulation loop ******************/
 	    /*******                       ******************/
@@ -377,7 +1125,7 @@ public class BatchSimDaidalus_2_3_1 {
 	    for (int j=0; j < sim_duration; j++) {
 
 		/* Write states to output file. */
-		if (i == output_run_number) {
+		if (i == params.output_run_number) {
 		writeState(daa, out);
 		}
 	    
@@ -424,8 +1172,8 @@ public class BatchSimDaidalus_2_3_1 {
 		// Ground velocity.
 		g_velocity_own = daa.getOwnshipState().getGroundVelocity(); // degrees, knots, feet/min.
 
-		if (i == output_run_number) {
-		    if (print_res) {
+		if (i == params.output_run_number) {
+		    if (params.print_res) {
 			System.out.println();
 			System.out.print(" Time "+time_sim);
 			System.out.print(" Ground Velocity vector own "+g_velocity_own);
@@ -440,8 +1188,8 @@ public class BatchSimDaidalus_2_3_1 {
 		hor_dir_reso_right = daa.horizontalDirectionResolution(true);
 		hor_dir_reso_left = daa.horizontalDirectionResolution(false);
 
-		if (i == output_run_number) {
-		    if (print_res) {
+		if (i == params.output_run_number) {
+		    if (params.print_res) {
 			System.out.print("  heading reso right  "+hor_dir_reso_right*180/Math.PI+"  difference "+Math.abs(heading_own*180/Math.PI - hor_dir_reso_right*180/Math.PI));
 			System.out.println(" heading reso left  "+hor_dir_reso_left*180/Math.PI+"  difference "+Math.abs(heading_own*180/Math.PI - hor_dir_reso_left*180/Math.PI));
 
@@ -526,6 +1274,18 @@ public class BatchSimDaidalus_2_3_1 {
 		    hd_delay_clock = 0.0;
 		}
 
+		// Termination criterion: the aircraft have passed the horizontal closest point of
+		// approach, are diverging, and ownship is clear of conflict. Once this holds for the
+		// hold time, the remaining steps are not expected to make the severity of the run worse.
+		if (params.hold_time > 0) {
+		    if (det.tcpa2D() <= 0 && diverging(daa) && !conflict_resolution_mode &&
+			hor_dir_region < 2 && ver_speed_region < 2) {
+			clear_time = clear_time + 1.0;
+		    } else {
+			clear_time = 0.0;
+		    }
+		}
+
 		/*
 		System.out.println(" AlertThresholds  "+athr);
 		System.out.println(" Parameters in daa "+daa);
@@ -585,24 +1345,25 @@ public class BatchSimDaidalus_2_3_1 {
 
 	    // Move aircraft by one second. 
 	    dynamics(time_sim, daa);
+	    steps = j + 1;
 
+	    if (params.hold_time > 0 && clear_time >= params.hold_time) {
+		stop_reason = STOP_DIVERGING;
+		break;
+	    }
 	    
 	    } // End Simulation loop.
 	
-	    System.out.print(+max_squircle.x*100+", "+max_squircle.y*3.281+", "+max_squircle.z*3.281);
-	    System.out.print(", "+min_horizontal_distance.x*3.281+", "+min_horizontal_distance.y*3.281);
-	    System.out.print(", "+min_vertical_distance.x*3.281+", "+min_vertical_distance.y*3.281);
-	    System.out.println(", "+time_impl_delay);
 	
 	    // Write last state.
-	    if (i == output_run_number) {
+	    if (i == params.output_run_number) {
 		writeState(daa, out);
 	    }
 	  
-	} // End Monte Carlo loop.
-	out.close();
-	
-    } //End main.
+	    return new RunResult(i, max_squircle, min_horizontal_distance, min_vertical_distance, time_impl_delay,
+				 steps, stop_reason, Math.exp(log_weight));
+	}
+    }
     
     
     /* Method to write the state of aircraft to output file in the daa format */
@@ -933,6 +1694,14 @@ public class BatchSimDaidalus_2_3_1 {
     } // End virtual_pilot_CFR
 
     
+    /* Returns true if the aircraft are diverging: the horizontal range is increasing
+       and the vertical distance is not decreasing. */
+    static boolean diverging(Daidalus daa) {
+	Vect3 relative_s = daa.getOwnshipState().get_s().Sub(daa.getAircraftStateAt(1).get_s());
+	Vect3 relative_v = daa.getOwnshipState().get_v().Sub(daa.getAircraftStateAt(1).get_v());
+	return relative_s.vect2().dot(relative_v.vect2()) > 0 && relative_s.z*relative_v.z >= 0;
+    }
+
     /* Method to calculate the severity of an encounter */
     /*                                                  */
     public static Vect3 severity(Daidalus daa) {
@@ -973,7 +1742,7 @@ public class BatchSimDaidalus_2_3_1 {
 	// The three components are aggregated using the Fernandez-Gausti's norm (Squircle).
 
 	Alerter alerter = daa.getAlerterAt(1);
-	detector = alerter.getDetector(1);
+	Optional<Detection3D> detector = alerter.getDetector(1);
 	
 	double DMOD = ((WCV_TAUMOD)detector.get()).getDTHR();
 	double H = ((WCV_TAUMOD)detector.get()).getZTHR();
@@ -1012,16 +1781,39 @@ public class BatchSimDaidalus_2_3_1 {
     } // End severity
     
 			      
-    public static double rayleigh(double sig, java.util.Random r)
+    public static double rayleigh(double sig, SplittableRandom r)
     {
 	double a, b;
 
-	a = sig*r.nextGaussian();
-	b = sig*r.nextGaussian();
+	a = sig*gaussian(r);
+	b = sig*gaussian(r);
 	return Math.sqrt(a*a + b*b);
 
     }
 
+    /* Returns a normally distributed value with mean 0.0 and standard deviation 1.0
+       (polar method, as java.util.Random.nextGaussian). */
+    public static double gaussian(SplittableRandom r) {
+	double v1, v2, s;
+	do {
+	    v1 = 2*r.nextDouble() - 1;
+	    v2 = 2*r.nextDouble() - 1;
+	    s = v1*v1 + v2*v2;
+	} while (s >= 1 || s == 0);
+	return v1*Math.sqrt(-2*Math.log(s)/s);
+    }
+
+    /* Returns the random stream of run i. The stream only depends on the seed and on the
+       run number, so a run draws the same values whichever thread simulates it. The seed of
+       the stream is the SplitMix64 mix of seed + i*gamma, which keeps the streams of
+       consecutive runs apart. */
+    public static SplittableRandom runStream(long seed, int i) {
+	long z = seed + i*0x9e3779b97f4a7c15L;
+	z = (z ^ (z >>> 30))*0xbf58476d1ce4e5b9L;
+	z = (z ^ (z >>> 27))*0x94d049bb133111ebL;
+	return new SplittableRandom(z ^ (z >>> 31));
+    }
+
     public static double FG_norm(double a, double b, double c) {
 	double d = Math.sqrt(a*a + b*b - a*a*b*b);
 	double norm = Math.sqrt(c*c + d*d - c*c*d*d);
@@ -51,7 +51,6 @@ import gov.nasa.larcfm.Util.Position;
 import gov.nasa.larcfm.Util.Units;
 import gov.nasa.larcfm.Util.Vect3;
 import gov.nasa.larcfm.Util.Velocity;
-import gov.nasa.larcfm.Util.f;
 
 import gov.nasa.larcfm.Util.Projection;
 import static gov.nasa.larcfm.ACCoRD.DaidalusParameters.VERSION;
@@ -131,20 +130,20 @@ public class DAA2Json {
 		Position px = Position.mkLatLonAlt(lla.lat(), lla.lon(), lla.alt());
 		Velocity vx = eprj.inverseVelocity(si, vi, true); // this should be the same as vi
 
-		String lat = llaFlag ? f.FmPrecision(Units.to("deg", px.lat()) + latOffset, precision16)
-				: f.FmPrecision(Units.to("deg", px.lat()), precision16);
-		String lon = llaFlag ? f.FmPrecision(Units.to("deg", px.lon()) + lonOffset, precision16)
-				: f.FmPrecision(Units.to("deg", px.lon()), precision16);
+		String lat = llaFlag ? DAAFormatter.format(Units.to("deg", px.lat()) + latOffset, precision16)
+				: DAAFormatter.format(Units.to("deg", px.lat()), precision16);
+		String lon = llaFlag ? DAAFormatter.format(Units.to("deg", px.lon()) + lonOffset, precision16)
+				: DAAFormatter.format(Units.to("deg", px.lon()), precision16);
 		return "{ "
 		+ "\"id\": \"" + intruder.getId() + "\", " 
 		+ "\"s\": { "
 		+ "\"lat\": \"" + lat + "\", " 
 		+ "\"lon\": \"" + lon + "\", " 
-		+ "\"alt\": \"" + f.FmPrecision(Units.to("ft", px.alt()), precision16) + "\" }, "
+		+ "\"alt\": \"" + DAAFormatter.format(Units.to("ft", px.alt()), precision16) + "\" }, "
 		+ "\"v\": { " 
-		    + "\"x\": \"" + f.FmPrecision(Units.to("knot", vx.x()), precision16) + "\", " 
-		    + "\"y\": \"" + f.FmPrecision(Units.to("knot", vx.y()), precision16) + "\", "
-		    + "\"z\": \"" + f.FmPrecision(Units.to("fpm", vx.z()), precision16) + "\" }"
+		    + "\"x\": \"" + DAAFormatter.format(Units.to("knot", vx.x()), precision16) + "\", " 
+		    + "\"y\": \"" + DAAFormatter.format(Units.to("knot", vx.y()), precision16) + "\", "
+		    + "\"z\": \"" + DAAFormatter.format(Units.to("fpm", vx.z()), precision16) + "\" }"
 		+ " }";
 	}
 
@@ -162,13 +161,13 @@ public class DAA2Json {
 
 		return "{ "
 		+ "\"name\": \"" + intruder.getId() + "\", " 
-		+ "\"time\": \"" + f.FmPrecision(time, precision16) + "\", " 
-		+ "\"lat\": \"" + f.FmPrecision(Units.to("deg", px.lat()), precision16) + "\", " 
-		+ "\"lon\": \"" + f.FmPrecision(Units.to("deg", px.lon()), precision16) + "\", " 
-		+ "\"alt\": \"" + f.FmPrecision(Units.to("ft", px.alt()), precision16) + "\", "
-		    + "\"vx\": \"" + f.FmPrecision(Units.to("knot", vx.x()), precision16) + "\", " 
-		    + "\"vy\": \"" + f.FmPrecision(Units.to("knot", vx.y()), precision16) + "\", " 
-		    + "\"vz\": \"" + f.FmPrecision(Units.to("fpm", vx.z()), precision16) + "\""
+		+ "\"time\": \"" + DAAFormatter.format(time, precision16) + "\", " 
+		+ "\"lat\": \"" + DAAFormatter.format(Units.to("deg", px.lat()), precision16) + "\", " 
+		+ "\"lon\": \"" + DAAFormatter.format(Units.to("deg", px.lon()), precision16) + "\", " 
+		+ "\"alt\": \"" + DAAFormatter.format(Units.to("ft", px.alt()), precision16) + "\", "
+		    + "\"vx\": \"" + DAAFormatter.format(Units.to("knot", vx.x()), precision16) + "\", " 
+		    + "\"vy\": \"" + DAAFormatter.format(Units.to("knot", vx.y()), precision16) + "\", " 
+		    + "\"vz\": \"" + DAAFormatter.format(Units.to("fpm", vx.z()), precision16) + "\""
 		+ " }";
 	}
 
@@ -250,8 +249,8 @@ public class DAA2Json {
 		while (!walker.atEnd()) {
 			double time = walker.getTime();
 			walker.readState(daidalus);
-			steps += "\"" + f.FmPrecision(time, precision16) + "\""; // time at step i in seconds
-			lla += "\t\t\"" + f.FmPrecision(time, precision16) + "\": {\n"; // time at step i
+			steps += "\"" + DAAFormatter.format(time, precision16) + "\""; // time at step i in seconds
+			lla += "\t\t\"" + DAAFormatter.format(time, precision16) + "\": {\n"; // time at step i
 			// print ownship state
 			TrafficState ownship = daidalus.getOwnshipState();
 			lla += "\t\t\t\"ownship\": " + daa2json.printLLA(ownship, ownship) + ",\n";
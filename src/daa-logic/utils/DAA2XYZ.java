@@ -52,7 +52,6 @@ import gov.nasa.larcfm.Util.Position;
 import gov.nasa.larcfm.Util.Units;
 import gov.nasa.larcfm.Util.Vect3;
 import gov.nasa.larcfm.Util.Velocity;
-import gov.nasa.larcfm.Util.f;
 
 import gov.nasa.larcfm.Util.Projection;
 
@@ -109,7 +108,7 @@ public class DAA2XYZ {
     }
 
     protected String format(double val) {
-	String tmp = f.FmPrecision(val, precision);
+	String tmp = DAAFormatter.format(val, precision);
 	int max = precision + 8;
 	int padding = max - tmp.length();
 	String pp = " ";
@@ -158,8 +157,8 @@ public class DAA2XYZ {
 	Position px = Position.mkLatLonAlt(lla.lat(), lla.lon(), lla.alt());
 	Velocity vx = eprj.inverseVelocity(si, vi, true);
 		
-	return intruder.getId() + "\t" + f.FmPrecision(Units.to("deg", px.lat()), precision) + "\t" + f.FmPrecision(Units.to("deg", px.lon()), precision) + "\t" + f.FmPrecision(Units.to("ft", px.alt()), precision) + "\t" 
-	    + f.FmPrecision(Units.to("knot", vx.x()), precision) + "\t" + f.FmPrecision(Units.to("knot", vx.y()), precision) + "\t" + f.FmPrecision(Units.to("fpm", vx.z()), precision) + "\t" + f.FmPrecision(time, precision);
+	return intruder.getId() + "\t" + DAAFormatter.format(Units.to("deg", px.lat()), precision) + "\t" + DAAFormatter.format(Units.to("deg", px.lon()), precision) + "\t" + DAAFormatter.format(Units.to("ft", px.alt()), precision) + "\t" 
+	    + DAAFormatter.format(Units.to("knot", vx.x()), precision) + "\t" + DAAFormatter.format(Units.to("knot", vx.y()), precision) + "\t" + DAAFormatter.format(Units.to("fpm", vx.z()), precision) + "\t" + DAAFormatter.format(time, precision);
     }
 
     // public String printIntruderXYZ(TrafficState ownship, TrafficState intruder) {
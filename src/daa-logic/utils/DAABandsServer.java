@@ -0,0 +1,420 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service mode of DAABandsV2 (see --serve). The service keeps one JVM alive and processes requests read from stdin, 
+ * one json object per line, so that JVM startup and JIT warm-up are paid once instead of once per request.
+ * Each request is executed on its own (virtual, when available) thread with its own DAABandsV2 and Daidalus objects, 
+ * and is answered with one json object per line on stdout. Responses are written when requests complete, 
+ * so they can be out of order, the id of the request is echoed in the response.
+ *
+ * Requests:
+ *   { "id": 1, "op": "bands", "scenario": "H1.daa", "config": "DO_365B_no_SUM.conf", "output": "H1.json",
+ *     "wind": { "deg": 45, "knot": 20 }, "alerter": "DO_365A", "ownship": "AC1" }
+ *     computes the bands of a scenario, only scenario is mandatory, the other attributes have the same meaning 
+ *     and defaults as the corresponding command line options. When output is not given and config, alerter, ownship 
+ *     or wind are, the default output name includes a hash of these attributes (e.g., H1-5f3a09c2.json), 
+ *     so that requests on the same scenario with different parameters do not overwrite each other's results. 
+ *     Requests that write the same output file are executed one at a time.
+ *   { "id": 2, "op": "version" }
+ *   { "id": 3, "op": "list-monitors" }
+ *   { "id": 4, "op": "list-alerters", "config": "DO_365B_no_SUM.conf" }
+ *   { "op": "shutdown" }
+ *     stops reading requests, the service terminates when pending requests are completed
+ * Responses:
+ *   { "id": 1, "ok": true, "output": "H1.json", "timings": { "queue": 0.05, "run": 812.40, "total": 812.45 } }
+ *   { "id": 2, "ok": true, "version": "2.0.4", "timings": { ... } }
+ *   { "id": 3, "ok": true, "monitors": [ ... ], "timings": { ... } }
+ *   { "id": 4, "ok": true, "alerters": [ ... ], "timings": { ... } }
+ *   { "id": 5, "ok": false, "error": "...", "timings": { ... } }
+ * Timings are in milliseconds: queue is the time between reception and start of the request, run is the execution time.
+ * Log messages are written on stderr. Command line options given after --serve (e.g., --cache-dir) are applied to all requests.
+ */
+public class DAABandsServer {
+	protected final PrintStream out; // responses
+	protected final ExecutorService pool;
+	protected final List<String> options; // command line options applied to all requests
+	protected final Map<String, ReentrantLock> outputLocks = new ConcurrentHashMap<String, ReentrantLock>(); // one lock per output file
+
+	public DAABandsServer (PrintStream out, List<String> options) {
+		this.out = out;
+		this.options = options;
+		pool = createExecutor();
+	}
+
+	/**
+	 * Utility function, creates an executor that starts a virtual thread for each task (Java 21+), 
+	 * or a pool of platform threads if virtual threads are not available. 
+	 * The executor is created by reflection so that the code can be compiled and run with older versions of Java.
+	 */
+	public static ExecutorService createExecutor () {
+		try {
+			Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			System.err.println("[DAABandsServer] Using virtual threads");
+			return (ExecutorService) executor;
+		} catch (Exception e) {
+			System.err.println("[DAABandsServer] Virtual threads are not available, using platform threads");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Reads requests from the given stream until the end of the stream or a shutdown request, 
+	 * and waits for pending requests to be completed
+	 */
+	public void serve (InputStream in) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty()) { continue; }
+				final long received = System.nanoTime();
+				Map<String, Object> req = null;
+				try {
+					Object obj = Json.parse(line);
+					if (!(obj instanceof Map)) { throw new IllegalArgumentException("request is not a json object"); }
+					@SuppressWarnings("unchecked")
+					Map<String, Object> map = (Map<String, Object>) obj;
+					req = map;
+				} catch (IllegalArgumentException e) {
+					reply(null, "\"ok\": false, \"error\": " + Json.quote("Malformed request (" + e.getMessage() + ")"), received, received);
+					continue;
+				}
+				if ("shutdown".equals(req.get("op"))) { break; }
+				final Map<String, Object> request = req;
+				pool.submit(() -> handle(request, received));
+			}
+		} catch (Exception e) {
+			System.err.println("** Error: " + e);
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			System.err.println("** Error: " + e);
+		}
+	}
+
+	/**
+	 * Executes a request and writes the response
+	 */
+	protected void handle (Map<String, Object> req, long received) {
+		long start = System.nanoTime();
+		String res = null;
+		try {
+			Object op = req.containsKey("op") ? req.get("op") : "bands";
+			if ("bands".equals(op)) {
+				res = bands(req);
+			} else if ("version".equals(op)) {
+				res = "\"ok\": true, \"version\": " + Json.quote(new DAABandsV2().getVersion());
+			} else if ("list-monitors".equals(op)) {
+				res = "\"ok\": true, \"monitors\": " + new DAABandsV2().printMonitorList();
+			} else if ("list-alerters".equals(op)) {
+				DAABandsV2 daaBands = new DAABandsV2();
+				daaBands.daaConfig = getString(req, "config");
+				res = daaBands.loadConfig() ? "\"ok\": true, \"alerters\": " + daaBands.printAlerters()
+					: "\"ok\": false, \"error\": " + Json.quote("Configuration file " + daaBands.daaConfig + " could not be loaded");
+			} else {
+				res = "\"ok\": false, \"error\": " + Json.quote("Unknown operation " + op);
+			}
+		} catch (Throwable e) {
+			System.err.println("** Error: " + e);
+			res = "\"ok\": false, \"error\": " + Json.quote(e.toString());
+		}
+		reply(req.get("id"), res, received, start);
+	}
+
+	/**
+	 * Computes the bands of a scenario, the request is translated in command line options of DAABandsV2
+	 */
+	protected String bands (Map<String, Object> req) {
+		String scenario = getString(req, "scenario");
+		if (scenario == null) {
+			return "\"ok\": false, \"error\": \"Please specify a daa file\"";
+		}
+		if (!new File(scenario).canRead()) {
+			return "\"ok\": false, \"error\": " + Json.quote("File " + scenario + " cannot be read");
+		}
+		String config = getString(req, "config");
+		String alerter = getString(req, "alerter");
+		String ownship = getString(req, "ownship");
+		String wind = null;
+		if (req.get("wind") instanceof Map) {
+			Map<?, ?> w = (Map<?, ?>) req.get("wind");
+			wind = "{ deg: " + Json.toString(w.get("deg"), "0") + ", knot: " + Json.toString(w.get("knot"), "0") + " }";
+		} else {
+			wind = getString(req, "wind");
+		}
+		String output = getString(req, "output");
+		List<String> args = new ArrayList<String>(options);
+		addOption(args, "--conf", config);
+		addOption(args, "--output", output);
+		addOption(args, "--alerter", alerter);
+		addOption(args, "--ownship", ownship);
+		addOption(args, "--wind", wind);
+		args.add(scenario);
+
+		DAABandsV2 daaBands = new DAABandsV2();
+		daaBands.parseCliArgs(args.toArray(new String[args.size()]));
+		if (output == null && (config != null || alerter != null || ownship != null || wind != null)) {
+			// the default output name depends only on the scenario, requests with different parameters need different names
+			int hash = Arrays.asList(config, alerter, ownship, wind).hashCode();
+			daaBands.ofname = DAABandsV2.getOutputFileName(daaBands.ofname, String.format("-%08x", hash));
+		}
+		if (!daaBands.loadConfig()) {
+			return "\"ok\": false, \"error\": " + Json.quote("Configuration file " + daaBands.daaConfig + " could not be loaded");
+		}
+		daaBands.readWind();
+		// a ReentrantLock does not pin the carrier of a virtual thread that waits for it, unlike synchronized (Java 21-23)
+		ReentrantLock lock = getOutputLock(daaBands.getOutputFileName());
+		lock.lock();
+		try {
+			daaBands.walkFile();
+		} catch (DAABandsV2.WalkException e) {
+			System.err.println("** Error: " + e.getMessage());
+			return "\"ok\": false, \"error\": " + Json.quote(e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+		return "\"ok\": true, \"output\": " + Json.quote(daaBands.getOutputFileName());
+	}
+
+	/**
+	 * Utility function, returns the lock of an output file, requests that write the same file are serialized on this lock
+	 */
+	protected ReentrantLock getOutputLock (String fname) {
+		String path = null;
+		try {
+			path = new File(fname).getCanonicalPath();
+		} catch (IOException e) {
+			path = new File(fname).getAbsolutePath();
+		}
+		return outputLocks.computeIfAbsent(path, k -> new ReentrantLock());
+	}
+
+	/**
+	 * Utility function, writes a response, one line per response
+	 */
+	protected void reply (Object id, String res, long received, long start) {
+		long end = System.nanoTime();
+		String timings = String.format("\"timings\": { \"queue\": %.2f, \"run\": %.2f, \"total\": %.2f }", 
+			(start - received) / 1e6, (end - start) / 1e6, (end - received) / 1e6);
+		String line = "{ \"id\": " + Json.toJson(id) + ", " + res + ", " + timings + " }";
+		synchronized (out) {
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	protected static void addOption (List<String> args, String option, String value) {
+		if (value != null) {
+			args.add(option);
+			args.add(value);
+		}
+	}
+
+	protected static String getString (Map<String, Object> req, String key) {
+		Object value = req.get(key);
+		return value != null ? Json.toString(value, null) : null;
+	}
+
+	/**
+	 * Minimal json parser and printer for the requests and responses of the service.
+	 * Objects are parsed as Map, arrays as List, numbers as Double.
+	 */
+	public static class Json {
+		protected final String text;
+		protected int pos = 0;
+
+		protected Json (String text) {
+			this.text = text;
+		}
+
+		public static Object parse (String text) {
+			Json json = new Json(text);
+			Object value = json.value();
+			json.skipSpaces();
+			if (json.pos < text.length()) { throw json.error("unexpected " + text.charAt(json.pos)); }
+			return value;
+		}
+
+		/**
+		 * Returns the value as a string, numbers with an integer value are printed without decimals
+		 */
+		public static String toString (Object value, String fallback) {
+			if (value == null) { return fallback; }
+			if (value instanceof Double && (Double) value == Math.rint((Double) value) && !Double.isInfinite((Double) value)) {
+				return Long.toString(((Double) value).longValue());
+			}
+			return value.toString();
+		}
+
+		public static String toJson (Object value) {
+			return value == null || value instanceof Boolean ? "" + value
+				: value instanceof Double ? toString(value, null)
+				: quote(value.toString());
+		}
+
+		public static String quote (String str) {
+			StringBuilder sb = new StringBuilder("\"");
+			for (int i = 0; i < str.length(); i++) {
+				char c = str.charAt(i);
+				switch (c) {
+					case '"': { sb.append("\\\""); break; }
+					case '\\': { sb.append("\\\\"); break; }
+					case '\n': { sb.append("\\n"); break; }
+					case '\r': { sb.append("\\r"); break; }
+					case '\t': { sb.append("\\t"); break; }
+					default: {
+						if (c < 0x20) { sb.append(String.format("\\u%04x", (int) c)); }
+						else { sb.append(c); }
+					}
+				}
+			}
+			return sb.append('"').toString();
+		}
+
+		protected IllegalArgumentException error (String msg) {
+			return new IllegalArgumentException(msg + " at position " + pos);
+		}
+
+		protected void skipSpaces () {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) { pos++; }
+		}
+
+		protected Object value () {
+			skipSpaces();
+			if (pos >= text.length()) { throw error("unexpected end of input"); }
+			char c = text.charAt(pos);
+			if (c == '{') { return object(); }
+			if (c == '[') { return array(); }
+			if (c == '"') { return string(); }
+			if (text.startsWith("true", pos)) { pos += 4; return true; }
+			if (text.startsWith("false", pos)) { pos += 5; return false; }
+			if (text.startsWith("null", pos)) { pos += 4; return null; }
+			int start = pos;
+			while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) { pos++; }
+			try {
+				return Double.parseDouble(text.substring(start, pos));
+			} catch (NumberFormatException e) {
+				pos = start;
+				throw error("unexpected " + c);
+			}
+		}
+
+		protected Map<String, Object> object () {
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			pos++; // {
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == '}') { pos++; return map; }
+			while (true) {
+				skipSpaces();
+				if (pos >= text.length() || text.charAt(pos) != '"') { throw error("expected attribute name"); }
+				String key = string();
+				skipSpaces();
+				if (pos >= text.length() || text.charAt(pos) != ':') { throw error("expected :"); }
+				pos++;
+				map.put(key, value());
+				skipSpaces();
+				if (pos < text.length() && text.charAt(pos) == ',') { pos++; continue; }
+				if (pos < text.length() && text.charAt(pos) == '}') { pos++; return map; }
+				throw error("expected , or }");
+			}
+		}
+
+		protected List<Object> array () {
+			List<Object> list = new ArrayList<Object>();
+			pos++; // [
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == ']') { pos++; return list; }
+			while (true) {
+				list.add(value());
+				skipSpaces();
+				if (pos < text.length() && text.charAt(pos) == ',') { pos++; continue; }
+				if (pos < text.length() && text.charAt(pos) == ']') { pos++; return list; }
+				throw error("expected , or ]");
+			}
+		}
+
+		protected String string () {
+			StringBuilder sb = new StringBuilder();
+			pos++; // "
+			while (pos < text.length()) {
+				char c = text.charAt(pos++);
+				if (c == '"') { return sb.toString(); }
+				if (c != '\\') { sb.append(c); continue; }
+				if (pos >= text.length()) { break; }
+				char e = text.charAt(pos++);
+				switch (e) {
+					case 'n': { sb.append('\n'); break; }
+					case 'r': { sb.append('\r'); break; }
+					case 't': { sb.append('\t'); break; }
+					case 'b': { sb.append('\b'); break; }
+					case 'f': { sb.append('\f'); break; }
+					case 'u': {
+						if (pos + 4 > text.length()) { throw error("invalid escape"); }
+						sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					}
+					default: { sb.append(e); }
+				}
+			}
+			throw error("unterminated string");
+		}
+	}
+}
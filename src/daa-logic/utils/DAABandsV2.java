@@ -37,13 +37,27 @@
    TERMINATION OF THIS AGREEMENT.
  **/
 
-import java.io.BufferedWriter;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
 
 import gov.nasa.larcfm.ACCoRD.Alerter;
 import gov.nasa.larcfm.ACCoRD.BandsRegion;
@@ -59,64 +73,11 @@ import gov.nasa.larcfm.Util.LatLonAlt;
 import gov.nasa.larcfm.Util.Projection;
 import gov.nasa.larcfm.Util.EuclideanProjection;
 import gov.nasa.larcfm.ACCoRD.Detection3D;
-import gov.nasa.larcfm.ACCoRD.RecoveryInformation;
 import gov.nasa.larcfm.ACCoRD.WCV_tvar;
 
 import static gov.nasa.larcfm.ACCoRD.DaidalusParameters.VERSION;
 
-class JsonBands {
-	public DAAMonitorsV2 monitors;
-	public List<String> ownshipArray;
-	public List<String> alertsArray;
-	public List<String> metricsArray; 
-	public List<String> windVectorsArray; 
-	public List<String> trkArray;
-	public List<String> gsArray;
-	public List<String> vsArray;
-	public List<String> altArray; 
-	public List<String> resTrkArray; 
-	public List<String> resGsArray;
-	public List<String> resVsArray; 
-	public List<String> resAltArray; 
-	public List<String> contoursArray;
-	public List<String> hazardZonesArray;
-	public List<String> monitorM1Array;
-	public List<String> monitorM2Array; 
-	public List<String> monitorM3Array; 
-	public List<String> monitorM4Array;
-
-	/**
-	 * Constructor
-	 */
-	public JsonBands () {
-		trkArray = new ArrayList<String>();
-		gsArray = new ArrayList<String>();
-		vsArray = new ArrayList<String>();
-		altArray = new ArrayList<String>();
-		alertsArray = new ArrayList<String>();
-
-		windVectorsArray = new ArrayList<String>();
-
-		ownshipArray = new ArrayList<String>();
-		metricsArray = new ArrayList<String>();
-
-		resTrkArray = new ArrayList<String>();
-		resGsArray = new ArrayList<String>();
-		resVsArray = new ArrayList<String>();
-		resAltArray = new ArrayList<String>();
-
-		contoursArray = new ArrayList<String>();
-		hazardZonesArray = new ArrayList<String>();
-
-		monitors = new DAAMonitorsV2();
-		monitorM1Array = new ArrayList<String>();
-		monitorM2Array = new ArrayList<String>();
-		monitorM3Array = new ArrayList<String>();
-		monitorM4Array = new ArrayList<String>();
-	}
-}
-
-public class DAABandsV2 {
+public class DAABandsV2 implements Cloneable {
 
 	protected static final int precision16 = 16;
 	protected static final String tool_name = "DAABandsV2";
@@ -129,6 +90,49 @@ public class DAABandsV2 {
 	protected boolean PRINT_METRICS = true;
 	protected boolean PRINT_POLYGONS = true;
 
+	// this flag enables streaming mode: the results of each time step are written to the chunk files as soon as they are computed, 
+	// and the single file with all the data is assembled from the chunk files at the end, so memory usage does not grow with the length of the scenario
+	protected boolean STREAM_OUTPUT = false;
+
+	// binary output (--format bin): the results are stored in a compact binary file that can be memory-mapped, see DAABinaryReader
+	protected boolean BINARY_OUTPUT = false;
+
+	// parallel mode: the scenario is split into time segments that are processed concurrently, each segment with its own copy of the Daidalus object.
+	// each segment starts with a warm-up interval (in seconds) so that hysteresis and persistence logic converge before the first step of the segment;
+	// a negative value selects a warm-up interval based on the hysteresis, persistence and M-of-N parameters of the configuration
+	protected int threads = 1;
+	protected double warmup = -1;
+	// when enabled, the results of the parallel run are compared with those of a sequential run
+	protected boolean VERIFY_THREADS = false;
+
+	// time window (--from, --to) and stride (--stride): only the steps in the window are computed and written to file, one every stride steps.
+	// the other steps are read by the file walker, but bands are not computed. When the window has a start time, the steps in the 
+	// warm-up interval before the window (see --warmup) are computed so that hysteresis and persistence are valid at the start of the window
+	protected double fromTime = Double.NEGATIVE_INFINITY;
+	protected double toTime = Double.POSITIVE_INFINITY;
+	protected int stride = 1;
+
+	// live mode (--tail): aircraft states are read from a growing file or a named pipe, bands are computed as soon as 
+	// each time step is complete and printed on stdout, one json object per line
+	protected boolean TAIL = false;
+	protected long tailFlush = 100; // ms, a time step is completed if no state arrives for tailFlush ms
+	protected long tailTimeout = 0; // ms, the input ends when a regular file does not grow for tailTimeout ms, never if 0
+
+	// results cache (--cache-dir, --cache-size): results are stored in a content-addressed cache and served without recomputation
+	protected String cacheDir = null;
+	protected long cacheSize = DAAResultCache.DEFAULT_MAX_SIZE;
+
+	// flight recording (--jfr): the events of each time step (see DAAFlightRecorder) and the default JDK events are recorded in jfrFile
+	protected String jfrFile = null;
+	protected static final int STEP_SKIP = 0; // the step is read, bands are not computed
+	protected static final int STEP_WARMUP = 1; // bands are computed, the results are discarded
+	protected static final int STEP_OUTPUT = 2; // bands are computed and written to file
+
+	// pipeline mode: bands computation, printing of the records, and writing to file run on separate threads, connected by bounded queues
+	protected boolean PIPELINE = true;
+	protected static final int PIPELINE_DEPTH = 16; // number of time steps that can be in flight between two stages
+	protected volatile Throwable pipelineError = null;
+
 	// the following flag and offset are introduced to avoid a region 
 	// in the atlantic ocean where worldwind is unable to render maps at certain zoom levels
 	// (all rendering layers disappear in that region when the zoom level is below ~2.5NMI)
@@ -141,6 +145,14 @@ public class DAABandsV2 {
 	protected String ifname = null; // input file name
 	protected int    precision = 2; // Precision of printed outputs
 	protected String ownshipName = null; // ownship name
+	// multiple ownships (--ownships, --all-ownships): the scenario is read once, and processed for each ownship concurrently
+	protected List<String> ownshipNames = null;
+	protected boolean ALL_OWNSHIPS = false;
+	// multiple configurations (--configs): the scenario is read once, and processed with each configuration concurrently
+	protected List<String> configNames = null;
+	// runtime of a worker in multiple ownships/configurations mode, used for the summary
+	protected long computeTime = 0;
+	protected int computedSteps = 0;
 
 	/* Units are loaded from configuration file */
 	protected String hs_units = "m/s";
@@ -156,9 +168,8 @@ public class DAABandsV2 {
 	protected String wind_knot = "0";
 	protected Velocity windVelocity = null;
 
-	// printWriter creates a single file with all the data.
-	protected PrintWriter printWriter = null;
-	// these additional printers break down the output into smaller chunks, useful for handling large datasets.
+	// the output is broken down into smaller chunks, useful for handling large datasets.
+	// the single file with all the data (ofname) is assembled from the chunks at the end, see printCombinedOutput
 	protected PrintWriter printWriterFiles = null; // the list of output files
 	protected PrintWriter printWriterInfo = null; // .info file
 	protected PrintWriter printWriterOwnship = null; // .ownship file
@@ -176,6 +187,18 @@ public class DAABandsV2 {
 	protected PrintWriter printWriterHdRes = null; // .hd-res file
 	protected PrintWriter printWriterContours = null; // .contours file
 	protected PrintWriter printWriterHazardZones = null; // .hazardzones file
+	// in streaming mode, the results of each monitor are stored in a temporary file, the .monitors file is assembled from these files at the end
+	protected PrintWriter printWriterMonitorResults[] = null;
+	// the .index file stores the time of each step and the position of the step in each chunk file with one line per step
+	protected DAAChunkIndex chunkIndex = null;
+	// array chunks, and the corresponding keys in the single output file
+	protected static final String sections[][] = {
+		{ ".ownship", "Ownship" }, { ".alerts", "Alerts" }, { ".wind", "WindVectors" }, { ".metrics", "Metrics" },
+		{ ".hd-bands", "Heading Bands" }, { ".hs-bands", "Horizontal Speed Bands" }, { ".vs-bands", "Vertical Speed Bands" }, { ".alt-bands", "Altitude Bands" },
+		{ ".hd-res", "Horizontal Direction Resolution" }, { ".hs-res", "Horizontal Speed Resolution" }, { ".vs-res", "Vertical Speed Resolution" }, { ".alt-res", "Altitude Resolution" },
+		{ ".contours", "Contours" }, { ".hazardzones", "Hazard Zones" }
+	};
+	protected static final String monitorsChunkHeader = "{ \"Monitors\": ";
 	protected String chunks[] = {
 		".info", ".ownship", ".alerts", ".wind", ".metrics", ".monitors", 
 		".hd-bands", ".vs-bands", ".hs-bands", ".alt-bands",
@@ -230,9 +253,31 @@ public class DAABandsV2 {
 		System.out.println("  --wind <wind_info>\n\tLoad wind vector information, a JSON object enclosed in double quotes \"{ deg: d, knot: m }\", where d and m are reals");
 		System.out.println("  --output <file.json>\n\tOutput file <file.json>");
 		System.out.println("  --ownship <tailnumber>\n\tOwnship name (tail number)");
+		System.out.println("  --ownships <tailnumber,tailnumber,...>\n\tProcess the scenario for each of the given ownships, each ownship has its own output files (<file>-ownship_<tailnumber>.json), ownships are processed concurrently on --threads threads (default: number of processors)");
+		System.out.println("  --all-ownships\n\tProcess the scenario for each aircraft as ownship, each ownship has its own output files");
+		System.out.println("  --configs <file.conf,file.conf,...>\n\tProcess the scenario with each of the given configurations, each configuration has its own output files (<file>-config_<conf>.json), configurations are processed concurrently on --threads threads (default: number of processors), a runtime summary is printed at the end. Can be combined with --ownships and --all-ownships");
 		System.out.println("  --list-monitors\n\tReturns the list of available monitors, in JSON format");
 		System.out.println("  --list-alerters <file.conf>\nReturns the list of alerters for a given configuration, in JSON format");
-		System.out.println("  --profiler-on\n\tTurns on profiling");
+		System.out.println("  --profiler-on\n\tTurns on profiling, the time of each step and the percentiles of the time of each phase (ingest, bands, resolutions, metrics, contours, hazard zones, monitors, serialization) are written in <file>.profiler.log and <file>.profiler.json, the time of each step is also written in <file>.profiler.csv");
+		System.out.println("  --stream\n\tWrite the results of each time step to file as soon as they are computed, memory usage does not depend on the length of the scenario");
+		System.out.println("  --threads <n>\n\tSplit the scenario into <n> time segments and process them concurrently");
+		System.out.println("  --warmup <s>\n\tWarm-up interval (in seconds) processed before each time segment and before --from, so that hysteresis and persistence converge (default depends on the configuration)");
+		System.out.println("  --verify-threads\n\tCompare the results of the parallel run with those of a sequential run");
+		System.out.println("  --no-pipeline\n\tCompute, print and write the results of each time step on a single thread");
+		System.out.println("  --from <s>\n\tCompute bands only for the time steps from time <s> (in seconds), preceded by a warm-up interval (see --warmup)");
+		System.out.println("  --to <s>\n\tCompute bands only for the time steps up to time <s> (in seconds)");
+		System.out.println("  --stride <n>\n\tCompute bands only for one time step every <n> steps (other steps are read but not computed)");
+		System.out.println("  --format <json|bin>\n\tOutput format, bin is a compact binary format that can be memory-mapped (see DAABinaryReader)");
+		System.out.println("  --cache-dir <folder>\n\tStore the results in a cache, results are served from the cache when scenario, configuration, wind, alerter, ownship, DAIDALUS version and output options are unchanged (not used with --ownships, --all-ownships, --configs, --profiler-on)");
+		System.out.println("  --cache-size <MB>\n\tMaximum size of the cache, least recently used results are evicted (default: " + (DAAResultCache.DEFAULT_MAX_SIZE >> 20) + ")");
+		System.out.println("  --tail\n\tLive mode, reads aircraft states from a file that is still being written or a named pipe, computes the bands as soon as each time step is complete, and prints the results of each time step on stdout, one json object per line, with the latency of the step");
+		System.out.println("  --tail-flush <ms>\n\tIn live mode, a time step is complete when a state with a later time arrives, or when no state arrives for <ms> milliseconds (default: 100)");
+		System.out.println("  --tail-timeout <s>\n\tIn live mode, stop when the input file does not grow for <s> seconds (default: wait until interrupted, a named pipe stops when it is closed)");
+		System.out.println("  --monitor <class>\n\tAdds a property monitor, <class> is the name of a class in the classpath that implements DAAMonitor (the option can be repeated)");
+		System.out.println("  --sparse-monitors\n\tThe results of each monitor are printed as a summary (time steps and duration of each color) and the list of intervals where the monitor is not green (start, end, monitor, dimension, color), instead of one record for each time step");
+		System.out.println("  --parallel-monitors\n\tEvaluates the monitors of each time step concurrently, useful with expensive custom monitors");
+		System.out.println("  --jfr [<file.jfr>]\n\tRecords a Java Flight Recorder file (default: <output file>.jfr) with the default JDK events and the events of each time step: computation (traffic count, bands counts, polygon vertex counts), serialization and writing (bytes), see DAAFlightRecorder. Requires Java 11 or greater");
+		System.out.println("  --serve\n\tService mode, keeps the JVM alive and processes requests read from stdin, one json object per line, responses are written on stdout (see DAABandsServer)");
 		System.exit(0);
 	}
 
@@ -317,19 +362,77 @@ public class DAABandsV2 {
 		}
 	}
 
+	/**
+	 * Utility function, prints the content of a chunk file on 'out' as a JSON array, one element for each line of the chunk file
+	 */
+	public static void printArray(PrintWriter out, File chunk, String label) throws IOException {
+		out.println("\"" + label + "\": [");
+		BufferedReader reader = new BufferedReader(new FileReader(chunk));
+		try {
+			boolean comma = false;
+			String str = reader.readLine();
+			while (str != null) {
+				if (comma) {
+					out.println(",");
+				} else {
+					comma = true;
+				}
+				out.print(str);
+				str = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+		out.println("\n]");
+	}
+
+	/**
+	 * Utility function, prints the descriptor of a monitor, the caller is in charge of printing the results and closing the descriptor
+	 */
+	protected static void printMonitorDescriptor (PrintWriter out, DAAMonitorsV2 monitors, int monitorID) {
+		String legend = DAAMonitorsV2.getLegend(monitorID);
+		String color = monitors.getColor(monitorID);
+		String label = DAAMonitorsV2.getLabel(monitorID);
+		out.print("{ \"id\": \"" + monitorID + "\", ");
+		out.print("\"name\": \"" + label + "\", ");
+		out.print("\"color\": \"" + color + "\", ");
+		out.print("\"legend\": " + legend + ",\n");
+	}
+
 	public static void printMonitors (PrintWriter out, DAAMonitorsV2 monitors, List<List<String>> info) {
 		out.println("[ ");
 		int len = DAAMonitorsV2.getSize();
 		for (int i = 0; i < len; i++) {
 			int monitorID = i + 1;
-			String legend = DAAMonitorsV2.getLegend(monitorID);
-			String color = monitors.getColor(monitorID);
-			String label = DAAMonitorsV2.getLabel(monitorID);
-			out.print("{ \"id\": \"" + monitorID + "\", ");
-			out.print("\"name\": \"" + label + "\", ");
-			out.print("\"color\": \"" + color + "\", ");
-			out.print("\"legend\": " + legend + ",\n");
-			printArray(out, info.get(i), "results");
+			printMonitorDescriptor(out, monitors, monitorID);
+			if (DAAMonitorsV2.isSparse()) {
+				monitors.printSparse(out, i);
+			} else {
+				printArray(out, info.get(i), "results");
+			}
+			if (i < len - 1) {
+				out.println("}\n,");
+			} else {
+				out.println("} ");
+			}
+		}
+		out.println(" ]");
+	}
+
+	/**
+	 * Utility function, prints the monitors on 'out', the results of each monitor are read from the given chunk files
+	 */
+	public static void printMonitors (PrintWriter out, DAAMonitorsV2 monitors, File[] info) throws IOException {
+		out.println("[ ");
+		int len = DAAMonitorsV2.getSize();
+		for (int i = 0; i < len; i++) {
+			int monitorID = i + 1;
+			printMonitorDescriptor(out, monitors, monitorID);
+			if (DAAMonitorsV2.isSparse()) {
+				monitors.printSparse(out, i);
+			} else {
+				printArray(out, info[i], "results");
+			}
 			if (i < len - 1) {
 				out.println("}\n,");
 			} else {
@@ -339,6 +442,22 @@ public class DAABandsV2 {
 		out.println(" ]");
 	}
 
+	/**
+	 * Utility function, adds the monitor implemented by the given class to the registry of the monitors (see --monitor)
+	 */
+	public static boolean loadMonitor (String className) {
+		try {
+			DAAMonitor monitor = (DAAMonitor) Class.forName(className).getDeclaredConstructor().newInstance();
+			if (DAAMonitorsV2.register(monitor)) {
+				System.out.println("Monitor " + DAAMonitorsV2.getSize() + " loaded: " + monitor.getLabel());
+			}
+			return true;
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			System.err.println("** Warning: Monitor " + className + " cannot be loaded (" + e + ")");
+		}
+		return false;
+	}
+
 	/**
 	 * Utility function, loads the configuration indicated in daaConfig
 	 */
@@ -490,7 +609,7 @@ public class DAABandsV2 {
 	 * @param pi Position of the intruder
 	 * @param po Position of the ownship
 	 */
-	public LatLonAlt getLatLonAlt (Position pi, Position po) {
+	public static LatLonAlt getLatLonAlt (Position pi, Position po) {
 		if (pi.isLatLon()) {
 			return pi.lla();
 		}
@@ -499,49 +618,57 @@ public class DAABandsV2 {
 	}
 
 	public String printPolygon (List<Position> ply, Position po) {
-		String polygon = "";
+		return printPolygon(new DAAJsonWriter(), ply, po).toString();
+	}
+
+	public DAAJsonWriter printPolygon (DAAJsonWriter json, List<Position> ply, Position po) {
+		json.append('[');
 		boolean comma = false;
 		for (Position pi:ply) {
 			LatLonAlt lla = getLatLonAlt(pi, po);
-			String lat = llaFlag ? f.FmPrecision(Units.to("deg", lla.lat()) + latOffset, precision16)
-					: f.FmPrecision(Units.to("deg", lla.lat()), precision16);
-			String lon = llaFlag ? f.FmPrecision(Units.to("deg", lla.lon()) + lonOffset, precision16)
-					: f.FmPrecision(Units.to("deg", lla.lon()), precision16);
+			double lat = llaFlag ? Units.to("deg", lla.lat()) + latOffset : Units.to("deg", lla.lat());
+			double lon = llaFlag ? Units.to("deg", lla.lon()) + lonOffset : Units.to("deg", lla.lon());
 			if (comma) {
-				polygon += ", ";
+				json.append(", ");
 			} else {
 				comma = true;
 			}
-			polygon += "{ \"lat\": \"" + lat;
-			polygon += "\", \"lon\": \"" + lon; 
-			polygon += "\", \"alt\": \"" + fmt(Units.to("ft", lla.alt()));
-			polygon += "\" }";
+			json.append("{ \"lat\": \"").appendFixed(lat, precision16);
+			json.append("\", \"lon\": \"").appendFixed(lon, precision16);
+			json.append("\", \"alt\": \"").appendFixed(Units.to("ft", lla.alt()), precision);
+			json.append("\" }");
 		}
-		polygon = "[" + polygon + "]";
-		return polygon;
+		json.append(']');
+		return json;
 	}
 
 	public String printPolygons (List<List<Position>> polygons, Position po) {
-		String res = "";
+		return printPolygons(new DAAJsonWriter(), polygons, po).toString();
+	}
+
+	public DAAJsonWriter printPolygons (DAAJsonWriter json, List<List<Position>> polygons, Position po) {
+		json.append("[ ");
 		boolean comma = false;
 		for (List<Position> ply : polygons) {
 			if (comma) {
-				res += ", ";
+				json.append(", ");
 			} else {
 				comma = true;
 			}
-			res += printPolygon(ply, po);
+			printPolygon(json, ply, po);
 		}
-		return "[ " + res + " ]";
+		json.append(" ]");
+		return json;
 	}
 
 	public String fmt(double val) {
-		return f.FmPrecision(val,precision);
+		return DAAFormatter.format(val, precision);
 	}
 
+	protected static final String internalunits[]  = {"m", "s", "rad", "m/s", "m/s^2", "rad/s"};
+
 	public static String getCompatibleInternalUnit(String unit) {
-		String internalunits[]  = {"m", "s", "rad", "m/s", "m/s^2", "rad/s"};
-		for (int i=0; i < 6; ++i) {
+		for (int i=0; i < internalunits.length; ++i) {
 			if (Units.isCompatible(unit,internalunits[i])) {
 				return internalunits[i];
 			}
@@ -549,111 +676,197 @@ public class DAABandsV2 {
 		return "";
 	}
 
+	public static DAAJsonWriter jsonInt(DAAJsonWriter json, String label, int val) {
+		return json.label(label).append(val);
+	}
+
+	public static DAAJsonWriter jsonString(DAAJsonWriter json, String label, String str) {
+		return json.label(label).quote(str);
+	}
+
 	public String jsonValUnits(String label, double val, String units) {
-		String json = "";
-		json += "\""+label+"\": { ";
-		json += "\"val\": \"" + fmt(Units.to(units,val)) + "\"";
-		json += ", \"units\": \"" + units + "\"";
+		return jsonValUnits(new DAAJsonWriter(), label, val, units).toString();
+	}
+
+	public DAAJsonWriter jsonValUnits(DAAJsonWriter json, String label, double val, String units) {
+		json.label(label).append("{ ");
+		json.append("\"val\": \"").appendFixed(Units.to(units,val), precision).append('"');
+		json.append(", \"units\": \"").append(units).append('"');
 		if (Units.getFactor(units) != 1.0) {
-			json += ", \"internal\": \"" + fmt(val) + "\"";
+			json.append(", \"internal\": \"").appendFixed(val, precision).append('"');
 			String internalunit = getCompatibleInternalUnit(units);
 			if (!internalunit.isEmpty()) {
-				json += ", \"internal_units\": \"" + internalunit + "\"";
+				json.append(", \"internal_units\": \"").append(internalunit).append('"');
 			}
 		}
-		json += " }";
+		json.append(" }");
 		return json;
 	}
 
 	public String jsonValueRegion(String label, double val, String units, BandsRegion region) {
-		String json = "\""+label+"\": {";
-		json += jsonValUnits("valunit",val,units);
-		json += ", "+jsonString("region",region.toString());
-		json += " }";
+		return jsonValueRegion(new DAAJsonWriter(), label, val, units, region).toString();
+	}
+
+	public DAAJsonWriter jsonValueRegion(DAAJsonWriter json, String label, double val, String units, BandsRegion region) {
+		json.label(label).append('{');
+		jsonValUnits(json, "valunit", val, units);
+		json.append(", ");
+		jsonString(json, "region", region.toString());
+		json.append(" }");
 		return json;
 	}
 
 	public String jsonVect3(String label, Vect3 v) {
-		String json = "";
-		json += "\""+label+"\": { ";
-		json += "\"x\": \"" + fmt(v.x) + "\"";
-		json += ", \"y\": \"" + fmt(v.y) + "\"";
-		json += ", \"z\": \"" + fmt(v.z) + "\"";
-		json += " }";
+		return jsonVect3(new DAAJsonWriter(), label, v).toString();
+	}
+
+	public DAAJsonWriter jsonVect3(DAAJsonWriter json, String label, Vect3 v) {
+		return jsonVect3(json, label, v.x, v.y, v.z);
+	}
+
+	public DAAJsonWriter jsonVect3(DAAJsonWriter json, String label, double x, double y, double z) {
+		json.label(label).append("{ ");
+		json.append("\"x\": \"").appendFixed(x, precision).append('"');
+		json.append(", \"y\": \"").appendFixed(y, precision).append('"');
+		json.append(", \"z\": \"").appendFixed(z, precision).append('"');
+		json.append(" }");
 		return json;
 	}
 
 	public String jsonAircraftState(TrafficState ac, boolean wind) {
-		Velocity av = ac.getAirVelocity();
-		Velocity gv = ac.getGroundVelocity();
-		String json = "{ ";
-		json += "\"id\": \""+ ac.getId()+"\"";
-		json += ", "+jsonVect3("s",ac.get_s());
-		json += ", "+jsonVect3("v",ac.get_v());
-		json += ", "+jsonValUnits("altitude",ac.altitude(),alt_units);
-		json += ", "+jsonValUnits("track",gv.compassAngle(),hdir_units);
-		json += ", "+jsonValUnits("heading",ac.horizontalDirection(),hdir_units);
-		json += ", "+jsonValUnits("groundspeed",gv.gs(),hs_units);
-		json += ", "+jsonValUnits("airspeed",av.gs(),hs_units);
-		json += ", "+jsonValUnits("verticalspeed",ac.verticalSpeed(),vs_units);
-		json += ", \"wind\": "+wind;
-		json += " }";
+		return jsonAircraftState(new DAAJsonWriter(), ac, wind).toString();
+	}
+
+	public DAAJsonWriter jsonAircraftState(DAAJsonWriter json, TrafficState ac, boolean wind) {
+		return jsonAircraftState(json, new DAAStepSnapshot.AircraftState().set(ac, wind));
+	}
+
+	public DAAJsonWriter jsonAircraftState(DAAJsonWriter json, DAAStepSnapshot.AircraftState ac) {
+		json.append("{ ");
+		json.append("\"id\": \"").append(ac.id).append('"');
+		json.append(", "); jsonVect3(json, "s", ac.sx, ac.sy, ac.sz);
+		json.append(", "); jsonVect3(json, "v", ac.vx, ac.vy, ac.vz);
+		json.append(", "); jsonValUnits(json, "altitude", ac.altitude, alt_units);
+		json.append(", "); jsonValUnits(json, "track", ac.track, hdir_units);
+		json.append(", "); jsonValUnits(json, "heading", ac.heading, hdir_units);
+		json.append(", "); jsonValUnits(json, "groundspeed", ac.groundspeed, hs_units);
+		json.append(", "); jsonValUnits(json, "airspeed", ac.airspeed, hs_units);
+		json.append(", "); jsonValUnits(json, "verticalspeed", ac.verticalspeed, vs_units);
+		json.append(", \"wind\": ").append(ac.wind);
+		json.append(" }");
 		return json;
 	}
 
 	public String jsonAircraftMetrics(int ac_idx) {
+		return jsonAircraftMetrics(new DAAJsonWriter(), ac_idx).toString();
+	}
+
+	public DAAJsonWriter jsonAircraftMetrics(DAAJsonWriter json, int ac_idx) {
+		DAAStepSnapshot.Traffic ac = new DAAStepSnapshot.Traffic();
+		takeMetrics(ac, ac_idx);
+		return jsonAircraftMetrics(json, ac);
+	}
+
+	public DAAJsonWriter jsonAircraftMetrics(DAAJsonWriter json, DAAStepSnapshot.Traffic ac) {
+		json.append("{ ");
+		json.append("\"separation\": { "); jsonValUnits(json, "horizontal", ac.horizontalSeparation, hrec_units);
+		json.append(", "); jsonValUnits(json, "vertical", ac.verticalSeparation, vrec_units); json.append(" }");
+		json.append(", \"missdistance\": { "); jsonValUnits(json, "horizontal", ac.horizontalMissDistance, hrec_units);
+		json.append(", "); jsonValUnits(json, "vertical", ac.verticalMissDistance, vrec_units); json.append(" }");
+		json.append(", \"closurerate\": { "); jsonValUnits(json, "horizontal", ac.horizontalClosureRate, hs_units);
+		json.append(", "); jsonValUnits(json, "vertical", ac.verticalClosureRate, vs_units); json.append(" }");
+		json.append(", "); jsonValUnits(json, "tcpa", ac.tcpa, time_units);
+		json.append(", "); jsonValUnits(json, "tcoa", ac.tcoa, time_units);
+		json.append(", "); jsonValUnits(json, "taumod", ac.taumod, time_units);
+		json.append(" }");
+		return json;
+	}
+
+	/**
+	 * Utility function, prints the resolution record of one dimension (heading, horizontal speed, vertical speed, altitude)
+	 */
+	protected DAAJsonWriter jsonResolution(DAAJsonWriter json, String time, DAAStepSnapshot.Resolution res, String units) {
+		boolean isConflict = !Double.isNaN(res.preferredResolution);
+		json.append("{ \"time\": ").append(time);
+		json.append(", "); jsonValueRegion(json, "preferred_resolution", res.preferredResolution, units, res.preferredRegion);
+		json.append(", "); jsonValueRegion(json, "other_resolution", res.otherResolution, units, res.otherRegion);
+		json.append(", \"flags\": { \"conflict\": ").append(isConflict).append(", \"recovery\": ").append(res.recoveryComputed)
+			.append(", \"saturated\": ").append(res.recoverySaturated).append(", \"preferred\": ").append(res.preferred).append(" }");
+		json.append(", \"recovery\": { \"time\": \"").appendFixed(res.timeToRecovery, precision).append("\", \"nfactor\": \"").append(res.nFactor);
+		json.append("\", \"distance\": {"); jsonValUnits(json, "horizontal", res.recoveryHorizontalDistance, hrec_units);
+		json.append(", "); jsonValUnits(json, "vertical", res.recoveryVerticalDistance, vrec_units); json.append("}}");
+		json.append(" }");
+		return json;
+	}
+
+	/**
+	 * Utility function, prints the bands record of one dimension (heading, horizontal speed, vertical speed, altitude)
+	 */
+	protected DAAJsonWriter jsonBandsRecord(DAAJsonWriter json, String time, DAAStepSnapshot.Bands bands, String units) {
+		json.append("{ \"time\": ").append(time);
+		json.append(", \"bands\": [ ");
+		for (int i = 0; i < bands.size(); i++) {
+			json.append("{ \"range\": ").append(bands.ranges.get(i));
+			json.append(", \"units\": \"").append(units).append('"');
+			json.append(", \"region\": \"").append(bands.regions.get(i)).append("\" }");
+			if (i < bands.size() - 1) { json.append(", "); }
+		}
+		json.append(" ]}");
+		return json;
+	}
+
+	/**
+	 * Utility function, stores in ac the metrics of traffic aircraft ac_idx
+	 */
+	protected void takeMetrics (DAAStepSnapshot.Traffic ac, int ac_idx) {
 		int alerter_idx = daa.alerterIndexBasedOnAlertingLogic(ac_idx);
 		Alerter alerter = daa.getAlerterAt(alerter_idx);
 		int corrective_level = daa.correctiveAlertLevel(alerter_idx);
 		Optional<Detection3D> d3d = alerter.getDetector(corrective_level);
 		Detection3D detector = d3d.get();
-		double taumod = (detector instanceof WCV_tvar) ? daa.modifiedTau(ac_idx,((WCV_tvar)detector).getDTHR()) : Double.NaN;
-		String json = "{ ";
-		json += "\"separation\": { "+jsonValUnits("horizontal",daa.currentHorizontalSeparation(ac_idx),hrec_units) + 
-				", "+jsonValUnits("vertical",daa.currentVerticalSeparation(ac_idx),vrec_units) + " }";
-		json += ", \"missdistance\": { "+jsonValUnits("horizontal",daa.predictedHorizontalMissDistance(ac_idx),hrec_units) + 
-				", "+jsonValUnits("vertical",daa.predictedVerticalMissDistance(ac_idx),vrec_units) + " }";
-		json += ", \"closurerate\": { "+jsonValUnits("horizontal",daa.horizontalClosureRate(ac_idx),hs_units) + 
-				", "+jsonValUnits("vertical",daa.verticalClosureRate(ac_idx),vs_units) + " }";
-		json += ", "+jsonValUnits("tcpa",daa.timeToHorizontalClosestPointOfApproach(ac_idx),time_units);
-		json += ", "+jsonValUnits("tcoa",daa.timeToCoAltitude(ac_idx),time_units);
-		json += ", "+jsonValUnits("taumod",taumod,time_units);
-		json += " }";
-		return json;
+		ac.taumod = (detector instanceof WCV_tvar) ? daa.modifiedTau(ac_idx,((WCV_tvar)detector).getDTHR()) : Double.NaN;
+		ac.horizontalSeparation = daa.currentHorizontalSeparation(ac_idx);
+		ac.verticalSeparation = daa.currentVerticalSeparation(ac_idx);
+		ac.horizontalMissDistance = daa.predictedHorizontalMissDistance(ac_idx);
+		ac.verticalMissDistance = daa.predictedVerticalMissDistance(ac_idx);
+		ac.horizontalClosureRate = daa.horizontalClosureRate(ac_idx);
+		ac.verticalClosureRate = daa.verticalClosureRate(ac_idx);
+		ac.tcpa = daa.timeToHorizontalClosestPointOfApproach(ac_idx);
+		ac.tcoa = daa.timeToCoAltitude(ac_idx);
 	}
 
 	/**
-	 * Utility function, performs tha computation of bands polygons and metrics
+	 * Utility function, queries the Daidalus object and stores in snap the results of the current time step.
+	 * The results of the monitors are computed here as well, from the snapshot, unless monitors is null 
+	 * (pipeline mode, where the monitors are evaluated by the serializer thread, see checkMonitors).
 	 */
-	public String jsonBands (JsonBands jb) {
+	public void takeSnapshot (DAAStepSnapshot snap, DAAMonitorsV2 monitors) {
+		// time of each phase (see --profiler-on), DAIDALUS computes bands and alerts when they are first queried
+		boolean profiling = PROFILER_ENABLED && profiler != null;
+		long lap = profiling ? System.nanoTime() : 0;
+		DAAFlightRecorder.StepEvent event = new DAAFlightRecorder.StepEvent();
+		event.begin();
+		snap.reset(daa.lastTrafficIndex());
 
 		// ownship
 		TrafficState ownship = daa.getOwnshipState();
-		String time = fmt(daa.getCurrentTime());
-		String own = "{ \"time\": " + time; 
-		own += ", \"acstate\": " + jsonAircraftState(daa.getOwnshipState(), !daa.getWindVelocityTo().isZero());
-		BandsRegion currentTrkRegion = daa.regionOfHorizontalDirection(ownship.horizontalDirection()); 
-		own += ", "+jsonString("trk_region",currentTrkRegion.toString());
-		BandsRegion currentGsRegion = daa.regionOfHorizontalSpeed(ownship.horizontalSpeed()); 
-		own += ", "+jsonString("gs_region",currentGsRegion.toString());
-		BandsRegion currentVsRegion = daa.regionOfVerticalSpeed(ownship.verticalSpeed()); 
-		own += ", "+jsonString("vs_region",currentVsRegion.toString());
-		BandsRegion currentAltRegion = daa.regionOfAltitude(ownship.altitude()); 
-		own += ", "+jsonString("alt_region",currentAltRegion.toString());
-		own += " }";
-		jb.ownshipArray.add(own);
+		boolean wind = !daa.getWindVelocityTo().isZero();
+		snap.time = daa.getCurrentTime();
+		snap.ownship.set(ownship, wind);
+		snap.trkRegion = daa.regionOfHorizontalDirection(ownship.horizontalDirection()); 
+		snap.gsRegion = daa.regionOfHorizontalSpeed(ownship.horizontalSpeed()); 
+		snap.vsRegion = daa.regionOfVerticalSpeed(ownship.verticalSpeed()); 
+		snap.altRegion = daa.regionOfAltitude(ownship.altitude()); 
 
 		// wind vectors
 		Velocity wv = daa.getWindVelocityFrom();
-		String windVectors = "{ \"time\": " + time; 
-		windVectors += ", \"deg\": \"" + fmt(wv.compassAngle("deg")) + "\"";
-		windVectors += ", \"knot\": \"" + fmt(wv.groundSpeed("knot"))  + "\"";
-		windVectors += " }";
-		jb.windVectorsArray.add(windVectors);
+		snap.windDeg = wv.compassAngle("deg");
+		snap.windKnot = wv.groundSpeed("knot");
 
 		// traffic alerts
-		String alerts = "{ \"time\": " + time + ", \"alerts\": [ ";
+		snap.correctiveRegionOrder = daa.getCorrectiveRegion().orderOfConflictRegion();
 		for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
+			DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
 			int alerter_idx = daa.alerterIndexBasedOnAlertingLogic(ac);
 			Alerter alerter = daa.getAlerterAt(alerter_idx);
 			int alert_level = daa.alertLevel(ac);
@@ -663,228 +876,96 @@ public class DAABandsV2 {
 			} else {
 				alert_region = daa.regionOfAlertLevel(alerter_idx,alert_level);
 			}
-			String ac_name = daa.getAircraftStateAt(ac).getId();
-			if (ac > 1) { alerts += ", "; }
-			alerts += "{ " + jsonString("ac",ac_name) 
-			+ ", " + jsonInt("alert_level",alert_level) 
-			+ ", " + jsonString("alert_region",alert_region.toString())
-			+ ", " + jsonString("alerter",alerter.getId())
-			+ ", " + jsonInt("alerter_idx",alerter_idx)
-			+ "}";
-		}
-		alerts += " ]}";
-		jb.alertsArray.add(alerts);
+			traffic.state.id = daa.getAircraftStateAt(ac).getId();
+			traffic.alertLevel = alert_level;
+			traffic.alertRegion = alert_region;
+			traffic.alerter = alerter.getId();
+			traffic.alerterIndex = alerter_idx;
+		}
+
+		if (profiling) { lap = profiler.lap(DAAProfiler.BANDS, lap); }
 
 		// Traffic aircraft
-		String traffic = "{ \"time\": " + time + ", \"aircraft\": [ ";
 		if (PRINT_METRICS) {
 			for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
-				if (ac > 1) { traffic += ", "; }
-				traffic += "{ \"acstate\": " + jsonAircraftState(daa.getAircraftStateAt(ac), !daa.getWindVelocityTo().isZero());
-				traffic += ", \"metrics\": " + jsonAircraftMetrics(ac);
-				traffic += " }";
+				DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+				traffic.state.set(daa.getAircraftStateAt(ac), wind);
+				takeMetrics(traffic, ac);
 			}
 		}
-		traffic += " ]}";
-		jb.metricsArray.add(traffic);
+
+		if (profiling) { lap = profiler.lap(DAAProfiler.METRICS, lap); }
 
 		// bands
-		String trkBands = "{ \"time\": " + time;
-		trkBands += ", \"bands\": [ ";
 		for (int i = 0; i < daa.horizontalDirectionBandsLength(); i++) {
-			trkBands += "{ \"range\": " + daa.horizontalDirectionIntervalAt(i, hdir_units);
-			trkBands += ", \"units\": \"" +  hdir_units + "\"";
-			trkBands += ", \"region\": \"" + daa.horizontalDirectionRegionAt(i) + "\" }";
-			if (i < daa.horizontalDirectionBandsLength() - 1) { trkBands += ", "; }
+			snap.trkBands.add(daa.horizontalDirectionIntervalAt(i, hdir_units), daa.horizontalDirectionRegionAt(i));
 		}
-		trkBands += " ]}";
-		jb.trkArray.add(trkBands);
-
-		String gsBands = "{ \"time\": " + time;
-		gsBands += ", \"bands\": [ ";
 		for (int i = 0; i < daa.horizontalSpeedBandsLength(); i++) {
-			gsBands += "{ \"range\": " + daa.horizontalSpeedIntervalAt(i, hs_units);
-			gsBands += ", \"units\": \"" + hs_units + "\"";
-			gsBands += ", \"region\": \"" + daa.horizontalSpeedRegionAt(i) + "\" }";
-			if (i < daa.horizontalSpeedBandsLength() - 1) { gsBands += ", "; }
+			snap.gsBands.add(daa.horizontalSpeedIntervalAt(i, hs_units), daa.horizontalSpeedRegionAt(i));
 		}
-		gsBands += " ]}";
-		jb.gsArray.add(gsBands);
-
-		String vsBands = "{ \"time\": " + time;
-		vsBands += ", \"bands\": [ ";
 		for (int i = 0; i < daa.verticalSpeedBandsLength(); i++) {
-			vsBands += "{ \"range\": " + daa.verticalSpeedIntervalAt(i, vs_units);
-			vsBands += ", \"units\": \"" + vs_units + "\"";
-			vsBands += ", \"region\": \"" + daa.verticalSpeedRegionAt(i) + "\" }";
-			if (i < daa.verticalSpeedBandsLength() - 1) { vsBands += ", "; }
+			snap.vsBands.add(daa.verticalSpeedIntervalAt(i, vs_units), daa.verticalSpeedRegionAt(i));
 		}
-		vsBands += " ]}";
-		jb.vsArray.add(vsBands);
-
-		String altBands = "{ \"time\": " + time;
-		altBands += ", \"bands\": [ ";
 		for (int i = 0; i < daa.altitudeBandsLength(); i++) {
-			altBands += "{ \"range\": " + daa.altitudeIntervalAt(i, alt_units);
-			altBands += ", \"units\": \"" + alt_units + "\"";
-			altBands += ", \"region\": \"" + daa.altitudeRegionAt(i) + "\" }";
-			if (i < daa.altitudeBandsLength() - 1) { altBands += ", "; }
+			snap.altBands.add(daa.altitudeIntervalAt(i, alt_units), daa.altitudeRegionAt(i));
 		}
-		altBands += " ]}";
-		jb.altArray.add(altBands);
+
+		if (profiling) { lap = profiler.lap(DAAProfiler.BANDS, lap); }
 
 		// resolutions
-		String trkResolution = "{ \"time\": " + time;
 		boolean preferredTrk = daa.preferredHorizontalDirectionRightOrLeft();
 		double resTrk = daa.horizontalDirectionResolution(preferredTrk);
 		double resTrk_sec = daa.horizontalDirectionResolution(!preferredTrk);
 		BandsRegion resTrkRegion = daa.regionOfHorizontalDirection(resTrk); 
 		BandsRegion resTrkRegion_sec = daa.regionOfHorizontalDirection(resTrk_sec); 
-		boolean isConflict = !Double.isNaN(resTrk);
-		RecoveryInformation recoveryInfo = daa.horizontalDirectionRecoveryInformation();
-		boolean isRecovery = recoveryInfo.recoveryBandsComputed();
-		boolean isSaturated = recoveryInfo.recoveryBandsSaturated();
-		String timeToRecovery = fmt(recoveryInfo.timeToRecovery());
-		String nFactor = f.Fmi(recoveryInfo.nFactor());
-		trkResolution += ", "+jsonValueRegion("preferred_resolution",resTrk,hdir_units,resTrkRegion);
-		trkResolution += ", "+jsonValueRegion("other_resolution",resTrk_sec,hdir_units,resTrkRegion_sec);
-		trkResolution += ", \"flags\": { \"conflict\": " + isConflict + ", \"recovery\": " + isRecovery + ", \"saturated\": " + isSaturated + ", \"preferred\": " + preferredTrk + " }"; 
-		trkResolution += ", \"recovery\": { \"time\": \"" + timeToRecovery + "\", \"nfactor\": \"" + nFactor;
-		trkResolution += "\", \"distance\": {"+jsonValUnits("horizontal",recoveryInfo.recoveryHorizontalDistance(),hrec_units); 
-		trkResolution += ", "+jsonValUnits("vertical",recoveryInfo.recoveryVerticalDistance(),vrec_units)+"}}"; 
-		trkResolution += " }";
-		jb.resTrkArray.add(trkResolution);
-
-		String gsResolution = "{ \"time\": " + time;
+		snap.trkResolution.set(resTrk, resTrk_sec, resTrkRegion, resTrkRegion_sec, preferredTrk, daa.horizontalDirectionRecoveryInformation());
+
 		boolean preferredGs = daa.preferredHorizontalSpeedUpOrDown();
 		double resGs = daa.horizontalSpeedResolution(preferredGs);
 		double resGs_sec = daa.horizontalSpeedResolution(!preferredGs);
 		BandsRegion resGsRegion = daa.regionOfHorizontalSpeed(resGs); // we want to use internal units here, to minimize round-off errors
 		BandsRegion resGsRegion_sec = daa.regionOfHorizontalSpeed(resGs_sec); // we want to use internal units here, to minimize round-off errors
-		isConflict = !Double.isNaN(resGs);
-		recoveryInfo = daa.horizontalSpeedRecoveryInformation();
-		isRecovery = recoveryInfo.recoveryBandsComputed();
-		isSaturated = recoveryInfo.recoveryBandsSaturated();
-		timeToRecovery = fmt(recoveryInfo.timeToRecovery());
-		nFactor = f.Fmi(recoveryInfo.nFactor());
-		gsResolution += ", "+jsonValueRegion("preferred_resolution",resGs,hs_units,resGsRegion);
-		gsResolution += ", "+jsonValueRegion("other_resolution",resGs_sec,hs_units,resGsRegion_sec);
-		gsResolution += ", \"flags\": { \"conflict\": " + isConflict + ", \"recovery\": " + isRecovery + ", \"saturated\": " + isSaturated + ", \"preferred\": " + preferredGs + " }"; 
-		gsResolution += ", \"recovery\": { \"time\": \"" + timeToRecovery + "\", \"nfactor\": \"" + nFactor;
-		gsResolution += "\", \"distance\": {"+jsonValUnits("horizontal",recoveryInfo.recoveryHorizontalDistance(),hrec_units); 
-		gsResolution += ", "+jsonValUnits("vertical",recoveryInfo.recoveryVerticalDistance(),vrec_units)+"}}"; 
-		gsResolution += " }";
-		jb.resGsArray.add(gsResolution);
-
-		String vsResolution = "{ \"time\": " + time;
+		snap.gsResolution.set(resGs, resGs_sec, resGsRegion, resGsRegion_sec, preferredGs, daa.horizontalSpeedRecoveryInformation());
+
 		boolean preferredVs = daa.preferredVerticalSpeedUpOrDown();
 		double resVs = daa.verticalSpeedResolution(preferredVs);
 		double resVs_sec = daa.verticalSpeedResolution(!preferredVs);
 		BandsRegion resVsRegion = daa.regionOfVerticalSpeed(resVs); // we want to use internal units here, to minimize round-off errors
 		BandsRegion resVsRegion_sec = daa.regionOfVerticalSpeed(resVs_sec); // we want to use internal units here, to minimize round-off errors
-		isConflict = !Double.isNaN(resVs);
-		recoveryInfo = daa.verticalSpeedRecoveryInformation();
-		isRecovery = recoveryInfo.recoveryBandsComputed();
-		isSaturated = recoveryInfo.recoveryBandsSaturated();
-		timeToRecovery = fmt(recoveryInfo.timeToRecovery());
-		nFactor = f.Fmi(recoveryInfo.nFactor());
-		vsResolution += ", "+jsonValueRegion("preferred_resolution",resVs,vs_units,resVsRegion);
-		vsResolution += ", "+jsonValueRegion("other_resolution",resVs_sec,vs_units,resVsRegion_sec);
-		vsResolution += ", \"flags\": { \"conflict\": " + isConflict + ", \"recovery\": " + isRecovery + ", \"saturated\": " + isSaturated + ", \"preferred\": " + preferredVs + " }"; 
-		vsResolution += ", \"recovery\": { \"time\": \"" + timeToRecovery + "\", \"nfactor\": \"" + nFactor;
-		vsResolution += "\", \"distance\": {"+jsonValUnits("horizontal",recoveryInfo.recoveryHorizontalDistance(),hrec_units); 
-		vsResolution += ", "+jsonValUnits("vertical",recoveryInfo.recoveryVerticalDistance(),vrec_units)+"}}"; 
-		vsResolution += " }";
-		jb.resVsArray.add(vsResolution);
-
-		String altResolution = "{ \"time\": " + time;
+		snap.vsResolution.set(resVs, resVs_sec, resVsRegion, resVsRegion_sec, preferredVs, daa.verticalSpeedRecoveryInformation());
+
 		boolean preferredAlt = daa.preferredAltitudeUpOrDown();
 		double resAlt = daa.altitudeResolution(preferredAlt);
 		double resAlt_sec = daa.altitudeResolution(!preferredAlt);
 		BandsRegion resAltRegion = daa.regionOfAltitude(resAlt); // we want to use internal units here, to minimize round-off errors
 		BandsRegion resAltRegion_sec = daa.regionOfAltitude(resAlt_sec); // we want to use internal units here, to minimize round-off errors
-		isConflict = !Double.isNaN(resAlt);
-		recoveryInfo = daa.altitudeRecoveryInformation();
-		isRecovery = recoveryInfo.recoveryBandsComputed();
-		isSaturated = recoveryInfo.recoveryBandsSaturated();
-		timeToRecovery = fmt(recoveryInfo.timeToRecovery());
-		nFactor = f.Fmi(recoveryInfo.nFactor());
-		altResolution += ", "+jsonValueRegion("preferred_resolution",resAlt,alt_units,resAltRegion);
-		altResolution += ", "+jsonValueRegion("other_resolution",resAlt_sec,alt_units,resAltRegion_sec);
-		altResolution += ", \"flags\": { \"conflict\": " + isConflict + ", \"recovery\": " + isRecovery + ", \"saturated\": " + isSaturated + ", \"preferred\": " + preferredAlt + " }"; 
-		altResolution += ", \"recovery\": { \"time\": \"" + timeToRecovery + "\", \"nfactor\": \"" + nFactor;
-		altResolution += "\", \"distance\": {"+jsonValUnits("horizontal",recoveryInfo.recoveryHorizontalDistance(),hrec_units); 
-		altResolution += ", "+jsonValUnits("vertical",recoveryInfo.recoveryVerticalDistance(),vrec_units)+"}}"; 
-		altResolution += " }";
-		jb.resAltArray.add(altResolution);
-
-		// Contours and hazard zones are lists of polygons, and polygons are list of points.
-		Position po = daa.getAircraftStateAt(0).getPosition();
-		String contours =  "{ \"time\": " + time;
-		contours += ",  \"data\": [ ";
-		for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
-			String ac_name = daa.getAircraftStateAt(ac).getId();
-			List<List<Position>> polygons = new ArrayList<List<Position>>();
-			if (PRINT_POLYGONS) { daa.horizontalContours(polygons, ac); }
-			contours += "{ \"ac\": \"" + ac_name + "\", ";
-			contours +=	"  \"polygons\": " + printPolygons(polygons, po) + "}";
-			if (ac < daa.lastTrafficIndex()) {
-				contours += ", ";
-			}
-		}
-		contours += " ]}";
-		jb.contoursArray.add(contours);
+		snap.altResolution.set(resAlt, resAlt_sec, resAltRegion, resAltRegion_sec, preferredAlt, daa.altitudeRecoveryInformation());
 
-		String hazardZones =  "{ \"time\": " + time;
-		hazardZones += ",  \"data\": [ ";
-		for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
-			String ac_name = daa.getAircraftStateAt(ac).getId();
+		if (profiling) { lap = profiler.lap(DAAProfiler.RESOLUTIONS, lap); }
 
-			List<Position> ply_violation = new ArrayList<Position>();
-			List<Position> ply_conflict = new ArrayList<Position>();
-			if (PRINT_POLYGONS) {
-				daa.horizontalHazardZone(ply_violation, ac, true, false);
-				daa.horizontalHazardZone(ply_conflict, ac, false, false);
+		// Contours and hazard zones are lists of polygons, and polygons are list of points.
+		snap.ownshipPosition = ownship.getPosition();
+		if (PRINT_POLYGONS) {
+			for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
+				daa.horizontalContours(snap.getTraffic(ac).contours, ac);
 			}
-			List<List<Position>> polygons = new ArrayList<List<Position>>();
-			polygons.add(ply_violation);
-			polygons.add(ply_conflict);
-
-			hazardZones += "{ \"ac\": \"" + ac_name + "\",";
-			hazardZones +=	"  \"polygons\": " + printPolygons(polygons, po) + "}";
-			if (ac < daa.lastTrafficIndex()) {
-				hazardZones += ", ";
+			if (profiling) { lap = profiler.lap(DAAProfiler.CONTOURS, lap); }
+			for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
+				DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+				daa.horizontalHazardZone(traffic.violationZone, ac, true, false);
+				daa.horizontalHazardZone(traffic.conflictZone, ac, false, false);
 			}
 		}
-		hazardZones += " ]}";
-		jb.hazardZonesArray.add(hazardZones);
-
-		if (PRINT_METRICS) {
-			// monitors
-			jb.monitors.check(daa);
-			String monitorM1 = "{ \"time\": " + time
-					+ ", " + jb.monitors.m1()
-					+ " }";
-			jb.monitorM1Array.add(monitorM1);
+		if (profiling) { lap = profiler.lap(DAAProfiler.HAZARD_ZONES, lap); }
 
-			String monitorM2 = "{ \"time\": " + time
-					+ ", " + jb.monitors.m2()
-					+ " }";
-			jb.monitorM2Array.add(monitorM2);
-
-			String monitorM3 = "{ \"time\": " + time
-					+ ", " + jb.monitors.m3(daa)
-					+ " }";
-			jb.monitorM3Array.add(monitorM3);
-
-			String monitorM4 = "{ \"time\": " + time
-					+ ", " + jb.monitors.m4(daa)
-					+ " }";
-			jb.monitorM4Array.add(monitorM4);
+		if (PRINT_METRICS && monitors != null) {
+			// monitors read the results from the snapshot, they do not query the Daidalus object again
+			monitors.check(snap);
+			if (profiling) { lap = profiler.lap(DAAProfiler.MONITORS, lap); }
 		}
 
 		// config
-		String stats = "\"hs\": { \"min\": " + fmt(daa.getMinHorizontalSpeed(hs_units)) 
+		snap.stats = "\"hs\": { \"min\": " + fmt(daa.getMinHorizontalSpeed(hs_units)) 
 		+ ", \"max\": " + fmt(daa.getMaxHorizontalSpeed(hs_units)) 
 		+ ", \"units\": \"" + hs_units + "\" },\n"
 		+ "\"vs\": { \"min\": " + fmt(daa.getMinVerticalSpeed(vs_units))
@@ -894,153 +975,1252 @@ public class DAABandsV2 {
 		+ ", \"max\": " + fmt(daa.getMaxAltitude(alt_units))
 		+ ", \"units\": \"" + alt_units + "\" },\n"
 		+ "\"MostSevereAlertLevel\": \"" + f.Fmi(daa.mostSevereAlertLevel(1)) + "\"";
-		return stats;
+		if (profiling) { lap = profiler.lap(DAAProfiler.BANDS, lap); }
+		if (event.shouldCommit()) {
+			event.set(scenario, snap);
+			event.commit();
+		}
 	}
 
-	public void walkFile () {
-		// sanity checks
-		if (ifname == "" || ifname == null) {
-			System.err.println("** Error: Please specify a daa file");
-			System.exit(1);
+	/**
+	 * Utility function, prints the records of the time step stored in snap, and adds the records to the lists in jb.
+	 * This function does not use the Daidalus object.
+	 */
+	public void serialize (DAAStepSnapshot snap, JsonBands jb) {
+		// serialization may run on a different thread (pipeline mode), so it is recorded as a separate sample
+		DAAProfiler prof = PROFILER_ENABLED ? profiler : null;
+		long start = prof != null ? System.nanoTime() : 0;
+		DAAFlightRecorder.SerializeEvent event = new DAAFlightRecorder.SerializeEvent();
+		event.begin();
+		serializeStep(snap, jb);
+		if (prof != null) { prof.record(DAAProfiler.SERIALIZATION, System.nanoTime() - start); }
+		if (event.shouldCommit()) {
+			event.time = snap.time;
+			event.bytes = BINARY_OUTPUT ? 0 : jb.size(true);
+			event.commit();
 		}
-		if (!inputFileReadable()) {
-			System.err.println("** Error: File " + getInputFileName() + " cannot be read");
-			System.exit(1);
+	}
+
+	/**
+	 * Utility function, see serialize
+	 */
+	protected void serializeStep (DAAStepSnapshot snap, JsonBands jb) {
+		if (BINARY_OUTPUT) {
+			if (jb.binary == null) { jb.binary = new DAABinaryWriter(PRINT_METRICS); }
+			jb.binary.write(snap);
+			return;
 		}
+		// all records are built in the same reusable buffer
+		DAAJsonWriter json = jb.json;
+		String time = fmt(snap.time);
+		jb.stepTimes.add(snap.time);
 
-		// create output stream
-		createPrintWriter();
+		// ownship
+		json.reset().append("{ \"time\": ").append(time);
+		json.append(", \"acstate\": "); jsonAircraftState(json, snap.ownship);
+		json.append(", "); jsonString(json, "trk_region", snap.trkRegion.toString());
+		json.append(", "); jsonString(json, "gs_region", snap.gsRegion.toString());
+		json.append(", "); jsonString(json, "vs_region", snap.vsRegion.toString());
+		json.append(", "); jsonString(json, "alt_region", snap.altRegion.toString());
+		json.append(" }");
+		jb.ownshipArray.add(json.toString());
 
-		// create DaidalusFileWalker
-		DaidalusFileWalker walker = new DaidalusFileWalker(ifname);
-		if (ownshipName != null) { walker.setOwnship(ownshipName); }
+		// wind vectors
+		json.reset().append("{ \"time\": ").append(time);
+		json.append(", \"deg\": \"").appendFixed(snap.windDeg, precision).append('"');
+		json.append(", \"knot\": \"").appendFixed(snap.windKnot, precision).append('"');
+		json.append(" }");
+		jb.windVectorsArray.add(json.toString());
 
-		// create json bands object
-		JsonBands jb = new JsonBands();
-		// create jsonStats string with the results
-		String jsonStats = "";
+		// traffic alerts
+		json.reset().append("{ \"time\": ").append(time).append(", \"alerts\": [ ");
+		for (int ac = 1; ac <= snap.nTraffic; ac++) {
+			DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+			if (ac > 1) { json.append(", "); }
+			json.append("{ "); jsonString(json, "ac", traffic.state.id);
+			json.append(", "); jsonInt(json, "alert_level", traffic.alertLevel);
+			json.append(", "); jsonString(json, "alert_region", traffic.alertRegion.toString());
+			json.append(", "); jsonString(json, "alerter", traffic.alerter);
+			json.append(", "); jsonInt(json, "alerter_idx", traffic.alerterIndex);
+			json.append('}');
+		}
+		json.append(" ]}");
+		jb.alertsArray.add(json.toString());
 
-		/* Processing the input file time step by time step and writing output file */
-		while (!walker.atEnd()) {
-			// read a line in the daa file
-			walker.readState(daa);
-			// set alerter, if any is specified
-			if (daaAlerter != null) { loadSelectedAlerter(); }
-			// set wind, if a constant wind is specified
-			if (windVelocity != null) { loadWindVelocity(); }
-			// start profiler
-			if (PROFILER_ENABLED) {
-				if (profiler == null) { profiler = new DAAProfiler("Profiling DAIDALUS v" + VERSION + " with " + scenario); }
-				profiler.start();
-			}
-			// compute the bands
-			jsonStats = jsonBands(jb);
-			// stop profiler
-			if (PROFILER_ENABLED) {
-				profiler.stop();
+		// Traffic aircraft
+		json.reset().append("{ \"time\": ").append(time).append(", \"aircraft\": [ ");
+		if (PRINT_METRICS) {
+			for (int ac = 1; ac <= snap.nTraffic; ac++) {
+				DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+				if (ac > 1) { json.append(", "); }
+				json.append("{ \"acstate\": "); jsonAircraftState(json, traffic.state);
+				json.append(", \"metrics\": "); jsonAircraftMetrics(json, traffic);
+				json.append(" }");
 			}
 		}
+		json.append(" ]}");
+		jb.metricsArray.add(json.toString());
 
-		printWriter.println("{\n" + jsonHeader() + "\n" + jsonStats + ",");
-		printWriterInfo.println("{\n" + jsonHeader() + "\n" + jsonStats + "\n}");
-
-		printArray(printWriter, jb.ownshipArray, "Ownship");
-		printArray(printWriterOwnship, jb.ownshipArray);
-		printWriter.println(",");
-
-		printArray(printWriter, jb.alertsArray, "Alerts");
-		printArray(printWriterAlerts, jb.alertsArray);
-		printWriter.println(",");
-
-		printArray(printWriter, jb.windVectorsArray, "WindVectors");
-		printArray(printWriterWind, jb.windVectorsArray);
-		printWriter.println(",");
-
-		printArray(printWriter, jb.metricsArray, "Metrics");
-		printArray(printWriterMetrics, jb.metricsArray);
-		printWriter.println(",");
+		// bands
+		jsonBandsRecord(json.reset(), time, snap.trkBands, hdir_units);
+		jb.trkArray.add(json.toString());
+		jsonBandsRecord(json.reset(), time, snap.gsBands, hs_units);
+		jb.gsArray.add(json.toString());
+		jsonBandsRecord(json.reset(), time, snap.vsBands, vs_units);
+		jb.vsArray.add(json.toString());
+		jsonBandsRecord(json.reset(), time, snap.altBands, alt_units);
+		jb.altArray.add(json.toString());
 
-		printArray(printWriter, jb.trkArray, "Heading Bands");
-		printArray(printWriterHdBands, jb.trkArray);
-		printWriter.println(",");
+		// resolutions
+		jsonResolution(json.reset(), time, snap.trkResolution, hdir_units);
+		jb.resTrkArray.add(json.toString());
+		jsonResolution(json.reset(), time, snap.gsResolution, hs_units);
+		jb.resGsArray.add(json.toString());
+		jsonResolution(json.reset(), time, snap.vsResolution, vs_units);
+		jb.resVsArray.add(json.toString());
+		jsonResolution(json.reset(), time, snap.altResolution, alt_units);
+		jb.resAltArray.add(json.toString());
 
-		printArray(printWriter, jb.gsArray, "Horizontal Speed Bands");
-		printArray(printWriterHsBands, jb.gsArray);
-		printWriter.println(",");
+		// Contours and hazard zones are lists of polygons, and polygons are list of points.
+		Position po = snap.ownshipPosition;
+		json.reset().append("{ \"time\": ").append(time);
+		json.append(",  \"data\": [ ");
+		for (int ac = 1; ac <= snap.nTraffic; ac++) {
+			DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+			json.append("{ \"ac\": \"").append(traffic.state.id).append("\", ");
+			json.append("  \"polygons\": "); printPolygons(json, traffic.contours, po); json.append('}');
+			if (ac < snap.nTraffic) {
+				json.append(", ");
+			}
+		}
+		json.append(" ]}");
+		jb.contoursArray.add(json.toString());
+
+		json.reset().append("{ \"time\": ").append(time);
+		json.append(",  \"data\": [ ");
+		List<List<Position>> polygons = new ArrayList<List<Position>>(2);
+		for (int ac = 1; ac <= snap.nTraffic; ac++) {
+			DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+			polygons.clear();
+			polygons.add(traffic.violationZone);
+			polygons.add(traffic.conflictZone);
+			json.append("{ \"ac\": \"").append(traffic.state.id).append("\",");
+			json.append("  \"polygons\": "); printPolygons(json, polygons, po); json.append('}');
+			if (ac < snap.nTraffic) {
+				json.append(", ");
+			}
+		}
+		json.append(" ]}");
+		jb.hazardZonesArray.add(json.toString());
+
+		if (snap.monitored && !DAAMonitorsV2.isSparse()) {
+			// monitors, verdicts are converted to strings here
+			for (int i = 0; i < jb.monitorArrays.size(); i++) {
+				json.reset().append("{ \"time\": ").append(time).append(", ");
+				DAAMonitorsV2.appendResult(json, snap.monitors, i);
+				json.append(" }");
+				jb.monitorArrays.get(i).add(json.toString());
+			}
+		}
+	}
 
-		printArray(printWriter, jb.vsArray, "Vertical Speed Bands");
-		printArray(printWriterVsBands, jb.vsArray);
-		printWriter.println(",");
+	/**
+	 * Utility function, evaluates the monitors on the snapshot of a time step, used when the monitors are not evaluated by takeSnapshot.
+	 * The snapshot is not modified by the bands computation, so this may run on a different thread (pipeline mode).
+	 */
+	public void checkMonitors (DAAStepSnapshot snap, DAAMonitorsV2 monitors) {
+		if (!PRINT_METRICS) { return; }
+		DAAProfiler prof = PROFILER_ENABLED ? profiler : null;
+		long start = prof != null ? System.nanoTime() : 0;
+		monitors.check(snap);
+		if (prof != null) { prof.record(DAAProfiler.MONITORS, System.nanoTime() - start); }
+	}
 
-		printArray(printWriter, jb.altArray, "Altitude Bands");
-		printArray(printWriterAltBands, jb.altArray);
-		printWriter.println(",");
+	/**
+	 * Utility function, performs tha computation of bands polygons and metrics
+	 */
+	public String jsonBands (JsonBands jb) {
+		takeSnapshot(jb.snapshot, jb.monitors);
+		serialize(jb.snapshot, jb);
+		return jb.snapshot.stats;
+	}
 
-		printArray(printWriter, jb.resTrkArray, "Horizontal Direction Resolution");
-		printArray(printWriterHdRes, jb.resTrkArray);
-		printWriter.println(",");
+	/**
+	 * Error that stops the processing of a scenario. The error is reported to the caller of walkFile, 
+	 * so that a failed request of the service mode (see --serve) does not terminate the JVM.
+	 */
+	public static class WalkException extends Exception {
+		private static final long serialVersionUID = 1L;
+		public WalkException (String msg) { super(msg); }
+		public WalkException (String msg, Throwable cause) { super(msg, cause); }
+	}
 
-		printArray(printWriter, jb.resGsArray, "Horizontal Speed Resolution");
-		printArray(printWriterHsRes, jb.resGsArray);
-		printWriter.println(",");
+	public void walkFile () throws WalkException {
+		// sanity checks
+		if (ifname == "" || ifname == null) {
+			throw new WalkException("Please specify a daa file");
+		}
+		if (!inputFileReadable()) {
+			throw new WalkException("File " + getInputFileName() + " cannot be read");
+		}
 
-		printArray(printWriter, jb.resVsArray, "Vertical Speed Resolution");
-		printArray(printWriterVsRes, jb.resVsArray);
-		printWriter.println(",");
+		DAAFlightRecorder.RunEvent event = new DAAFlightRecorder.RunEvent();
+		event.begin();
+		event.scenario = scenario;
+		event.config = daaConfig;
+		event.ownship = ownshipName;
+		event.output = ofname;
+
+		// multiple ownships and/or configurations, each one has its own output files
+		if (ALL_OWNSHIPS || ownshipNames != null || configNames != null) {
+			walkFileWorkers();
+			event.mode = "workers";
+			event.commit();
+			return;
+		}
 
-		printArray(printWriter, jb.resAltArray, "Altitude Resolution");
-		printArray(printWriterAltRes, jb.resAltArray);
-		printWriter.println(",");
+		// results cache
+		DAAResultCache cache = null;
+		String cacheKey = null;
+		if (cacheDir != null && !PROFILER_ENABLED) {
+			cache = new DAAResultCache(cacheDir, cacheSize);
+			try {
+				cacheKey = getCacheKey();
+			} catch (IOException e) {
+				System.err.println("** Warning: Results cache is not available (" + e + ")");
+			}
+			if (cacheKey != null && cache.fetch(cacheKey, ofname, getOutputSuffixes())) {
+				System.out.println("[DAABandsV2] Results served from cache " + cacheDir + " (" + cacheKey + ")");
+				event.mode = "cached";
+				event.commit();
+				return;
+			}
+		}
 
-		printArray(printWriter, jb.contoursArray, "Contours");
-		printArray(printWriterContours, jb.contoursArray);
-		printWriter.println(",");
+		// create output stream
+		createOutput();
 
-		printArray(printWriter, jb.hazardZonesArray, "Hazard Zones");
-		printArray(printWriterHazardZones, jb.hazardZonesArray);
-		printWriter.println(",");
+		// create json bands object
+		JsonBands jb = new JsonBands();
+		// create jsonStats string with the results
+		String jsonStats = "";
 
-		printWriter.println("\"Monitors\": ");
-		printWriterMonitors.println("{ \"Monitors\": ");
-		List<List<String>> info = new ArrayList<List<String>>();
-		info.add(jb.monitorM1Array);
-		info.add(jb.monitorM2Array);
-		info.add(jb.monitorM3Array);
-		info.add(jb.monitorM4Array);
-		printMonitors(printWriter, jb.monitors, info);
-		printMonitors(printWriterMonitors, jb.monitors, info);
-		printWriterMonitors.println("}");
+		try {
+			if (threads > 1) {
+				jsonStats = walkFileParallel(jb);
+				event.mode = "parallel";
+			} else if (PIPELINE) {
+				jsonStats = walkFilePipeline(jb);
+				event.mode = "pipeline";
+			} else {
+				jsonStats = walkFileSequential(jb);
+				event.mode = "sequential";
+			}
+		} catch (WalkException e) {
+			// the output files are incomplete
+			closePrintWriter();
+			throw e;
+		}
 
-		printWriter.println("}");
-		closePrintWriter();
+		boolean printed = printOutput(jb, jsonStats);
+		if (cacheKey != null && printed) {
+			cache.store(cacheKey, ofname, getOutputSuffixes());
+		}
+		event.commit();
 
 		if (PROFILER_ENABLED) {
 			String profilerOutputFile = ofname + ".profiler.log";
 			System.out.println("[PROFILER] Writing profiler output file " + profilerOutputFile);
 			boolean success = profiler.printCollectedDataToFile(profilerOutputFile);
 			System.out.println(success);
+			String profilerJsonFile = ofname + ".profiler.json";
+			System.out.println("[PROFILER] Writing profiler output file " + profilerJsonFile);
+			profiler.printCollectedDataToJsonFile(profilerJsonFile);
+			String profilerCsvFile = ofname + ".profiler.csv";
+			System.out.println("[PROFILER] Writing profiler output file " + profilerCsvFile);
+			profiler.printCollectedDataToCsvFile(profilerCsvFile);
 		}
 	}
 
-	public static String getFileName (String fname) {
-		if (fname != null && fname.contains(File.separator)) {
-			File file = new File(fname);
-			return file.getName();
+	/**
+	 * Utility function, returns the suffixes of the output files, e.g., ".files" for ofname.files
+	 */
+	protected List<String> getOutputSuffixes () {
+		List<String> suffixes = new ArrayList<String>();
+		suffixes.add("");
+		if (!BINARY_OUTPUT) {
+			suffixes.add(".files");
+			suffixes.addAll(Arrays.asList(chunks));
+			suffixes.add(".index");
 		}
-		return fname;
+		return suffixes;
 	}
 
-	public static String removeExtension (String fname) {
-		return fname != null && fname.contains(".") ? 
-				fname.substring(0, fname.lastIndexOf('.')) 
-				: fname;
+	/**
+	 * Utility function, returns the key of the results in the cache, i.e., the hash of all the inputs of the computation (see --cache-dir)
+	 */
+	protected String getCacheKey () throws IOException {
+		List<String> params = Arrays.asList(
+			"version=" + getVersion(),
+			"scenario=" + scenario,
+			"config=" + getConfig(),
+			"parameters=" + daa.getParameterData(),
+			"wind=" + (wind != null ? wind_deg + "," + wind_knot : null),
+			"alerter=" + daaAlerter,
+			"monitors=" + printMonitorList() + (DAAMonitorsV2.isSparse() ? ",sparse" : ""),
+			"ownship=" + ownshipName,
+			"precision=" + precision,
+			"format=" + (BINARY_OUTPUT ? "bin" : "json"),
+			"window=" + fromTime + "," + toTime + "," + stride + "," + warmup,
+			"threads=" + threads // parallel runs may differ from sequential runs (see --warmup)
+		);
+		return DAAResultCache.computeKey(ifname, params);
 	}
 
-	public String getVersion () {
-		return VERSION;
+	/**
+	 * Utility function, creates the output streams, the binary file (--format bin) is written at the end
+	 */
+	protected boolean createOutput () {
+		if (BINARY_OUTPUT) {
+			System.out.println("Creating output file " + ofname);
+			return true;
+		}
+		return createPrintWriter();
 	}
 
-	public DAABandsV2 parseCliArgs (String[] args) {
+	/**
+	 * Utility function, completes the output files and closes the output streams
+	 */
+	protected boolean printOutput (JsonBands jb, String jsonStats) {
+		DAAFlightRecorder.WriteEvent event = new DAAFlightRecorder.WriteEvent();
+		event.begin();
+		boolean success = false;
+		if (BINARY_OUTPUT) {
+			success = printBinaryOutput(jb, jsonStats);
+		} else if (STREAM_OUTPUT) {
+			success = printStreamedOutput(jb, jsonStats);
+		} else {
+			success = printCollectedOutput(jb, jsonStats);
+		}
+		closePrintWriter();
+		if (event.shouldCommit()) {
+			event.file = ofname;
+			event.bytes = new File(ofname).length();
+			event.commit();
+		}
+		return success;
+	}
+
+	/**
+	 * Utility function, returns the output file name for the given ownship, e.g., ofname.bands.json -> ofname-ownship_AC1.bands.json
+	 */
+	public String getOwnshipOutputFileName (String name) {
+		return getOutputFileName(ofname, "-ownship_" + name);
+	}
+
+	/**
+	 * Utility function, returns the output file name for the given configuration, e.g., ofname.bands.json -> ofname-config_DO_365A_no_SUM.bands.json
+	 */
+	public String getConfigOutputFileName (String config) {
+		return getOutputFileName(ofname, "-config_" + removeExtension(getFileName(config)));
+	}
+
+	/**
+	 * Utility function, inserts a suffix in a file name before its extension (.bands.json is considered a single extension)
+	 */
+	public static String getOutputFileName (String fname, String suffix) {
+		String ext = fname.endsWith(".bands.json") ? ".bands.json" 
+			: getFileName(fname).contains(".") ? fname.substring(fname.lastIndexOf('.')) 
+			: "";
+		return fname.substring(0, fname.length() - ext.length()) + suffix + ext;
+	}
+
+	/**
+	 * Utility function, returns the names of all aircraft in the scenario, in order of appearance, the walker is moved back to the beginning
+	 */
+	protected List<String> getAircraftNames (DaidalusFileWalker walker) {
+		Set<String> names = new LinkedHashSet<String>();
+		Daidalus scratch = new Daidalus(daa);
+		while (!walker.atEnd()) {
+			walker.readState(scratch);
+			for (int ac = 0; ac <= scratch.lastTrafficIndex(); ac++) {
+				names.add(scratch.getAircraftStateAt(ac).getId());
+			}
+		}
+		walker.goToBeginning();
+		return new ArrayList<String>(names);
+	}
+
+	/**
+	 * Utility function, creates a copy of this object that processes the scenario for the given configuration and ownship, with its own Daidalus object and output files
+	 * @param config Configuration file, null if the configuration of this object is used
+	 * @param name Ownship name, null if the ownship of this object is used
+	 * @return the copy, null if the configuration cannot be loaded
+	 */
+	protected DAABandsV2 copyWorker (String config, String name) {
+		DAABandsV2 worker = copySegmentWorker();
+		worker.computeTime = 0;
+		worker.computedSteps = 0;
+		if (config != null) {
+			worker.daaConfig = config;
+			worker.ofname = getConfigOutputFileName(config);
+			worker.daa = new Daidalus();
+			if (!worker.loadConfig()) { return null; }
+		}
+		if (name != null) {
+			worker.ownshipName = name;
+			worker.ofname = getOutputFileName(worker.ofname, "-ownship_" + name);
+		}
+		return worker;
+	}
+
+	/**
+	 * Utility function, computes the bands of the time step loaded in the Daidalus object (multiple ownships mode)
+	 * @return the stats of the time step, null for warm-up steps
+	 */
+	protected String computeStep (int mode, JsonBands jb, JsonBands discarded) {
+		if (daaAlerter != null) { loadSelectedAlerter(); }
+		if (windVelocity != null) { loadWindVelocity(); }
+		long start = System.nanoTime();
+		if (mode == STEP_WARMUP) {
+			jsonBands(discarded);
+			discarded.clear();
+			computeTime += System.nanoTime() - start;
+			return null;
+		}
+		String jsonStats = jsonBands(jb);
+		if (STREAM_OUTPUT) {
+			printStep(jb);
+		}
+		computeTime += System.nanoTime() - start;
+		computedSteps++;
+		return jsonStats;
+	}
+
+	/**
+	 * Utility function, processes the input file for multiple ownships and/or configurations (see --ownships, --all-ownships, --configs).
+	 * The file is read once: at each time step, the file walker loads the step in the Daidalus object of each worker, 
+	 * and the workers are computed concurrently, each one with its own Daidalus object and output files.
+	 * A worker waits for its previous step to be completed before the next step is loaded.
+	 */
+	protected void walkFileWorkers () throws WalkException {
+		DaidalusFileWalker walker = new DaidalusFileWalker(ifname);
+		if (ownshipName != null) { walker.setOwnship(ownshipName); }
+		List<String> ownships = ALL_OWNSHIPS ? getAircraftNames(walker) : ownshipNames;
+		if (ownships != null && ownships.size() == 0) {
+			throw new WalkException("No aircraft found in " + getInputFileName());
+		}
+		List<String> configs = configNames != null ? configNames : Arrays.asList((String) null);
+		if (ownships == null) { ownships = Arrays.asList((String) null); }
+		int n = configs.size() * ownships.size();
+		int nThreads = Math.min(n, threads > 1 ? threads : Runtime.getRuntime().availableProcessors());
+		System.out.println("[DAABandsV2] Processing " + configs.size() + " configurations x " + ownships.size() + " ownships on " + nThreads + " threads");
+		if (PROFILER_ENABLED) {
+			System.out.println("[DAABandsV2] Warning: profiler is not available with multiple ownships or configurations");
+			PROFILER_ENABLED = false;
+		}
+
+		DAABandsV2 workers[] = new DAABandsV2[n];
+		String names[] = new String[n];
+		String labels[] = new String[n];
+		JsonBands results[] = new JsonBands[n];
+		JsonBands discarded[] = new JsonBands[n];
+		String stats[] = new String[n];
+		List<Future<String>> pending = new ArrayList<Future<String>>();
+		for (int k = 0; k < n; k++) {
+			String config = configs.get(k / ownships.size());
+			names[k] = ownships.get(k % ownships.size());
+			workers[k] = copyWorker(config, names[k]);
+			if (workers[k] == null) {
+				closeWorkers(workers);
+				throw new WalkException("Worker " + (config != null ? config : "") + " " + (names[k] != null ? names[k] : "") + " could not be created");
+			}
+			labels[k] = (config != null ? getFileName(config) : "") 
+				+ (config != null && names[k] != null ? " " : "") 
+				+ (names[k] != null ? names[k] : "");
+			workers[k].createOutput();
+			results[k] = new JsonBands();
+			discarded[k] = new JsonBands();
+			pending.add(null);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			double windowStart = getWindowStart(getTimeStep(walker));
+			int windowStep = 0;
+			while (!walker.atEnd() && walker.getTime() <= toTime) {
+				final int mode = getStepMode(walker.getTime(), windowStart, windowStep);
+				if (walker.getTime() >= fromTime) { windowStep++; }
+				int step = walker.getIndex();
+				for (int k = 0; k < n; k++) {
+					// the worker must complete the previous step before its Daidalus object is loaded
+					if (pending.get(k) != null) {
+						String res = pending.get(k).get();
+						if (res != null) { stats[k] = res; }
+						pending.set(k, null);
+					}
+					walker.goToTimeStep(step);
+					if (names[k] != null) { walker.setOwnship(names[k]); }
+					walker.readState(workers[k].daa);
+					// the ownship may not be present at every step
+					if (mode != STEP_SKIP && (names[k] == null || workers[k].daa.getOwnshipState().getId().equals(names[k]))) {
+						final DAABandsV2 worker = workers[k];
+						final JsonBands res = results[k];
+						final JsonBands dis = discarded[k];
+						pending.set(k, pool.submit(() -> worker.computeStep(mode, res, dis)));
+					}
+				}
+			}
+			for (int k = 0; k < n; k++) {
+				if (pending.get(k) != null) {
+					String res = pending.get(k).get();
+					if (res != null) { stats[k] = res; }
+				}
+			}
+		} catch (Exception e) {
+			pool.shutdownNow();
+			closeWorkers(workers);
+			throw new WalkException(e.toString(), e);
+		}
+		pool.shutdown();
+
+		long outputTime[] = new long[n];
+		for (int k = 0; k < n; k++) {
+			long start = System.nanoTime();
+			workers[k].printOutput(results[k], stats[k] != null ? stats[k] : "");
+			outputTime[k] = System.nanoTime() - start;
+		}
+
+		// runtime summary
+		System.out.println("[DAABandsV2] Runtime summary");
+		for (int k = 0; k < n; k++) {
+			double compute = workers[k].computeTime / 1e6;
+			int steps = workers[k].computedSteps;
+			System.out.println(String.format("  %s: %d steps, compute %.1f ms (%.3f ms/step), output %.1f ms -> %s", 
+				labels[k], steps, compute, steps > 0 ? compute / steps : 0, outputTime[k] / 1e6, workers[k].ofname));
+		}
+	}
+
+	/**
+	 * Utility function, closes the output files of the workers that have been created (see walkFileWorkers)
+	 */
+	protected static void closeWorkers (DAABandsV2 workers[]) {
+		for (int k = 0; k < workers.length; k++) {
+			if (workers[k] != null) { workers[k].closePrintWriter(); }
+		}
+	}
+
+	/**
+	 * Utility function, live mode (see --tail): reads the states from a file that is still being written, or a named pipe, 
+	 * and prints the results of each time step as soon as the step is complete, one json object per line.
+	 * The latency of a step is the time between the arrival of its last state and the output of the results.
+	 */
+	protected void walkTail (PrintStream out) throws WalkException {
+		if (ifname == null || !new File(ifname).exists()) {
+			throw new WalkException("File " + getInputFileName() + " cannot be read");
+		}
+		DAATailReader reader = new DAATailReader(ifname, tailFlush, tailTimeout);
+		reader.start();
+		JsonBands jb = new JsonBands();
+		StringBuilder line = new StringBuilder();
+		long latencies[] = new long[1024];
+		int n = 0;
+		try {
+			DAATailReader.Step step = null;
+			while ((step = reader.next()) != null) {
+				long start = System.nanoTime();
+				// the ownship may not be present at every step
+				if (!reader.load(step, daa, ownshipName)) {
+					System.err.println("** Warning: Ownship " + ownshipName + " is not in the time step " + step.time + ", the step is skipped");
+					continue;
+				}
+				if (daaAlerter != null) { loadSelectedAlerter(); }
+				if (windVelocity != null) { loadWindVelocity(); }
+				jsonBands(jb);
+				long computed = System.nanoTime();
+
+				// one json object per time step, with the same sections of the output file
+				line.setLength(0);
+				line.append("{ \"time\": ").append(step.time);
+				List<List<String>> arrays = jb.getArrays();
+				for (int i = 0; i < sections.length; i++) {
+					line.append(", \"").append(sections[i][1]).append("\": ").append(arrays.get(i).get(0));
+				}
+				line.append(", \"Monitors\": [ ");
+				for (int i = sections.length; i < arrays.size() && !arrays.get(i).isEmpty(); i++) {
+					line.append(i > sections.length ? ", " : "").append(arrays.get(i).get(0));
+				}
+				long latency = System.nanoTime() - step.arrival;
+				line.append(" ], \"latency\": { \"compute\": ").append(String.format("%.3f", (computed - start) / 1e6))
+					.append(", \"total\": ").append(String.format("%.3f", latency / 1e6)).append(" } }");
+				out.println(line);
+				out.flush();
+				jb.clear();
+
+				if (n == latencies.length) { latencies = Arrays.copyOf(latencies, n * 2); }
+				latencies[n++] = latency;
+			}
+		} catch (InterruptedException e) {
+			System.err.println("** Error: " + e);
+		} finally {
+			reader.stop();
+		}
+
+		// latency summary
+		if (n > 0) {
+			Arrays.sort(latencies, 0, n);
+			System.out.println(String.format("[DAABandsV2] %d steps, latency (ms): p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%s", n,
+				latencies[(int) (0.5 * (n - 1))] / 1e6, latencies[(int) (0.9 * (n - 1))] / 1e6, latencies[(int) (0.99 * (n - 1))] / 1e6, latencies[n - 1] / 1e6,
+				reader.getDiscarded() > 0 ? ", " + reader.getDiscarded() + " late states discarded" : ""));
+		}
+	}
+
+	/**
+	 * Utility function, processes the input file time step by time step on a single thread
+	 */
+	protected String walkFileSequential (JsonBands jb) {
+		// create DaidalusFileWalker
+		DaidalusFileWalker walker = new DaidalusFileWalker(ifname);
+		if (ownshipName != null) { walker.setOwnship(ownshipName); }
+
+		// create jsonStats string with the results
+		String jsonStats = "";
+
+		// time window
+		double windowStart = getWindowStart(getTimeStep(walker));
+		int windowStep = 0;
+		JsonBands discarded = new JsonBands();
+
+		/* Processing the input file time step by time step and writing output file */
+		while (!walker.atEnd() && walker.getTime() <= toTime) {
+			int mode = getStepMode(walker.getTime(), windowStart, windowStep);
+			if (walker.getTime() >= fromTime) { windowStep++; }
+			// read a line in the daa file
+			long ingest = System.nanoTime();
+			walker.readState(daa);
+			if (mode == STEP_SKIP) { continue; }
+			// set alerter, if any is specified
+			if (daaAlerter != null) { loadSelectedAlerter(); }
+			// set wind, if a constant wind is specified
+			if (windVelocity != null) { loadWindVelocity(); }
+			// start profiler
+			if (PROFILER_ENABLED) {
+				if (profiler == null) { profiler = new DAAProfiler("Profiling DAIDALUS v" + VERSION + " with " + scenario); }
+				profiler.lap(DAAProfiler.INGEST, ingest);
+				profiler.start();
+			}
+			// compute the bands
+			if (mode == STEP_WARMUP) {
+				jsonBands(discarded);
+				discarded.clear();
+			} else {
+				jsonStats = jsonBands(jb);
+			}
+			// stop profiler
+			if (PROFILER_ENABLED) {
+				profiler.stop();
+			}
+			// in streaming mode, the results are written to file right away
+			if (STREAM_OUTPUT && mode == STEP_OUTPUT) {
+				printStep(jb);
+			}
+		}
+		return jsonStats;
+	}
+
+	/**
+	 * Utility function, returns the time between the first two steps of the file (1 if the file has only one step), the walker is moved back to the beginning
+	 */
+	protected double getTimeStep (DaidalusFileWalker walker) {
+		double t0 = walker.getTime();
+		walker.goNext();
+		double dt = walker.atEnd() ? 1 : walker.getTime() - t0;
+		walker.goToBeginning();
+		return dt;
+	}
+
+	/**
+	 * Utility function, returns the time of the first step computed for the time window, including the warm-up interval
+	 * @param dt Time between consecutive steps in the scenario
+	 */
+	public double getWindowStart (double dt) {
+		if (fromTime == Double.NEGATIVE_INFINITY) {
+			return fromTime;
+		}
+		return fromTime - getWarmupTime(dt);
+	}
+
+	/**
+	 * Utility function, returns how the step at the given time is processed (STEP_SKIP, STEP_WARMUP, STEP_OUTPUT)
+	 * @param windowStart Time of the first step computed for the time window (see getWindowStart)
+	 * @param windowStep Number of steps in the time window that precede the given step, used for the stride
+	 */
+	protected int getStepMode (double time, double windowStart, int windowStep) {
+		if (time < windowStart || time > toTime) {
+			return STEP_SKIP;
+		}
+		if (time < fromTime) {
+			return STEP_WARMUP;
+		}
+		return windowStep % stride == 0 ? STEP_OUTPUT : STEP_SKIP;
+	}
+
+	/**
+	 * Utility functions, blocking take and put used by the pipeline stages.
+	 * The functions give up when another stage has failed, so that a failure does not leave the other stages waiting forever.
+	 */
+	protected <T> T pipelineTake (BlockingQueue<T> queue) throws InterruptedException {
+		while (true) {
+			T item = queue.poll(100, TimeUnit.MILLISECONDS);
+			if (item != null) { return item; }
+			if (pipelineError != null) { throw new InterruptedException("pipeline stopped"); }
+		}
+	}
+	protected <T> void pipelinePut (BlockingQueue<T> queue, T item) throws InterruptedException {
+		while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+			if (pipelineError != null) { throw new InterruptedException("pipeline stopped"); }
+		}
+	}
+
+	/**
+	 * Utility function, processes the input file with a three-stage pipeline:
+	 * - compute (this thread): reads each time step into the Daidalus object, computes bands and stores the results in a DAAStepSnapshot
+	 * - serialize: evaluates the monitors and prints the records of each time step from the snapshot
+	 * - write: writes the records to the chunk files (streaming mode) or collects them in jb
+	 * Snapshots and records are recycled through bounded queues, a stage that falls behind blocks the previous stage.
+	 * Reading the file is part of the compute stage, because DaidalusFileWalker reads the states directly into the Daidalus object.
+	 */
+	protected String walkFilePipeline (JsonBands jb) throws WalkException {
+		// create DaidalusFileWalker
+		DaidalusFileWalker walker = new DaidalusFileWalker(ifname);
+		if (ownshipName != null) { walker.setOwnship(ownshipName); }
+
+		// queues between stages, free snapshots and records are recycled
+		BlockingQueue<DAAStepSnapshot> freeSnapshots = new ArrayBlockingQueue<DAAStepSnapshot>(PIPELINE_DEPTH);
+		BlockingQueue<DAAStepSnapshot> computed = new ArrayBlockingQueue<DAAStepSnapshot>(PIPELINE_DEPTH + 1);
+		BlockingQueue<JsonBands> freeRecords = new ArrayBlockingQueue<JsonBands>(PIPELINE_DEPTH);
+		BlockingQueue<JsonBands> serialized = new ArrayBlockingQueue<JsonBands>(PIPELINE_DEPTH + 1);
+		for (int i = 0; i < PIPELINE_DEPTH; i++) {
+			freeSnapshots.add(new DAAStepSnapshot());
+			freeRecords.add(new JsonBands());
+		}
+		// end of stream markers
+		final DAAStepSnapshot lastSnapshot = new DAAStepSnapshot();
+		final JsonBands lastRecords = new JsonBands();
+		pipelineError = null;
+
+		Thread serializer = new Thread(() -> {
+			try {
+				DAAStepSnapshot snap = pipelineTake(computed);
+				while (snap != lastSnapshot) {
+					JsonBands records = pipelineTake(freeRecords);
+					checkMonitors(snap, jb.monitors);
+					serialize(snap, records);
+					pipelinePut(freeSnapshots, snap);
+					pipelinePut(serialized, records);
+					snap = pipelineTake(computed);
+				}
+				pipelinePut(serialized, lastRecords);
+			} catch (Throwable e) {
+				if (pipelineError == null) { pipelineError = e; }
+			}
+		}, tool_name + "-serialize");
+		Thread writer = new Thread(() -> {
+			try {
+				JsonBands records = pipelineTake(serialized);
+				while (records != lastRecords) {
+					if (STREAM_OUTPUT) {
+						printStep(records);
+					} else {
+						// jb.monitors is updated by the serializer thread
+						jb.appendRecords(records);
+						records.clear();
+					}
+					pipelinePut(freeRecords, records);
+					records = pipelineTake(serialized);
+				}
+			} catch (Throwable e) {
+				if (pipelineError == null) { pipelineError = e; }
+			}
+		}, tool_name + "-write");
+		serializer.start();
+		writer.start();
+
+		// create jsonStats string with the results
+		String jsonStats = "";
+		// time window, warm-up steps are computed on this thread and are not passed to the other stages
+		double windowStart = getWindowStart(getTimeStep(walker));
+		int windowStep = 0;
+		DAAStepSnapshot discarded = new DAAStepSnapshot();
+		try {
+			/* Processing the input file time step by time step */
+			while (!walker.atEnd() && walker.getTime() <= toTime && pipelineError == null) {
+				int mode = getStepMode(walker.getTime(), windowStart, windowStep);
+				if (walker.getTime() >= fromTime) { windowStep++; }
+				// read a line in the daa file
+				long ingest = System.nanoTime();
+				walker.readState(daa);
+				if (mode == STEP_SKIP) { continue; }
+				// set alerter, if any is specified
+				if (daaAlerter != null) { loadSelectedAlerter(); }
+				// set wind, if a constant wind is specified
+				if (windVelocity != null) { loadWindVelocity(); }
+				DAAStepSnapshot snap = mode == STEP_WARMUP ? discarded : pipelineTake(freeSnapshots);
+				// start profiler
+				if (PROFILER_ENABLED) {
+					if (profiler == null) { profiler = new DAAProfiler("Profiling DAIDALUS v" + VERSION + " with " + scenario); }
+					profiler.lap(DAAProfiler.INGEST, ingest);
+					profiler.start();
+				}
+				// compute the bands, monitors are evaluated by the serializer, concurrently with the next time steps
+				takeSnapshot(snap, null);
+				// stop profiler
+				if (PROFILER_ENABLED) {
+					profiler.stop();
+				}
+				if (mode == STEP_OUTPUT) {
+					jsonStats = snap.stats;
+					pipelinePut(computed, snap);
+				}
+			}
+			pipelinePut(computed, lastSnapshot);
+			serializer.join();
+			writer.join();
+		} catch (Throwable e) {
+			if (pipelineError == null) { pipelineError = e; }
+		}
+		if (pipelineError != null) {
+			throw new WalkException(pipelineError.toString(), pipelineError);
+		}
+		return jsonStats;
+	}
+
+	/**
+	 * Utility function, creates a copy of this object that can process a time segment concurrently with other copies.
+	 * The copy shares the configuration with this object, and uses its own Daidalus object.
+	 * Output streams are not shared with the copy.
+	 */
+	protected DAABandsV2 copySegmentWorker () {
+		try {
+			DAABandsV2 worker = (DAABandsV2) clone();
+			worker.daa = new Daidalus(daa);
+			worker.PROFILER_ENABLED = false;
+			worker.profiler = null;
+			return worker;
+		} catch (CloneNotSupportedException e) {
+			System.err.println("** Error: " + e);
+		}
+		return null;
+	}
+
+	/**
+	 * Utility function, processes the time steps between first and last (included), collecting the results in jb.
+	 * The steps between warmupFirst and first are processed before the segment to initialize hysteresis and persistence, their results are discarded.
+	 * @param modes How each step is processed (see getStepMode), null if all steps are computed and written to file
+	 */
+	protected String walkSegment (int warmupFirst, int first, int last, int modes[], JsonBands jb) {
+		DaidalusFileWalker walker = new DaidalusFileWalker(ifname);
+		if (ownshipName != null) { walker.setOwnship(ownshipName); }
+		walker.goToTimeStep(warmupFirst);
+		JsonBands discarded = new JsonBands();
+		String jsonStats = "";
+		for (int i = warmupFirst; i <= last && !walker.atEnd(); i++) {
+			walker.readState(daa);
+			if (modes != null && modes[i] == STEP_SKIP) { continue; }
+			if (daaAlerter != null) { loadSelectedAlerter(); }
+			if (windVelocity != null) { loadWindVelocity(); }
+			if (i < first || (modes != null && modes[i] == STEP_WARMUP)) {
+				jsonBands(discarded);
+				discarded.clear();
+			} else {
+				jsonStats = jsonBands(jb);
+			}
+		}
+		return jsonStats;
+	}
+
+	/**
+	 * Utility function, returns the warm-up interval used in parallel mode
+	 * @param dt Time between consecutive steps in the scenario
+	 */
+	public double getWarmupTime (double dt) {
+		if (warmup >= 0) {
+			return warmup;
+		}
+		return daa.getHysteresisTime() + daa.getPersistenceTime() + daa.getAlertingParameterN() * dt;
+	}
+
+	/**
+	 * Utility function, returns the first step of each time segment (the last element is the number of steps).
+	 * Boundaries are moved, within a quarter of the segment length, to the steps where traffic is farthest from the ownship, 
+	 * as alerting and bands are less likely to depend on hysteresis or persistence at those steps.
+	 * @param separation Horizontal distance of the closest traffic aircraft at each step
+	 */
+	protected int[] computeSegments (double[] separation, int nSegments) {
+		int n = separation.length;
+		int bounds[] = new int[nSegments + 1];
+		bounds[0] = 0;
+		bounds[nSegments] = n;
+		int window = n / nSegments / 4;
+		for (int k = 1; k < nSegments; k++) {
+			int nominal = (int) ((long) k * n / nSegments);
+			int best = nominal;
+			for (int d = 1; d <= window; d++) {
+				int candidates[] = { nominal - d, nominal + d };
+				for (int c: candidates) {
+					if (c > bounds[k - 1] && c < n && separation[c] > separation[best]) {
+						best = c;
+					}
+				}
+			}
+			bounds[k] = Math.max(best, bounds[k - 1] + 1);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Utility function, processes the input file in time segments on multiple threads (see --threads).
+	 * The results of the segments are stitched together in jb, in the same order of the sequential run.
+	 */
+	protected String walkFileParallel (JsonBands jb) throws WalkException {
+		if (PROFILER_ENABLED) {
+			System.out.println("[DAABandsV2] Warning: profiler is not available in parallel mode");
+			PROFILER_ENABLED = false;
+		}
+		// read time and separation of each step, this does not compute bands
+		List<Double> times = new ArrayList<Double>();
+		List<Double> distances = new ArrayList<Double>();
+		Daidalus scratch = new Daidalus(daa);
+		DaidalusFileWalker walker = new DaidalusFileWalker(ifname);
+		if (ownshipName != null) { walker.setOwnship(ownshipName); }
+		while (!walker.atEnd() && walker.getTime() <= toTime) {
+			walker.readState(scratch);
+			times.add(scratch.getCurrentTime());
+			TrafficState ownship = scratch.getOwnshipState();
+			double dist = Double.POSITIVE_INFINITY;
+			for (int ac = 1; ac <= scratch.lastTrafficIndex(); ac++) {
+				dist = Math.min(dist, scratch.getAircraftStateAt(ac).get_s().Sub(ownship.get_s()).vect2().norm());
+			}
+			distances.add(dist);
+		}
+		int n = times.size();
+		if (n == 0) { return ""; }
+		double dt = n > 1 ? times.get(1) - times.get(0) : 1;
+
+		// steps selected by the time window, segments start from the first computed step
+		double windowStart = getWindowStart(dt);
+		int modes[] = new int[n];
+		int windowStep = 0;
+		int lo = n;
+		for (int i = 0; i < n; i++) {
+			modes[i] = getStepMode(times.get(i), windowStart, windowStep);
+			if (times.get(i) >= fromTime) { windowStep++; }
+			if (modes[i] != STEP_SKIP && lo == n) { lo = i; }
+		}
+		if (lo == n) { return ""; }
+		double separation[] = new double[n - lo];
+		for (int i = lo; i < n; i++) { separation[i - lo] = distances.get(i); }
+		int nSegments = Math.min(threads, n - lo);
+		int bounds[] = computeSegments(separation, nSegments);
+		for (int k = 0; k <= nSegments; k++) { bounds[k] += lo; }
+		double warmupTime = getWarmupTime(dt);
+		System.out.println("[DAABandsV2] Processing " + (n - lo) + " steps in " + nSegments + " segments (warm-up " + fmt(warmupTime) + "s)");
+
+		// process segments concurrently
+		ExecutorService pool = Executors.newFixedThreadPool(VERIFY_THREADS ? nSegments + 1 : nSegments);
+		DAABandsV2 workers[] = new DAABandsV2[nSegments];
+		JsonBands results[] = new JsonBands[nSegments];
+		List<Future<String>> stats = new ArrayList<Future<String>>();
+		for (int k = 0; k < nSegments; k++) {
+			final int first = bounds[k];
+			final int last = bounds[k + 1] - 1;
+			int warmupFirst = first;
+			while (warmupFirst > 0 && times.get(warmupFirst - 1) >= times.get(first) - warmupTime) {
+				warmupFirst--;
+			}
+			final int start = warmupFirst;
+			final DAABandsV2 worker = copySegmentWorker();
+			final JsonBands res = new JsonBands();
+			workers[k] = worker;
+			results[k] = res;
+			stats.add(pool.submit(() -> worker.walkSegment(start, first, last, modes, res)));
+		}
+		// sequential run, used for verification
+		JsonBands sequential = null;
+		Future<String> sequentialStats = null;
+		if (VERIFY_THREADS) {
+			final DAABandsV2 worker = copySegmentWorker();
+			final JsonBands res = new JsonBands();
+			sequential = res;
+			sequentialStats = pool.submit(() -> worker.walkSegment(0, 0, n - 1, modes, res));
+		}
+
+		// stitch results in order
+		String jsonStats = "";
+		try {
+			for (int k = 0; k < nSegments; k++) {
+				jsonStats = stats.get(k).get();
+			}
+			if (VERIFY_THREADS) {
+				verifySegments(results, sequential, jsonStats, sequentialStats.get());
+			}
+		} catch (Exception e) {
+			pool.shutdownNow();
+			throw new WalkException(e.toString(), e);
+		}
+		pool.shutdown();
+		for (int k = 0; k < nSegments; k++) {
+			if (STREAM_OUTPUT) {
+				jb.monitors.merge(results[k].monitors);
+				printStep(results[k]);
+			} else {
+				jb.append(results[k]);
+			}
+		}
+		// the state of the last segment is the state at the end of the scenario
+		daa = workers[nSegments - 1].daa;
+		return jsonStats;
+	}
+
+	/**
+	 * Utility function, compares the results of the segments with the results of the sequential run, and prints a report
+	 * @return true if the results are identical
+	 */
+	protected boolean verifySegments (JsonBands segments[], JsonBands sequential, String jsonStats, String sequentialStats) {
+		List<List<String>> expected = sequential.getArrays();
+		int mismatches = 0;
+		for (int i = 0; i < expected.size(); i++) {
+			int step = 0;
+			int diffs = 0;
+			String firstDiff = null;
+			for (int k = 0; k < segments.length; k++) {
+				for (String str: segments[k].getArrays().get(i)) {
+					if (step >= expected.get(i).size() || !str.equals(expected.get(i).get(step))) {
+						if (firstDiff == null) { firstDiff = "step " + step + " (segment " + (k + 1) + ")"; }
+						diffs++;
+					}
+					step++;
+				}
+			}
+			if (step != expected.get(i).size()) {
+				System.out.println("[DAABandsV2] " + JsonBands.getArrayLabel(i) + ": " + step + " steps, sequential run has " + expected.get(i).size());
+				diffs++;
+			}
+			if (diffs > 0) {
+				System.out.println("[DAABandsV2] " + JsonBands.getArrayLabel(i) + ": " + diffs + " steps differ from the sequential run, first difference at " + firstDiff);
+				mismatches += diffs;
+			}
+		}
+		DAAMonitorsV2 merged = new DAAMonitorsV2();
+		for (int k = 0; k < segments.length; k++) {
+			merged.merge(segments[k].monitors);
+		}
+		for (int id = 1; id <= DAAMonitorsV2.getSize(); id++) {
+			if (!merged.getColor(id).equals(sequential.monitors.getColor(id))) {
+				System.out.println("[DAABandsV2] monitor-" + id + ": color " + merged.getColor(id) + ", sequential run has " + sequential.monitors.getColor(id));
+				mismatches++;
+			}
+		}
+		if (sequential.binary != null) {
+			DAABinaryWriter mergedBinary = new DAABinaryWriter(sequential.binary.metrics);
+			for (int k = 0; k < segments.length; k++) {
+				if (segments[k].binary != null) { mergedBinary.append(segments[k].binary); }
+			}
+			if (!mergedBinary.sameContent(sequential.binary)) {
+				System.out.println("[DAABandsV2] binary results differ from the sequential run");
+				mismatches++;
+			}
+		}
+		if (!jsonStats.equals(sequentialStats)) {
+			System.out.println("[DAABandsV2] stats differ from the sequential run");
+			mismatches++;
+		}
+		if (mismatches > 0) {
+			System.out.println("[DAABandsV2] Warning: parallel results differ from the sequential run, try a longer --warmup");
+			return false;
+		}
+		System.out.println("[DAABandsV2] Parallel results are identical to the sequential run");
+		return true;
+	}
+
+	/**
+	 * Utility function, prints all the data collected in jb in the chunk files, and assembles the single output file from the chunk files
+	 */
+	protected boolean printCollectedOutput (JsonBands jb, String jsonStats) {
+		printWriterInfo.println("{\n" + jsonHeader() + "\n" + jsonStats + "\n}");
+		chunkIndex.add(jb.stepTimes, jb.getArrays().subList(0, sections.length));
+		printArray(printWriterOwnship, jb.ownshipArray);
+		printArray(printWriterAlerts, jb.alertsArray);
+		printArray(printWriterWind, jb.windVectorsArray);
+		printArray(printWriterMetrics, jb.metricsArray);
+		printArray(printWriterHdBands, jb.trkArray);
+		printArray(printWriterHsBands, jb.gsArray);
+		printArray(printWriterVsBands, jb.vsArray);
+		printArray(printWriterAltBands, jb.altArray);
+		printArray(printWriterHdRes, jb.resTrkArray);
+		printArray(printWriterHsRes, jb.resGsArray);
+		printArray(printWriterVsRes, jb.resVsArray);
+		printArray(printWriterAltRes, jb.resAltArray);
+		printArray(printWriterContours, jb.contoursArray);
+		printArray(printWriterHazardZones, jb.hazardZonesArray);
+
+		printWriterMonitors.println(monitorsChunkHeader);
+		printMonitors(printWriterMonitors, jb.monitors, jb.monitorArrays);
+		printWriterMonitors.println("}");
+
+		return printCombinedOutput(jsonStats);
+	}
+
+	/**
+	 * Utility function, writes the binary output file (--format bin)
+	 */
+	protected boolean printBinaryOutput (JsonBands jb, String jsonStats) {
+		DAABinaryWriter binary = jb.binary != null ? jb.binary : new DAABinaryWriter(PRINT_METRICS);
+		// monitor descriptors, the results of the monitors at each time step are stored in the step records
+		StringWriter monitors = new StringWriter();
+		PrintWriter out = new PrintWriter(monitors);
+		List<List<String>> info = new ArrayList<List<String>>();
+		for (int i = 0; i < DAAMonitorsV2.getSize(); i++) {
+			info.add(new ArrayList<String>());
+		}
+		printMonitors(out, jb.monitors, info);
+		out.flush();
+		String json = "{\n" + jsonHeader() + "\n" + jsonStats + ",\n"
+			+ "\"Units\": { \"hd\": \"" + hdir_units + "\", \"hs\": \"" + hs_units + "\", \"vs\": \"" + vs_units + "\", \"alt\": \"" + alt_units + "\" },\n"
+			+ "\"Monitors\": " + monitors.toString() + "}";
+		try {
+			binary.writeTo(ofname, json);
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Utility function, writes the results of the last time step to the chunk files and releases the data (streaming mode)
+	 */
+	protected void printStep (JsonBands jb) {
+		DAAFlightRecorder.WriteEvent event = new DAAFlightRecorder.WriteEvent();
+		event.begin();
+		chunkIndex.add(jb.stepTimes, jb.getArrays().subList(0, sections.length));
+		printArray(printWriterOwnship, jb.ownshipArray);
+		printArray(printWriterAlerts, jb.alertsArray);
+		printArray(printWriterWind, jb.windVectorsArray);
+		printArray(printWriterMetrics, jb.metricsArray);
+		printArray(printWriterHdBands, jb.trkArray);
+		printArray(printWriterHsBands, jb.gsArray);
+		printArray(printWriterVsBands, jb.vsArray);
+		printArray(printWriterAltBands, jb.altArray);
+		printArray(printWriterHdRes, jb.resTrkArray);
+		printArray(printWriterHsRes, jb.resGsArray);
+		printArray(printWriterVsRes, jb.resVsArray);
+		printArray(printWriterAltRes, jb.resAltArray);
+		printArray(printWriterContours, jb.contoursArray);
+		printArray(printWriterHazardZones, jb.hazardZonesArray);
+		for (int i = 0; i < printWriterMonitorResults.length; i++) {
+			printArray(printWriterMonitorResults[i], jb.monitorArrays.get(i));
+		}
+		if (event.shouldCommit()) {
+			event.file = ofname;
+			event.bytes = jb.size(false);
+			event.commit();
+		}
+		jb.clear();
+	}
+
+	/**
+	 * Utility function, completes the chunk files and assembles the single output file from the chunk files (streaming mode)
+	 */
+	protected boolean printStreamedOutput (JsonBands jb, String jsonStats) {
+		try {
+			printWriterInfo.println("{\n" + jsonHeader() + "\n" + jsonStats + "\n}");
+
+			// the results of the monitors are complete, we can now assemble the .monitors file
+			File monitorResults[] = new File[printWriterMonitorResults.length];
+			for (int i = 0; i < printWriterMonitorResults.length; i++) {
+				printWriterMonitorResults[i].flush();
+				monitorResults[i] = new File(getMonitorResultsFileName(i + 1));
+			}
+			printWriterMonitors.println(monitorsChunkHeader);
+			printMonitors(printWriterMonitors, jb.monitors, monitorResults);
+			printWriterMonitors.println("}");
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+			return false;
+		}
+		return printCombinedOutput(jsonStats);
+	}
+
+	/**
+	 * Utility function, assembles the single output file from the chunk files.
+	 * Each section is copied from its chunk file, so the data is serialized only once (see DAAOutputSink)
+	 */
+	protected boolean printCombinedOutput (String jsonStats) {
+		// make sure all chunks are on disk before reading them back
+		PrintWriter chunkWriters[] = {
+			printWriterInfo, printWriterOwnship, printWriterAlerts, printWriterWind, printWriterMetrics, printWriterMonitors,
+			printWriterHdBands, printWriterVsBands, printWriterHsBands, printWriterAltBands,
+			printWriterHdRes, printWriterVsRes, printWriterHsRes, printWriterAltRes,
+			printWriterContours, printWriterHazardZones
+		};
+		for (int i = 0; i < chunkWriters.length; i++) {
+			if (chunkWriters[i].checkError()) { // checkError flushes the stream
+				System.err.println("** Error: Unable to write output file " + ofname + chunks[i]);
+				return false;
+			}
+		}
+		if (chunkIndex.checkError()) {
+			System.err.println("** Error: Unable to write output file " + ofname + ".index");
+			return false;
+		}
+		try {
+			DAAOutputSink sink = new DAAOutputSink(ofname);
+			try {
+				sink.println("{\n" + jsonHeader() + "\n" + jsonStats + ",");
+				for (int i = 0; i < sections.length; i++) {
+					sink.printArray(new File(ofname + sections[i][0]), sections[i][1]);
+					sink.println(",");
+				}
+				// the .monitors chunk is a json object with a single field, the content of the field is copied as is
+				sink.println("\"Monitors\": ");
+				sink.splice(new File(ofname + ".monitors"), DAAOutputSink.byteLength(monitorsChunkHeader + System.lineSeparator()));
+			} finally {
+				sink.close();
+			}
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Utility function, returns the name of the temporary file used in streaming mode to store the results of a monitor
+	 */
+	protected String getMonitorResultsFileName (int monitorID) {
+		return ofname + ".monitors.m" + monitorID + ".tmp";
+	}
+
+	public static String getFileName (String fname) {
+		if (fname != null && fname.contains(File.separator)) {
+			File file = new File(fname);
+			return file.getName();
+		}
+		return fname;
+	}
+
+	public static String removeExtension (String fname) {
+		return fname != null && fname.contains(".") ? 
+				fname.substring(0, fname.lastIndexOf('.')) 
+				: fname;
+	}
+
+	public String getVersion () {
+		return VERSION;
+	}
+
+	public DAABandsV2 parseCliArgs (String[] args) {
 		if (args != null && args.length == 0) {
 			printHelpMsg();
 			System.exit(0);
@@ -1063,27 +2243,84 @@ public class DAABandsV2 {
 				System.exit(0);
 			} else if (a < args.length - 1 && (args[a].startsWith("--prec") || args[a].startsWith("-prec") || args[a].equals("-p"))) {
 				if (a + 1 < args.length) { precision = Integer.parseInt(args[++a]); }
+			} else if (a < args.length - 1 && (args[a].startsWith("--configs") || args[a].startsWith("-configs"))) {
+				if (a + 1 < args.length) { configNames = Arrays.asList(args[++a].split(",")); }
 			} else if (a < args.length - 1 && (args[a].startsWith("--conf") || args[a].startsWith("-conf") || args[a].equals("-c"))) {
 				if (a + 1 < args.length) { daaConfig = args[++a]; }
 			} else if (a < args.length - 1 && (args[a].startsWith("--alerter") || args[a].startsWith("-alerter") || args[a].equals("-a"))) {
 				if (a + 1 < args.length) { daaAlerter = args[++a]; }
 			} else if (a < args.length - 1 && (args[a].startsWith("--out") || args[a].startsWith("-out") || args[a].equals("-o"))) {
 				if (a + 1 < args.length) { ofname = args[++a]; }
+			} else if (a < args.length - 1 && (args[a].startsWith("--ownships") || args[a].startsWith("-ownships"))) {
+				if (a + 1 < args.length) { ownshipNames = Arrays.asList(args[++a].split(",")); }
+			} else if (args[a].equals("--all-ownships") || args[a].equals("-all-ownships")) {
+				ALL_OWNSHIPS = true;
 			} else if (a < args.length - 1 && (args[a].startsWith("--ownship") || args[a].startsWith("-ownship"))) {
 				if (a + 1 < args.length) { ownshipName = args[++a]; }
 			} else if (a < args.length - 1 && (args[a].startsWith("--wind") || args[a].startsWith("-wind"))) {
 				if (a + 1 < args.length) { wind = args[++a]; }
 			} else if (a < args.length - 1 && (args[a].startsWith("--profiler-on") || args[a].startsWith("-profiler-on"))) {
 				PROFILER_ENABLED = true;
+			} else if (args[a].equals("--stream") || args[a].equals("-stream")) {
+				STREAM_OUTPUT = true;
+			} else if (a < args.length - 1 && (args[a].startsWith("--threads") || args[a].startsWith("-threads"))) {
+				if (a + 1 < args.length) { threads = Math.max(1, Integer.parseInt(args[++a])); }
+			} else if (a < args.length - 1 && (args[a].startsWith("--warmup") || args[a].startsWith("-warmup"))) {
+				if (a + 1 < args.length) { warmup = Double.parseDouble(args[++a]); }
+			} else if (args[a].equals("--verify-threads") || args[a].equals("-verify-threads")) {
+				VERIFY_THREADS = true;
+			} else if (args[a].equals("--no-pipeline") || args[a].equals("-no-pipeline")) {
+				PIPELINE = false;
+			} else if (a < args.length - 1 && (args[a].startsWith("--from") || args[a].startsWith("-from"))) {
+				if (a + 1 < args.length) { fromTime = Double.parseDouble(args[++a]); }
+			} else if (a < args.length - 1 && (args[a].startsWith("--to") || args[a].startsWith("-to"))) {
+				if (a + 1 < args.length) { toTime = Double.parseDouble(args[++a]); }
+			} else if (a < args.length - 1 && (args[a].startsWith("--stride") || args[a].startsWith("-stride"))) {
+				if (a + 1 < args.length) { stride = Math.max(1, Integer.parseInt(args[++a])); }
+			} else if (a < args.length - 1 && (args[a].startsWith("--tail-flush") || args[a].startsWith("-tail-flush"))) {
+				if (a + 1 < args.length) { tailFlush = Long.parseLong(args[++a]); }
+			} else if (a < args.length - 1 && (args[a].startsWith("--tail-timeout") || args[a].startsWith("-tail-timeout"))) {
+				if (a + 1 < args.length) { tailTimeout = (long) (Double.parseDouble(args[++a]) * 1000); }
+			} else if (a < args.length - 1 && (args[a].equals("--monitor") || args[a].equals("-monitor"))) {
+				loadMonitor(args[++a]);
+			} else if (args[a].equals("--sparse-monitors") || args[a].equals("-sparse-monitors")) {
+				DAAMonitorsV2.setSparse(true);
+			} else if (args[a].equals("--parallel-monitors") || args[a].equals("-parallel-monitors")) {
+				DAAMonitorsV2.setParallel(true);
+			} else if (args[a].equals("--jfr") || args[a].equals("-jfr")) {
+				// the file name is optional, default is <output file>.jfr
+				jfrFile = (a + 1 < args.length && args[a + 1].endsWith(".jfr")) ? args[++a] : "";
+			} else if (args[a].equals("--tail") || args[a].equals("-tail")) {
+				TAIL = true;
+			} else if (a < args.length - 1 && (args[a].startsWith("--cache-dir") || args[a].startsWith("-cache-dir"))) {
+				if (a + 1 < args.length) { cacheDir = args[++a]; }
+			} else if (a < args.length - 1 && (args[a].startsWith("--cache-size") || args[a].startsWith("-cache-size"))) {
+				if (a + 1 < args.length) { cacheSize = Long.parseLong(args[++a]) << 20; }
+			} else if (a < args.length - 1 && (args[a].startsWith("--format") || args[a].startsWith("-format"))) {
+				String format = args[++a];
+				if (format.equals("bin")) {
+					BINARY_OUTPUT = true;
+				} else if (!format.equals("json")) {
+					System.err.println("** Warning: Invalid output format (" + format + ")");
+				}
 			} else if (args[a].startsWith("-")) {
 				System.err.println("** Warning: Invalid option (" + args[a] + ")");
 			} else {
 				ifname = args[a];
 			}
 		}
+		if (BINARY_OUTPUT && TAIL) {
+			// live mode prints the json sections of each time step
+			System.out.println("[DAABandsV2] Warning: --format bin is not used with --tail, results are printed as json");
+			BINARY_OUTPUT = false;
+		}
 		scenario = removeExtension(getFileName(ifname));
 		if (ofname == null) {
-			ofname = scenario + ".json";
+			ofname = scenario + (BINARY_OUTPUT ? ".bin" : ".json");
+		}
+		if (BINARY_OUTPUT && STREAM_OUTPUT) {
+			System.out.println("[DAABandsV2] Warning: --stream is not used with --format bin, binary results are collected in memory");
+			STREAM_OUTPUT = false;
 		}
 		return this;
 	}
@@ -1103,10 +2340,10 @@ public class DAABandsV2 {
 	public boolean createPrintWriter () {
 		try {
 			System.out.println("Creating output file " + ofname);
-			printWriter = new PrintWriter(new BufferedWriter(new FileWriter(ofname)), true);
+			new File(ofname).delete(); // the file is assembled from the chunks at the end
 
 			System.out.println("Creating output file " + ofname + ".files");
-			printWriterFiles = new PrintWriter(new BufferedWriter(new FileWriter(ofname + ".files")),true);
+			printWriterFiles = DAAOutputSink.createChunkWriter(ofname + ".files");
 			printWriterFiles.println("[");
 			for (int i = 0; i < chunks.length; i++) {
 				String fname = ofname + chunks[i];
@@ -1114,82 +2351,82 @@ public class DAABandsV2 {
 				System.out.println("Creating output file " + fname);
 				switch (chunks[i]) {
 					case ".info": { 
-						printWriterInfo = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true);
+						printWriterInfo = DAAOutputSink.createChunkWriter(fname);
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"json\" }");
 						break;
 					}
 					case ".ownship": {
-						printWriterOwnship = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterOwnship = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Ownship\" }");
 						break;
 					}
 					case ".alerts": { 
-						printWriterAlerts = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true);
+						printWriterAlerts = DAAOutputSink.createChunkWriter(fname);
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Alerts\" }");
 						break;
 					}
 					case ".wind": {
-						printWriterWind = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true);
+						printWriterWind = DAAOutputSink.createChunkWriter(fname);
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"WindVectors\" }");
 						break; 
 					}
 					case ".metrics": { 
-						printWriterMetrics = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterMetrics = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Metrics\" }");
 						break;
 					}
 					case ".monitors": {
-						printWriterMonitors = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true);
+						printWriterMonitors = DAAOutputSink.createChunkWriter(fname);
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"json\", \"key\": \"Monitors\" }");
 						break;
 					}
 					case ".hd-bands": { 
-						printWriterHdBands = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true);
+						printWriterHdBands = DAAOutputSink.createChunkWriter(fname);
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Heading Bands\" }");
 						break;
 					}
 					case ".vs-bands": { 
-						printWriterVsBands = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterVsBands = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Vertical Speed Bands\" }");
 						break;
 					}
 					case ".hs-bands": {
-						printWriterHsBands = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true);
+						printWriterHsBands = DAAOutputSink.createChunkWriter(fname);
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Horizontal Speed Bands\" }");
 						break;
 					}
 					case ".alt-bands": { 
-						printWriterAltBands = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterAltBands = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Altitude Bands\" }");
 						break; 
 					}
 					case ".hd-res": { 
-						printWriterHdRes = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterHdRes = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Horizontal Direction Resolution\" }");
 						break; 
 					}
 					case ".vs-res": { 
-						printWriterVsRes = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterVsRes = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Vertical Speed Resolution\" }");
 						break; 
 					}
 					case ".hs-res": { 
-						printWriterHsRes = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterHsRes = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Horizontal Speed Resolution\" }");
 						break; 
 					}
 					case ".alt-res": { 
-						printWriterAltRes = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterAltRes = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Altitude Resolution\" }");
 						break; 
 					}
 					case ".contours": { 
-						printWriterContours = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterContours = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Contours\" }");
 						break; 
 					}
 					case ".hazardzones": { 
-						printWriterHazardZones = new PrintWriter(new BufferedWriter(new FileWriter(fname)), true); 
+						printWriterHazardZones = DAAOutputSink.createChunkWriter(fname); 
 						printWriterFiles.println("{ \"file\": \"" + f.getName() + "\", \"type\": \"array\", \"key\": \"Hazard Zones\" }");
 						break; 
 					}
@@ -1201,6 +2438,21 @@ public class DAABandsV2 {
 				if (i < chunks.length - 1) { printWriterFiles.println(","); }
 			}
 			printWriterFiles.println("]");
+
+			// the chunk files with one line per step are indexed, in the order of sections
+			String indexed[] = new String[sections.length];
+			for (int i = 0; i < sections.length; i++) {
+				indexed[i] = ofname + sections[i][0];
+			}
+			System.out.println("Creating output file " + ofname + ".index");
+			chunkIndex = new DAAChunkIndex(ofname + ".index", indexed);
+
+			if (STREAM_OUTPUT) {
+				printWriterMonitorResults = new PrintWriter[DAAMonitorsV2.getSize()];
+				for (int i = 0; i < printWriterMonitorResults.length; i++) {
+					printWriterMonitorResults[i] = DAAOutputSink.createChunkWriter(getMonitorResultsFileName(i + 1));
+				}
+			}
 		} catch (Exception e) {
 			System.err.println("** Error: " + e);
 			return false;
@@ -1211,8 +2463,7 @@ public class DAABandsV2 {
 	 * Utility function, closes the output streams
 	 */
 	public boolean closePrintWriter () {
-		if (printWriter != null) {
-			printWriter.close();
+		if (printWriterFiles != null) {
 			printWriterFiles.close();
 			printWriterInfo.close();
 			printWriterOwnship.close();
@@ -1229,20 +2480,59 @@ public class DAABandsV2 {
 			printWriterHdRes.close();
 			printWriterContours.close();
 			printWriterHazardZones.close();
+			chunkIndex.close();
+			if (printWriterMonitorResults != null) {
+				// the results of the monitors are already in the .monitors file, temporary files can be removed
+				for (int i = 0; i < printWriterMonitorResults.length; i++) {
+					printWriterMonitorResults[i].close();
+					new File(getMonitorResultsFileName(i + 1)).delete();
+				}
+				printWriterMonitorResults = null;
+			}
 			return true;
 		}
 		return false;
 	}
 
 	public static void main(String[] args) {
+		if (args.length > 0 && (args[0].equals("--serve") || args[0].equals("-serve"))) {
+			// stdout is reserved to the responses, log messages are redirected to stderr
+			// the other options (e.g., --cache-dir) are applied to all requests
+			DAABandsServer server = new DAABandsServer(System.out, Arrays.asList(args).subList(1, args.length));
+			System.setOut(System.err);
+			server.serve(System.in);
+			return;
+		}
 		DAABandsV2 daaBands = new DAABandsV2();
 		daaBands.parseCliArgs(args);
+		// live mode: stdout is reserved to the results, log messages are redirected to stderr
+		PrintStream results = System.out;
+		if (daaBands.TAIL) { System.setOut(System.err); }
 		// daaBands.adjustThreshold(); // deprecated, this was needed for WWD
-		daaBands.loadConfig();
+		// with --configs, each configuration is loaded in its own Daidalus object
+		if (daaBands.configNames == null) { daaBands.loadConfig(); }
 		System.out.println(daaBands.printConfig()); // useful for debugging purposes
 		Velocity wind = daaBands.readWind();
 		if (wind != null) { System.out.println("Using constant wind vector: " + wind); }
-		daaBands.walkFile();
+		// flight recording, stopped and written to file when the scenario has been processed
+		Recording recording = null;
+		if (daaBands.jfrFile != null) {
+			String fname = daaBands.jfrFile.isEmpty() ? daaBands.ofname + ".jfr" : daaBands.jfrFile;
+			System.out.println("[DAABandsV2] Starting flight recording " + fname);
+			recording = DAAFlightRecorder.start(fname);
+		}
+		try {
+			if (daaBands.TAIL) {
+				daaBands.walkTail(results);
+			} else {
+				daaBands.walkFile();
+			}
+		} catch (WalkException e) {
+			System.err.println("** Error: " + e.getMessage());
+			DAAFlightRecorder.stop(recording);
+			System.exit(1);
+		}
+		DAAFlightRecorder.stop(recording);
 	}
 
 }
@@ -0,0 +1,341 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gov.nasa.larcfm.ACCoRD.DaidalusFileWalker;
+import gov.nasa.larcfm.ACCoRD.TrafficState;
+import gov.nasa.larcfm.Util.Position;
+
+import static gov.nasa.larcfm.ACCoRD.DaidalusParameters.VERSION;
+
+/**
+ * Benchmark of the stages of DAABandsV2 and DAA2Json, for all scenarios in src/daa-scenarios and all configurations in src/daa-config/2.x
+ * (see make benchmark, which runs the benchmark with each DAIDALUS release in daidalus-submodules/releases).
+ *
+ * Stages:
+ *   load       DaidalusFileWalker.readState
+ *   snapshot   DAABandsV2.takeSnapshot, i.e., DAIDALUS computations and monitors
+ *   monitors   DAAMonitorsV2.check and conversion of the verdicts to strings, on the snapshot of the step (taken before the measurement)
+ *   serialize  DAABandsV2.serialize, i.e., json records of a time step
+ *   polygons   DAABandsV2.printPolygons of contours and hazard zones
+ *   jsonBands  DAABandsV2.jsonBands, i.e., snapshot + serialize
+ *   daa2json   DAA2Json.printDAA and printLLA
+ * Each stage is run on all time steps of the scenario for a number of warm-up iterations, whose results are discarded, 
+ * followed by a number of measurement iterations. Only the stage is measured, the stages it depends on are run before the measurement.
+ * Results: per-step latency (mean, p50, p99, in microseconds), throughput (steps/s), and allocation (bytes/step, MB/s) 
+ * measured with the per-thread allocation counter of the JVM, when available.
+ */
+public class DAABenchmark {
+	public static final String STAGES[] = { "load", "snapshot", "monitors", "serialize", "polygons", "jsonBands", "daa2json" };
+
+	protected int warmupIterations = 2;
+	protected int iterations = 5;
+	protected List<String> stages = Arrays.asList(STAGES);
+	protected List<String> scenarios = new ArrayList<String>();
+	protected List<String> configs = new ArrayList<String>();
+	protected String ofname = null;
+
+	protected static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	protected static final boolean allocationAvailable = threadBean instanceof com.sun.management.ThreadMXBean 
+		&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+
+	/**
+	 * Results of a stage
+	 */
+	public static class Result {
+		public String scenario;
+		public String config;
+		public String stage;
+		public int steps; // measured steps, over all iterations
+		public double mean, p50, p99; // us
+		public double throughput; // steps/s
+		public double allocation; // bytes/step, negative if not available
+		public double allocationRate; // MB/s
+
+		public String toJson () {
+			return String.format("{ \"scenario\": \"%s\", \"config\": \"%s\", \"stage\": \"%s\", \"steps\": %d, "
+				+ "\"latency\": { \"mean\": %.3f, \"p50\": %.3f, \"p99\": %.3f, \"units\": \"us\" }, \"throughput\": %.1f, "
+				+ "\"allocation\": { \"bytes_per_step\": %.1f, \"rate\": %.1f, \"units\": \"MB/s\" } }",
+				scenario, config, stage, steps, mean, p50, p99, throughput, allocation, allocationRate);
+		}
+
+		public String toString () {
+			return String.format("%-24s %-28s %-10s %10.3f %10.3f %10.3f %12.1f %12.1f %10.1f",
+				scenario, config, stage, mean, p50, p99, throughput, allocation, allocationRate);
+		}
+	}
+
+	protected static long allocatedBytes () {
+		return allocationAvailable ? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	/**
+	 * Runs a stage on all the time steps of a scenario, returns the results of the measurement iterations
+	 * @param bands DAABandsV2 object with the configuration loaded
+	 */
+	public Result run (DAABandsV2 bands, String scenario, String stage) {
+		bands.scenario = DAABandsV2.removeExtension(DAABandsV2.getFileName(scenario));
+		DaidalusFileWalker walker = new DaidalusFileWalker(scenario);
+		DAA2Json daa2json = new DAA2Json(bands.daa);
+		DAAStepSnapshot snap = new DAAStepSnapshot();
+		DAAMonitorsV2 monitors = new DAAMonitorsV2();
+		DAAMonitorsV2 measuredMonitors = new DAAMonitorsV2();
+		DAAJsonWriter json = new DAAJsonWriter();
+		JsonBands jb = new JsonBands();
+		List<List<Position>> zones = new ArrayList<List<Position>>(2);
+
+		long latencies[] = new long[1024];
+		int n = 0;
+		long total = 0;
+		long allocated = 0;
+		for (int it = 0; it < warmupIterations + iterations; it++) {
+			boolean measured = it >= warmupIterations;
+			walker.goToBeginning();
+			while (!walker.atEnd()) {
+				long start = 0;
+				long alloc = 0;
+				if (stage.equals("load")) {
+					alloc = allocatedBytes();
+					start = System.nanoTime();
+					walker.readState(bands.daa);
+				} else {
+					walker.readState(bands.daa);
+					if (stage.equals("monitors") || stage.equals("serialize") || stage.equals("polygons")) {
+						bands.takeSnapshot(snap, monitors);
+					}
+					alloc = allocatedBytes();
+					start = System.nanoTime();
+					switch (stage) {
+						case "snapshot": {
+							bands.takeSnapshot(snap, monitors);
+							break;
+						}
+						case "monitors": {
+							measuredMonitors.check(snap);
+							for (int i = 0; i < DAAMonitorsV2.getSize(); i++) {
+								DAAMonitorsV2.appendResult(json.reset(), snap.monitors, i);
+							}
+							break;
+						}
+						case "serialize": {
+							bands.serialize(snap, jb);
+							break;
+						}
+						case "polygons": {
+							for (int ac = 1; ac <= snap.nTraffic; ac++) {
+								DAAStepSnapshot.Traffic traffic = snap.getTraffic(ac);
+								bands.printPolygons(json.reset(), traffic.contours, snap.ownshipPosition);
+								zones.clear();
+								zones.add(traffic.violationZone);
+								zones.add(traffic.conflictZone);
+								bands.printPolygons(json.reset(), zones, snap.ownshipPosition);
+							}
+							break;
+						}
+						case "jsonBands": {
+							bands.jsonBands(jb);
+							break;
+						}
+						case "daa2json": {
+							TrafficState ownship = bands.daa.getOwnshipState();
+							daa2json.printLLA(ownship, ownship);
+							for (int ac = 0; ac <= bands.daa.lastTrafficIndex(); ac++) {
+								TrafficState traffic = bands.daa.getAircraftStateAt(ac);
+								daa2json.printDAA(ownship, traffic, bands.daa.getCurrentTime());
+								if (ac > 0) { daa2json.printLLA(ownship, traffic); }
+							}
+							break;
+						}
+						default: {
+							System.err.println("** Error: Unknown stage " + stage);
+							return null;
+						}
+					}
+				}
+				long latency = System.nanoTime() - start;
+				alloc = allocatedBytes() - alloc;
+				// the results are released at each step, so that the measurements do not depend on the length of the scenario
+				jb.clear();
+				if (measured) {
+					if (n == latencies.length) { latencies = Arrays.copyOf(latencies, n * 2); }
+					latencies[n++] = latency;
+					total += latency;
+					allocated += alloc;
+				}
+			}
+		}
+
+		Result res = new Result();
+		res.scenario = DAABandsV2.getFileName(scenario);
+		res.config = bands.getConfig();
+		res.stage = stage;
+		res.steps = n;
+		if (n > 0) {
+			Arrays.sort(latencies, 0, n);
+			res.mean = total / 1e3 / n;
+			res.p50 = latencies[(int) (0.5 * (n - 1))] / 1e3;
+			res.p99 = latencies[(int) (0.99 * (n - 1))] / 1e3;
+			res.throughput = total > 0 ? n / (total / 1e9) : 0;
+			res.allocation = allocationAvailable ? (double) allocated / n : -1;
+			res.allocationRate = allocationAvailable && total > 0 ? (allocated / 1e6) / (total / 1e9) : -1;
+		}
+		return res;
+	}
+
+	/**
+	 * Runs all stages on all scenarios and configurations
+	 */
+	public List<Result> run () {
+		List<Result> results = new ArrayList<Result>();
+		System.out.println(String.format("%-24s %-28s %-10s %10s %10s %10s %12s %12s %10s",
+			"scenario", "config", "stage", "mean(us)", "p50(us)", "p99(us)", "steps/s", "bytes/step", "MB/s"));
+		for (String config : configs) {
+			DAABandsV2 bands = new DAABandsV2();
+			bands.daaConfig = config;
+			if (!bands.loadConfig()) { continue; }
+			for (String scenario : scenarios) {
+				for (String stage : stages) {
+					Result res = run(bands, scenario, stage);
+					if (res != null) {
+						results.add(res);
+						System.out.println(res);
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	public boolean printResults (List<Result> results) {
+		try (PrintWriter out = new PrintWriter(ofname)) {
+			out.println("{");
+			out.println("\"Info\": { \"language\": \"Java\", \"version\": \"" + VERSION + "\", \"jvm\": \"" + System.getProperty("java.version") 
+				+ "\", \"warmup\": " + warmupIterations + ", \"iterations\": " + iterations + " },");
+			out.println("\"Results\": [");
+			for (int i = 0; i < results.size(); i++) {
+				out.println(results.get(i).toJson() + (i < results.size() - 1 ? "," : ""));
+			}
+			out.println("]");
+			out.println("}");
+			return !out.checkError();
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+		}
+		return false;
+	}
+
+	/**
+	 * Utility function, returns the files with the given extension in a folder, in alphabetical order
+	 */
+	protected static List<String> listFiles (String folder, String ext) {
+		List<String> res = new ArrayList<String>();
+		File files[] = new File(folder).listFiles((dir, name) -> name.endsWith(ext));
+		if (files != null) {
+			Arrays.sort(files);
+			for (File f : files) { res.add(f.getPath()); }
+		}
+		return res;
+	}
+
+	public static void printHelpMsg () {
+		System.out.println("Usage:");
+		System.out.println("  DAABenchmark [<option>]");
+		System.out.println("  <option> can be");
+		System.out.println("  --scenarios <file.daa,file.daa,...|folder>\n\tScenarios (default: ../../daa-scenarios)");
+		System.out.println("  --configs <file.conf,file.conf,...|folder>\n\tConfigurations (default: ../../daa-config/2.x)");
+		System.out.println("  --stages <stage,stage,...>\n\tStages, any of " + String.join(", ", STAGES) + " (default: all)");
+		System.out.println("  --warmup <n>\n\tWarm-up iterations (default: 2)");
+		System.out.println("  --iterations <n>\n\tMeasurement iterations (default: 5)");
+		System.out.println("  --output <file.json>\n\tWrite the results to file, in JSON format");
+	}
+
+	protected static List<String> getFiles (String arg, String ext) {
+		return new File(arg).isDirectory() ? listFiles(arg, ext) : Arrays.asList(arg.split(","));
+	}
+
+	public DAABenchmark parseCliArgs (String[] args) {
+		String scenarioArg = "../../daa-scenarios";
+		String configArg = "../../daa-config/2.x";
+		for (int a = 0; a < args.length; a++) {
+			if (args[a].equals("--help") || args[a].equals("-help") || args[a].equals("-h")) {
+				printHelpMsg();
+				System.exit(0);
+			} else if (a < args.length - 1 && (args[a].startsWith("--scenarios") || args[a].startsWith("-scenarios"))) {
+				scenarioArg = args[++a];
+			} else if (a < args.length - 1 && (args[a].startsWith("--configs") || args[a].startsWith("-configs"))) {
+				configArg = args[++a];
+			} else if (a < args.length - 1 && (args[a].startsWith("--stages") || args[a].startsWith("-stages"))) {
+				stages = Arrays.asList(args[++a].split(","));
+			} else if (a < args.length - 1 && (args[a].startsWith("--warmup") || args[a].startsWith("-warmup"))) {
+				warmupIterations = Integer.parseInt(args[++a]);
+			} else if (a < args.length - 1 && (args[a].startsWith("--iterations") || args[a].startsWith("-iterations"))) {
+				iterations = Math.max(1, Integer.parseInt(args[++a]));
+			} else if (a < args.length - 1 && (args[a].startsWith("--out") || args[a].startsWith("-out") || args[a].equals("-o"))) {
+				ofname = args[++a];
+			} else {
+				System.err.println("** Warning: Invalid option (" + args[a] + ")");
+			}
+		}
+		scenarios = getFiles(scenarioArg, ".daa");
+		configs = getFiles(configArg, ".conf");
+		return this;
+	}
+
+	public static void main (String[] args) {
+		DAABenchmark benchmark = new DAABenchmark().parseCliArgs(args);
+		System.out.println("[DAABenchmark] DAIDALUS " + VERSION + ", " + benchmark.scenarios.size() + " scenarios, " 
+			+ benchmark.configs.size() + " configurations, " + benchmark.stages.size() + " stages");
+		if (!allocationAvailable) {
+			System.out.println("[DAABenchmark] Warning: allocation measurements are not available on this JVM");
+		}
+		List<Result> results = benchmark.run();
+		if (benchmark.ofname != null) {
+			System.out.println("[DAABenchmark] Writing results to " + benchmark.ofname);
+			benchmark.printResults(results);
+		}
+	}
+}
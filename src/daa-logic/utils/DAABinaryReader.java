@@ -0,0 +1,427 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the binary output format (--format bin). The file is memory-mapped, and any time step can be accessed 
+ * without parsing the rest of the file: step records have a fixed size, and each step record stores the position 
+ * of its traffic records, bands intervals and polygons in the other sections.
+ *
+ * File layout (version 1), all values are big-endian:
+ *   magic      int, "DAAB"
+ *   version    int
+ *   steps      int, number of time steps
+ *   sections   int, number of sections
+ *   directory  for each section: int id, long offset from the beginning of the file, long length in bytes
+ * Sections:
+ *   INFO        UTF-8 JSON object: info, scenario, wind, stats, units of the bands, monitor descriptors
+ *   STRINGS     int n, int offsets[n + 1], UTF-8 bytes. Region codes are indexes in this table
+ *   STEPS       one STEP_SIZE record per time step
+ *   TRAFFIC     one TRAFFIC_SIZE record per traffic aircraft per time step
+ *   RESOLUTIONS four RESOLUTION_SIZE records per time step (HD, HS, VS, ALT)
+ *   RANGES      two doubles (low, up) per bands interval, in the units given in INFO
+ *   REGIONS     one byte (region code) per bands interval
+ *   POLYGONS    int index of the first vertex of each polygon, followed by the number of vertices
+ *   VERTICES    three floats per vertex: lat and lon in deg relative to the reference point of the step, alt in ft
+ * Other values are in internal units (m, s, rad, m/s), strings are stored as indexes in the string table (-1 for null).
+ */
+public class DAABinaryReader {
+	public static final int MAGIC = 0x44414142; // "DAAB"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	public static final int DIRECTORY_ENTRY_SIZE = 20;
+
+	// section ids
+	public static final int SECTION_INFO = 1;
+	public static final int SECTION_STRINGS = 2;
+	public static final int SECTION_STEPS = 3;
+	public static final int SECTION_TRAFFIC = 4;
+	public static final int SECTION_RESOLUTIONS = 5;
+	public static final int SECTION_RANGES = 6;
+	public static final int SECTION_REGIONS = 7;
+	public static final int SECTION_POLYGONS = 8;
+	public static final int SECTION_VERTICES = 9;
+	protected static final int N_SECTIONS = 9;
+
+	// dimensions of bands and resolutions
+	public static final int HD = 0; // horizontal direction
+	public static final int HS = 1; // horizontal speed
+	public static final int VS = 2; // vertical speed
+	public static final int ALT = 3; // altitude
+	public static final int N_DIMENSIONS = 4;
+	public static final int N_MONITORS = 4;
+
+	// aircraft state record: int id, 12 doubles (see STATE_*), byte wind
+	public static final int STATE_SX = 0, STATE_SY = 1, STATE_SZ = 2, STATE_VX = 3, STATE_VY = 4, STATE_VZ = 5,
+		STATE_ALTITUDE = 6, STATE_TRACK = 7, STATE_HEADING = 8, STATE_GROUNDSPEED = 9, STATE_AIRSPEED = 10, STATE_VERTICALSPEED = 11;
+	public static final int AC_ID = 0;
+	public static final int AC_VALUES = 4;
+	public static final int AC_WIND = AC_VALUES + 12 * 8;
+	public static final int AC_SIZE = AC_WIND + 1;
+
+	// step record: double time, ownship state, byte regions[4], double wind deg and knot, double reference lat and lon (deg), 
+	// int first traffic and number of traffic, for each dimension int first interval and number of intervals, int monitors[4]
+	public static final int STEP_TIME = 0;
+	public static final int STEP_OWNSHIP = 8;
+	public static final int STEP_REGIONS = STEP_OWNSHIP + AC_SIZE;
+	public static final int STEP_WIND = STEP_REGIONS + N_DIMENSIONS;
+	public static final int STEP_REFERENCE = STEP_WIND + 16;
+	public static final int STEP_FIRST_TRAFFIC = STEP_REFERENCE + 16;
+	public static final int STEP_N_TRAFFIC = STEP_FIRST_TRAFFIC + 4;
+	public static final int STEP_BANDS = STEP_N_TRAFFIC + 4;
+	public static final int STEP_MONITORS = STEP_BANDS + N_DIMENSIONS * 8;
+	public static final int STEP_SIZE = STEP_MONITORS + N_MONITORS * 4;
+
+	// traffic record: aircraft state, int alert level, byte alert region, int alerter, int alerter index, 
+	// 9 doubles (see METRIC_*), int first polygon, int number of contours (contours are followed by violation and conflict zones)
+	public static final int METRIC_HORIZONTAL_SEPARATION = 0, METRIC_VERTICAL_SEPARATION = 1, 
+		METRIC_HORIZONTAL_MISS_DISTANCE = 2, METRIC_VERTICAL_MISS_DISTANCE = 3,
+		METRIC_HORIZONTAL_CLOSURE_RATE = 4, METRIC_VERTICAL_CLOSURE_RATE = 5,
+		METRIC_TCPA = 6, METRIC_TCOA = 7, METRIC_TAUMOD = 8;
+	public static final int TRAFFIC_ALERT_LEVEL = AC_SIZE;
+	public static final int TRAFFIC_ALERT_REGION = TRAFFIC_ALERT_LEVEL + 4;
+	public static final int TRAFFIC_ALERTER = TRAFFIC_ALERT_REGION + 1;
+	public static final int TRAFFIC_ALERTER_INDEX = TRAFFIC_ALERTER + 4;
+	public static final int TRAFFIC_METRICS = TRAFFIC_ALERTER_INDEX + 4;
+	public static final int TRAFFIC_FIRST_POLYGON = TRAFFIC_METRICS + 9 * 8;
+	public static final int TRAFFIC_N_CONTOURS = TRAFFIC_FIRST_POLYGON + 4;
+	public static final int TRAFFIC_SIZE = TRAFFIC_N_CONTOURS + 4;
+
+	// resolution record: double preferred and other resolution, byte preferred and other region, byte flags, 
+	// double time to recovery, int n factor, double recovery horizontal and vertical distance
+	public static final int FLAG_PREFERRED = 1, FLAG_RECOVERY = 2, FLAG_SATURATED = 4;
+	public static final int RES_PREFERRED = 0;
+	public static final int RES_OTHER = 8;
+	public static final int RES_PREFERRED_REGION = 16;
+	public static final int RES_OTHER_REGION = 17;
+	public static final int RES_FLAGS = 18;
+	public static final int RES_TIME_TO_RECOVERY = 19;
+	public static final int RES_NFACTOR = RES_TIME_TO_RECOVERY + 8;
+	public static final int RES_RECOVERY_HORIZONTAL = RES_NFACTOR + 4;
+	public static final int RES_RECOVERY_VERTICAL = RES_RECOVERY_HORIZONTAL + 8;
+	public static final int RESOLUTION_SIZE = RES_RECOVERY_VERTICAL + 8;
+
+	protected int nSteps;
+	protected ByteBuffer sections[] = new ByteBuffer[N_SECTIONS + 1];
+	protected String strings[];
+
+	/**
+	 * Opens and maps the given file
+	 */
+	public DAABinaryReader (String fname) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fname, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+			if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+				throw new IOException("File " + fname + " is not a DAA binary file");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("File " + fname + " has unsupported version " + header.getInt(4));
+			}
+			nSteps = header.getInt(8);
+			int n = header.getInt(12);
+			ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) n * DIRECTORY_ENTRY_SIZE);
+			for (int i = 0; i < n; i++) {
+				int id = directory.getInt(i * DIRECTORY_ENTRY_SIZE);
+				long offset = directory.getLong(i * DIRECTORY_ENTRY_SIZE + 4);
+				long length = directory.getLong(i * DIRECTORY_ENTRY_SIZE + 12);
+				if (id > 0 && id <= N_SECTIONS) { // unknown sections are skipped
+					sections[id] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				}
+			}
+			for (int id = 1; id <= N_SECTIONS; id++) {
+				if (sections[id] == null) {
+					throw new IOException("File " + fname + " is incomplete (section " + id + " is missing)");
+				}
+			}
+		} finally {
+			// the mapping remains valid after the channel is closed
+			file.close();
+		}
+		strings = new String[sections[SECTION_STRINGS].getInt(0)];
+	}
+
+	/**
+	 * Returns the string with the given index in the string table, null for -1
+	 */
+	public String getString (int index) {
+		if (index < 0) { return null; }
+		if (strings[index] == null) {
+			ByteBuffer table = sections[SECTION_STRINGS];
+			int start = table.getInt(4 + 4 * index);
+			int end = table.getInt(8 + 4 * index);
+			strings[index] = decode(table, 4 + 4 * (strings.length + 1) + start, end - start);
+		}
+		return strings[index];
+	}
+
+	/**
+	 * Returns the JSON object stored in the INFO section
+	 */
+	public String getInfo () {
+		return decode(sections[SECTION_INFO], 0, sections[SECTION_INFO].limit());
+	}
+
+	protected static String decode (ByteBuffer buf, int pos, int length) {
+		byte utf[] = new byte[length];
+		ByteBuffer src = buf.duplicate();
+		src.position(pos);
+		src.get(utf);
+		return new String(utf, StandardCharsets.UTF_8);
+	}
+
+	public int getSteps () {
+		return nSteps;
+	}
+
+	/**
+	 * Returns the index of the last step with time less or equal to the given time, -1 if time precedes the first step
+	 */
+	public int findStep (double time) {
+		int lo = 0;
+		int hi = nSteps - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (getTime(mid) <= time) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return hi;
+	}
+
+	protected int step (int step) {
+		if (step < 0 || step >= nSteps) {
+			throw new IndexOutOfBoundsException("Step " + step + " is out of range (steps: " + nSteps + ")");
+		}
+		return step * STEP_SIZE;
+	}
+
+	protected int traffic (int step, int ac) { // traffic indexes start from 1, as in Daidalus
+		int pos = step(step);
+		if (ac < 1 || ac > sections[SECTION_STEPS].getInt(pos + STEP_N_TRAFFIC)) {
+			throw new IndexOutOfBoundsException("Aircraft " + ac + " is out of range at step " + step);
+		}
+		return (sections[SECTION_STEPS].getInt(pos + STEP_FIRST_TRAFFIC) + ac - 1) * TRAFFIC_SIZE;
+	}
+
+	protected int resolution (int step, int dim) {
+		step(step);
+		return (step * N_DIMENSIONS + dim) * RESOLUTION_SIZE;
+	}
+
+	// step
+	public double getTime (int step) {
+		return sections[SECTION_STEPS].getDouble(step(step) + STEP_TIME);
+	}
+	public String getOwnshipId (int step) {
+		return getString(sections[SECTION_STEPS].getInt(step(step) + STEP_OWNSHIP + AC_ID));
+	}
+	public double getOwnshipState (int step, int field) {
+		return sections[SECTION_STEPS].getDouble(step(step) + STEP_OWNSHIP + AC_VALUES + 8 * field);
+	}
+	public boolean getOwnshipWind (int step) {
+		return sections[SECTION_STEPS].get(step(step) + STEP_OWNSHIP + AC_WIND) != 0;
+	}
+	public String getOwnshipRegion (int step, int dim) {
+		return getString(sections[SECTION_STEPS].get(step(step) + STEP_REGIONS + dim));
+	}
+	public double getWindDeg (int step) {
+		return sections[SECTION_STEPS].getDouble(step(step) + STEP_WIND);
+	}
+	public double getWindKnot (int step) {
+		return sections[SECTION_STEPS].getDouble(step(step) + STEP_WIND + 8);
+	}
+	public String getMonitorResult (int step, int monitor) {
+		return getString(sections[SECTION_STEPS].getInt(step(step) + STEP_MONITORS + 4 * monitor));
+	}
+
+	// traffic
+	public int getTrafficCount (int step) {
+		return sections[SECTION_STEPS].getInt(step(step) + STEP_N_TRAFFIC);
+	}
+	public String getTrafficId (int step, int ac) {
+		return getString(sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + AC_ID));
+	}
+	public double getTrafficState (int step, int ac, int field) {
+		return sections[SECTION_TRAFFIC].getDouble(traffic(step, ac) + AC_VALUES + 8 * field);
+	}
+	public int getAlertLevel (int step, int ac) {
+		return sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_ALERT_LEVEL);
+	}
+	public String getAlertRegion (int step, int ac) {
+		return getString(sections[SECTION_TRAFFIC].get(traffic(step, ac) + TRAFFIC_ALERT_REGION));
+	}
+	public String getAlerter (int step, int ac) {
+		return getString(sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_ALERTER));
+	}
+	public int getAlerterIndex (int step, int ac) {
+		return sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_ALERTER_INDEX);
+	}
+	public double getMetric (int step, int ac, int metric) {
+		return sections[SECTION_TRAFFIC].getDouble(traffic(step, ac) + TRAFFIC_METRICS + 8 * metric);
+	}
+
+	// bands
+	public int getBandsCount (int step, int dim) {
+		return sections[SECTION_STEPS].getInt(step(step) + STEP_BANDS + 8 * dim + 4);
+	}
+	protected int interval (int step, int dim, int i) {
+		if (i < 0 || i >= getBandsCount(step, dim)) {
+			throw new IndexOutOfBoundsException("Interval " + i + " is out of range at step " + step);
+		}
+		return sections[SECTION_STEPS].getInt(step(step) + STEP_BANDS + 8 * dim) + i;
+	}
+	public double getBandsLow (int step, int dim, int i) {
+		return sections[SECTION_RANGES].getDouble(16 * interval(step, dim, i));
+	}
+	public double getBandsUp (int step, int dim, int i) {
+		return sections[SECTION_RANGES].getDouble(16 * interval(step, dim, i) + 8);
+	}
+	public String getBandsRegion (int step, int dim, int i) {
+		return getString(sections[SECTION_REGIONS].get(interval(step, dim, i)));
+	}
+
+	// resolutions
+	public double getPreferredResolution (int step, int dim) {
+		return sections[SECTION_RESOLUTIONS].getDouble(resolution(step, dim) + RES_PREFERRED);
+	}
+	public double getOtherResolution (int step, int dim) {
+		return sections[SECTION_RESOLUTIONS].getDouble(resolution(step, dim) + RES_OTHER);
+	}
+	public String getPreferredRegion (int step, int dim) {
+		return getString(sections[SECTION_RESOLUTIONS].get(resolution(step, dim) + RES_PREFERRED_REGION));
+	}
+	public String getOtherRegion (int step, int dim) {
+		return getString(sections[SECTION_RESOLUTIONS].get(resolution(step, dim) + RES_OTHER_REGION));
+	}
+	public boolean getResolutionFlag (int step, int dim, int flag) {
+		return (sections[SECTION_RESOLUTIONS].get(resolution(step, dim) + RES_FLAGS) & flag) != 0;
+	}
+	public double getTimeToRecovery (int step, int dim) {
+		return sections[SECTION_RESOLUTIONS].getDouble(resolution(step, dim) + RES_TIME_TO_RECOVERY);
+	}
+	public int getNFactor (int step, int dim) {
+		return sections[SECTION_RESOLUTIONS].getInt(resolution(step, dim) + RES_NFACTOR);
+	}
+	public double getRecoveryHorizontalDistance (int step, int dim) {
+		return sections[SECTION_RESOLUTIONS].getDouble(resolution(step, dim) + RES_RECOVERY_HORIZONTAL);
+	}
+	public double getRecoveryVerticalDistance (int step, int dim) {
+		return sections[SECTION_RESOLUTIONS].getDouble(resolution(step, dim) + RES_RECOVERY_VERTICAL);
+	}
+
+	// polygons
+	public int getContoursCount (int step, int ac) {
+		return sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_N_CONTOURS);
+	}
+	/**
+	 * Returns the vertices of the k-th contour of traffic aircraft ac, as lat, lon (deg), alt (ft) triples
+	 */
+	public double[] getContour (int step, int ac, int k) {
+		if (k < 0 || k >= getContoursCount(step, ac)) {
+			throw new IndexOutOfBoundsException("Contour " + k + " is out of range at step " + step);
+		}
+		return getPolygon(step, sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_FIRST_POLYGON) + k);
+	}
+	public double[] getViolationZone (int step, int ac) {
+		return getPolygon(step, sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_FIRST_POLYGON) + getContoursCount(step, ac));
+	}
+	public double[] getConflictZone (int step, int ac) {
+		return getPolygon(step, sections[SECTION_TRAFFIC].getInt(traffic(step, ac) + TRAFFIC_FIRST_POLYGON) + getContoursCount(step, ac) + 1);
+	}
+	protected double[] getPolygon (int step, int polygon) {
+		double refLat = sections[SECTION_STEPS].getDouble(step(step) + STEP_REFERENCE);
+		double refLon = sections[SECTION_STEPS].getDouble(step(step) + STEP_REFERENCE + 8);
+		int first = sections[SECTION_POLYGONS].getInt(4 * polygon);
+		int last = sections[SECTION_POLYGONS].getInt(4 * polygon + 4);
+		ByteBuffer vertices = sections[SECTION_VERTICES];
+		double ply[] = new double[3 * (last - first)];
+		for (int i = 0; i < last - first; i++) {
+			int pos = 12 * (first + i);
+			ply[3 * i] = refLat + vertices.getFloat(pos);
+			ply[3 * i + 1] = refLon + vertices.getFloat(pos + 4);
+			ply[3 * i + 2] = vertices.getFloat(pos + 8);
+		}
+		return ply;
+	}
+
+	/**
+	 * Prints a summary of the file, and the content of the given time steps
+	 */
+	public static void main (String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: DAABinaryReader file.bin [step...]");
+			System.exit(0);
+		}
+		try {
+			DAABinaryReader reader = new DAABinaryReader(args[0]);
+			System.out.println(reader.getInfo());
+			int n = reader.getSteps();
+			System.out.println("Steps: " + n + (n > 0 ? " (time " + reader.getTime(0) + " to " + reader.getTime(n - 1) + ")" : ""));
+			String dims[] = { "hd", "hs", "vs", "alt" };
+			for (int a = 1; a < args.length; a++) {
+				int step = Integer.parseInt(args[a]);
+				System.out.println("Step " + step + ", time " + reader.getTime(step) + ", ownship " + reader.getOwnshipId(step));
+				for (int dim = 0; dim < N_DIMENSIONS; dim++) {
+					String bands = "";
+					for (int i = 0; i < reader.getBandsCount(step, dim); i++) {
+						bands += " [" + reader.getBandsLow(step, dim, i) + ", " + reader.getBandsUp(step, dim, i) + "] " + reader.getBandsRegion(step, dim, i);
+					}
+					System.out.println("  " + dims[dim] + " bands:" + bands);
+					System.out.println("  " + dims[dim] + " resolution: " + reader.getPreferredResolution(step, dim) + " " + reader.getPreferredRegion(step, dim));
+				}
+				for (int ac = 1; ac <= reader.getTrafficCount(step); ac++) {
+					System.out.println("  " + reader.getTrafficId(step, ac) + ": alert level " + reader.getAlertLevel(step, ac) 
+						+ " (" + reader.getAlertRegion(step, ac) + "), " + reader.getContoursCount(step, ac) + " contours");
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+			System.exit(1);
+		}
+	}
+}
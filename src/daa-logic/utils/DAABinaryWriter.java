@@ -0,0 +1,411 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gov.nasa.larcfm.ACCoRD.BandsRegion;
+import gov.nasa.larcfm.Util.LatLonAlt;
+import gov.nasa.larcfm.Util.Position;
+import gov.nasa.larcfm.Util.Units;
+
+/**
+ * Writer of the binary output format (--format bin), see DAABinaryReader for a description of the format.
+ * The sections of the file are collected in memory, one growable buffer per section, and written to file at the end.
+ * Writers of consecutive time segments can be stitched together with append.
+ */
+public class DAABinaryWriter {
+
+	/**
+	 * Growable buffer holding the content of a section
+	 */
+	protected static class Column {
+		protected ByteBuffer buf = ByteBuffer.allocate(1024);
+
+		protected ByteBuffer reserve (int n) {
+			if (buf.remaining() < n) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+				buf.flip();
+				larger.put(buf);
+				buf = larger;
+			}
+			return buf;
+		}
+		public void putByte (int val) { reserve(1).put((byte) val); }
+		public void putInt (int val) { reserve(4).putInt(val); }
+		public void putFloat (float val) { reserve(4).putFloat(val); }
+		public void putDouble (double val) { reserve(8).putDouble(val); }
+		public void put (byte[] bytes) { reserve(bytes.length).put(bytes); }
+		public void put (Column col) {
+			reserve(col.size()).put(col.buf.array(), 0, col.size());
+		}
+		public int size () {
+			return buf.position();
+		}
+		public void clear () {
+			buf.clear();
+		}
+		public boolean sameContent (Column col) {
+			return Arrays.equals(buf.array(), 0, size(), col.buf.array(), 0, col.size());
+		}
+	}
+
+	protected boolean metrics; // false when metrics are not computed, traffic states and metrics are then stored as NaN
+
+	// string table, region codes are the indexes of the region names, which are added first
+	protected Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+	protected List<String> strings = new ArrayList<String>();
+
+	protected int nSteps = 0;
+	protected int nTraffic = 0;
+	protected int nIntervals = 0;
+	protected int nPolygons = 0;
+	protected int nVertices = 0;
+
+	protected Column steps = new Column();
+	protected Column traffic = new Column();
+	protected Column resolutions = new Column();
+	protected Column ranges = new Column();
+	protected Column regions = new Column();
+	protected Column polygons = new Column();
+	protected Column vertices = new Column();
+
+	/**
+	 * Constructor
+	 */
+	public DAABinaryWriter (boolean metrics) {
+		this.metrics = metrics;
+		for (BandsRegion region: BandsRegion.values()) {
+			intern(region.toString());
+		}
+	}
+
+	/**
+	 * Returns the index of str in the string table, -1 for null
+	 */
+	protected int intern (String str) {
+		if (str == null) { return -1; }
+		Integer index = stringIndex.get(str);
+		if (index == null) {
+			index = strings.size();
+			strings.add(str);
+			stringIndex.put(str, index);
+		}
+		return index;
+	}
+
+	protected int regionCode (BandsRegion region) {
+		return intern(region.toString());
+	}
+
+	protected void putAircraftState (Column col, DAAStepSnapshot.AircraftState ac, boolean valid) {
+		col.putInt(intern(ac.id));
+		double values[] = { ac.sx, ac.sy, ac.sz, ac.vx, ac.vy, ac.vz, 
+			ac.altitude, ac.track, ac.heading, ac.groundspeed, ac.airspeed, ac.verticalspeed };
+		for (double val: values) {
+			col.putDouble(valid ? val : Double.NaN);
+		}
+		col.putByte(valid && ac.wind ? 1 : 0);
+	}
+
+	protected void putBands (DAAStepSnapshot.Bands bands) {
+		for (int i = 0; i < bands.size(); i++) {
+			ranges.putDouble(bands.ranges.get(i).low);
+			ranges.putDouble(bands.ranges.get(i).up);
+			regions.putByte(regionCode(bands.regions.get(i)));
+		}
+		nIntervals += bands.size();
+	}
+
+	protected void putResolution (DAAStepSnapshot.Resolution res) {
+		resolutions.putDouble(res.preferredResolution);
+		resolutions.putDouble(res.otherResolution);
+		resolutions.putByte(regionCode(res.preferredRegion));
+		resolutions.putByte(regionCode(res.otherRegion));
+		resolutions.putByte((res.preferred ? DAABinaryReader.FLAG_PREFERRED : 0) 
+			| (res.recoveryComputed ? DAABinaryReader.FLAG_RECOVERY : 0) 
+			| (res.recoverySaturated ? DAABinaryReader.FLAG_SATURATED : 0));
+		resolutions.putDouble(res.timeToRecovery);
+		resolutions.putInt(res.nFactor);
+		resolutions.putDouble(res.recoveryHorizontalDistance);
+		resolutions.putDouble(res.recoveryVerticalDistance);
+	}
+
+	/**
+	 * Adds a polygon, vertices are stored relative to the reference point (lat, lon in deg) so that floats retain sub-meter precision
+	 */
+	protected void putPolygon (List<Position> ply, Position po, double refLat, double refLon) {
+		polygons.putInt(nVertices);
+		for (Position pi: ply) {
+			LatLonAlt lla = DAABandsV2.getLatLonAlt(pi, po);
+			vertices.putFloat((float) (Units.to("deg", lla.lat()) - refLat));
+			vertices.putFloat((float) (Units.to("deg", lla.lon()) - refLon));
+			vertices.putFloat((float) Units.to("ft", lla.alt()));
+		}
+		nVertices += ply.size();
+		nPolygons++;
+	}
+
+	/**
+	 * Adds the results of the time step stored in snap
+	 */
+	public void write (DAAStepSnapshot snap) {
+		Position po = snap.ownshipPosition;
+		LatLonAlt ref = DAABandsV2.getLatLonAlt(po, po);
+		double refLat = Units.to("deg", ref.lat());
+		double refLon = Units.to("deg", ref.lon());
+
+		// step record
+		steps.putDouble(snap.time);
+		putAircraftState(steps, snap.ownship, true);
+		steps.putByte(regionCode(snap.trkRegion));
+		steps.putByte(regionCode(snap.gsRegion));
+		steps.putByte(regionCode(snap.vsRegion));
+		steps.putByte(regionCode(snap.altRegion));
+		steps.putDouble(snap.windDeg);
+		steps.putDouble(snap.windKnot);
+		steps.putDouble(refLat);
+		steps.putDouble(refLon);
+		steps.putInt(nTraffic);
+		steps.putInt(snap.nTraffic);
+		DAAStepSnapshot.Bands bands[] = { snap.trkBands, snap.gsBands, snap.vsBands, snap.altBands };
+		for (int i = 0; i < bands.length; i++) {
+			steps.putInt(nIntervals);
+			steps.putInt(bands[i].size());
+			putBands(bands[i]);
+		}
+		// the format has room for the results of the first N_MONITORS monitors
+		int nMonitors = snap.monitors.length / DAAMonitor.DIMENSIONS;
+		for (int i = 0; i < DAABinaryReader.N_MONITORS; i++) {
+			steps.putInt(snap.monitored && !DAAMonitorsV2.isSparse() && i < nMonitors ? intern(DAAMonitorsV2.getResult(snap.monitors, i)) : -1);
+		}
+
+		// traffic records
+		for (int ac = 1; ac <= snap.nTraffic; ac++) {
+			DAAStepSnapshot.Traffic t = snap.getTraffic(ac);
+			putAircraftState(traffic, t.state, metrics);
+			traffic.putInt(t.alertLevel);
+			traffic.putByte(regionCode(t.alertRegion));
+			traffic.putInt(intern(t.alerter));
+			traffic.putInt(t.alerterIndex);
+			double values[] = { t.horizontalSeparation, t.verticalSeparation, t.horizontalMissDistance, t.verticalMissDistance, 
+				t.horizontalClosureRate, t.verticalClosureRate, t.tcpa, t.tcoa, t.taumod };
+			for (double val: values) {
+				traffic.putDouble(metrics ? val : Double.NaN);
+			}
+			traffic.putInt(nPolygons);
+			traffic.putInt(t.contours.size());
+			for (List<Position> ply: t.contours) {
+				putPolygon(ply, po, refLat, refLon);
+			}
+			putPolygon(t.violationZone, po, refLat, refLon);
+			putPolygon(t.conflictZone, po, refLat, refLon);
+		}
+		nTraffic += snap.nTraffic;
+
+		// resolution records
+		putResolution(snap.trkResolution);
+		putResolution(snap.gsResolution);
+		putResolution(snap.vsResolution);
+		putResolution(snap.altResolution);
+		nSteps++;
+	}
+
+	/**
+	 * Utility function, adds delta to the int stored at the given position
+	 */
+	protected static void shift (ByteBuffer buf, int pos, int delta) {
+		buf.putInt(pos, buf.getInt(pos) + delta);
+	}
+
+	/**
+	 * Utility function, replaces the string index stored at the given position using the given map
+	 */
+	protected static void remap (ByteBuffer buf, int pos, int map[]) {
+		int index = buf.getInt(pos);
+		if (index >= 0) {
+			buf.putInt(pos, map[index]);
+		}
+	}
+
+	/**
+	 * Appends the results collected in other, used to stitch together the results of consecutive time segments.
+	 * Indexes stored in the appended records are rebased, so the result is identical to writing all steps with this writer.
+	 */
+	public void append (DAABinaryWriter other) {
+		// strings are added in the order of the other table, i.e., in the order they appear in the appended steps
+		int map[] = new int[other.strings.size()];
+		for (int i = 0; i < map.length; i++) {
+			map[i] = intern(other.strings.get(i));
+		}
+		int stepsStart = steps.size();
+		int trafficStart = traffic.size();
+		steps.put(other.steps);
+		traffic.put(other.traffic);
+		resolutions.put(other.resolutions);
+		ranges.put(other.ranges);
+		regions.put(other.regions);
+		int polygonsStart = polygons.size();
+		polygons.put(other.polygons);
+		vertices.put(other.vertices);
+
+		ByteBuffer buf = steps.buf;
+		for (int pos = stepsStart; pos < steps.size(); pos += DAABinaryReader.STEP_SIZE) {
+			remap(buf, pos + DAABinaryReader.STEP_OWNSHIP + DAABinaryReader.AC_ID, map);
+			shift(buf, pos + DAABinaryReader.STEP_FIRST_TRAFFIC, nTraffic);
+			for (int i = 0; i < DAABinaryReader.N_DIMENSIONS; i++) {
+				shift(buf, pos + DAABinaryReader.STEP_BANDS + 8 * i, nIntervals);
+			}
+			for (int i = 0; i < DAABinaryReader.N_MONITORS; i++) {
+				remap(buf, pos + DAABinaryReader.STEP_MONITORS + 4 * i, map);
+			}
+		}
+		buf = traffic.buf;
+		for (int pos = trafficStart; pos < traffic.size(); pos += DAABinaryReader.TRAFFIC_SIZE) {
+			remap(buf, pos + DAABinaryReader.AC_ID, map);
+			remap(buf, pos + DAABinaryReader.TRAFFIC_ALERTER, map);
+			shift(buf, pos + DAABinaryReader.TRAFFIC_FIRST_POLYGON, nPolygons);
+		}
+		buf = polygons.buf;
+		for (int pos = polygonsStart; pos < polygons.size(); pos += 4) {
+			shift(buf, pos, nVertices);
+		}
+
+		nSteps += other.nSteps;
+		nTraffic += other.nTraffic;
+		nIntervals += other.nIntervals;
+		nPolygons += other.nPolygons;
+		nVertices += other.nVertices;
+	}
+
+	/**
+	 * Releases the data collected so far, the string table is kept
+	 */
+	public void clear () {
+		steps.clear();
+		traffic.clear();
+		resolutions.clear();
+		ranges.clear();
+		regions.clear();
+		polygons.clear();
+		vertices.clear();
+		nSteps = nTraffic = nIntervals = nPolygons = nVertices = 0;
+	}
+
+	/**
+	 * Returns the number of time steps collected so far
+	 */
+	public int getSteps () {
+		return nSteps;
+	}
+
+	/**
+	 * Returns true if the same data has been written to this writer and to other
+	 */
+	public boolean sameContent (DAABinaryWriter other) {
+		return nSteps == other.nSteps && strings.equals(other.strings)
+			&& steps.sameContent(other.steps) && traffic.sameContent(other.traffic) && resolutions.sameContent(other.resolutions)
+			&& ranges.sameContent(other.ranges) && regions.sameContent(other.regions)
+			&& polygons.sameContent(other.polygons) && vertices.sameContent(other.vertices);
+	}
+
+	/**
+	 * Writes the binary file
+	 * @param info JSON object stored in the INFO section (scenario, configuration, units, stats, monitors)
+	 */
+	public void writeTo (String fname, String info) throws IOException {
+		// string table: number of strings, offsets, utf-8 bytes
+		byte utf[][] = new byte[strings.size()][];
+		for (int i = 0; i < utf.length; i++) {
+			utf[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+		}
+		Column table = new Column();
+		table.putInt(utf.length);
+		int offset = 0;
+		for (int i = 0; i < utf.length; i++) {
+			table.putInt(offset);
+			offset += utf[i].length;
+		}
+		table.putInt(offset);
+		for (int i = 0; i < utf.length; i++) {
+			table.put(utf[i]);
+		}
+		Column infoSection = new Column();
+		infoSection.put(info.getBytes(StandardCharsets.UTF_8));
+		// the offsets of the polygons are terminated by the number of vertices
+		Column polygonsSection = new Column();
+		polygonsSection.put(polygons);
+		polygonsSection.putInt(nVertices);
+
+		int ids[] = {
+			DAABinaryReader.SECTION_INFO, DAABinaryReader.SECTION_STRINGS, DAABinaryReader.SECTION_STEPS, DAABinaryReader.SECTION_TRAFFIC,
+			DAABinaryReader.SECTION_RESOLUTIONS, DAABinaryReader.SECTION_RANGES, DAABinaryReader.SECTION_REGIONS,
+			DAABinaryReader.SECTION_POLYGONS, DAABinaryReader.SECTION_VERTICES
+		};
+		Column sections[] = { infoSection, table, steps, traffic, resolutions, ranges, regions, polygonsSection, vertices };
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(DAAOutputSink.createOutputStream(fname), DAAOutputSink.COPY_BUFFER_SIZE));
+		try {
+			out.writeInt(DAABinaryReader.MAGIC);
+			out.writeInt(DAABinaryReader.VERSION);
+			out.writeInt(nSteps);
+			out.writeInt(sections.length);
+			long pos = DAABinaryReader.HEADER_SIZE + (long) sections.length * DAABinaryReader.DIRECTORY_ENTRY_SIZE;
+			for (int i = 0; i < sections.length; i++) {
+				out.writeInt(ids[i]);
+				out.writeLong(pos);
+				out.writeLong(sections[i].size());
+				pos += sections[i].size();
+			}
+			for (int i = 0; i < sections.length; i++) {
+				out.write(sections[i].buf.array(), 0, sections[i].size());
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Index of the chunk files. For each time step, the index stores the time and the position (byte offset and length) 
+ * of the line of the step in each chunk file. Index records have a fixed size, so a step can be fetched from any chunk 
+ * with a positioned read of the index followed by a positioned read of the chunk file.
+ *
+ * Index layout (version 1), all values are big-endian:
+ *   magic       int, "DAAI"
+ *   version     int
+ *   header size int, position of the first record
+ *   chunks      int, number of chunk files, followed by the name of each chunk file (DataOutput.writeUTF)
+ *   records     one record per time step: double time, and for each chunk file long offset, int length (line separator excluded)
+ * Chunk files are in the same folder of the index.
+ */
+public class DAAChunkIndex {
+	public static final int MAGIC = 0x44414149; // "DAAI"
+	public static final int VERSION = 1;
+
+	protected DataOutputStream out;
+	protected long offsets[]; // current size of each chunk file
+	protected int separatorLength;
+	protected boolean error = false;
+
+	/**
+	 * Creates the index file for the given chunk files
+	 */
+	public DAAChunkIndex (String fname, String chunks[]) throws IOException {
+		ByteArrayOutputStream names = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(names);
+		for (int i = 0; i < chunks.length; i++) {
+			header.writeUTF(new File(chunks[i]).getName());
+		}
+		out = new DataOutputStream(new BufferedOutputStream(DAAOutputSink.createOutputStream(fname), DAAOutputSink.COPY_BUFFER_SIZE));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(16 + names.size());
+		out.writeInt(chunks.length);
+		names.writeTo(out);
+		offsets = new long[chunks.length];
+		separatorLength = DAAOutputSink.byteLength(System.lineSeparator());
+	}
+
+	/**
+	 * Copies an index, renaming the chunk files whose name starts with the given prefix (used by DAAResultCache)
+	 */
+	public static void copy (String src, String dst, String oldPrefix, String newPrefix) throws IOException {
+		Reader reader = new Reader(src);
+		try {
+			String chunks[] = reader.getChunks();
+			for (int i = 0; i < chunks.length; i++) {
+				if (chunks[i].startsWith(oldPrefix)) { chunks[i] = newPrefix + chunks[i].substring(oldPrefix.length()); }
+			}
+			DAAChunkIndex index = new DAAChunkIndex(dst, chunks);
+			FileChannel channel = reader.index.getChannel();
+			long pos = reader.headerSize;
+			long len = channel.size() - pos;
+			index.out.flush();
+			while (len > 0) {
+				long n = channel.transferTo(pos, len, Channels.newChannel(index.out));
+				pos += n;
+				len -= n;
+			}
+			index.close();
+			if (index.error) { throw new IOException("File " + dst + " could not be written"); }
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Size of the index records, in bytes
+	 */
+	public static int recordSize (int nChunks) {
+		return 8 + 12 * nChunks;
+	}
+
+	/**
+	 * Adds the steps that are being written to the chunk files, one line per step in each chunk
+	 * @param times Time of each step
+	 * @param lines For each chunk file, the lines of the steps
+	 */
+	public void add (List<Double> times, List<List<String>> lines) {
+		try {
+			for (int step = 0; step < times.size(); step++) {
+				out.writeDouble(times.get(step));
+				for (int i = 0; i < offsets.length; i++) {
+					int len = DAAOutputSink.byteLength(lines.get(i).get(step));
+					out.writeLong(offsets[i]);
+					out.writeInt(len);
+					offsets[i] += len + separatorLength;
+				}
+			}
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	/**
+	 * Flushes the index and returns true if an error occurred, same as PrintWriter.checkError
+	 */
+	public boolean checkError () {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			error = true;
+		}
+		return error;
+	}
+
+	public void close () {
+		try {
+			out.close();
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	/**
+	 * Reader of the index, fetches the line of a step from a chunk file with positioned reads
+	 */
+	public static class Reader {
+		protected File folder;
+		protected RandomAccessFile index;
+		protected String chunks[];
+		protected int headerSize;
+		protected int recordSize;
+		protected int nSteps;
+
+		public Reader (String fname) throws IOException {
+			folder = new File(fname).getAbsoluteFile().getParentFile();
+			index = new RandomAccessFile(fname, "r");
+			if (index.length() < 16 || index.readInt() != MAGIC) {
+				index.close();
+				throw new IOException("File " + fname + " is not a chunk index");
+			}
+			int version = index.readInt();
+			if (version != VERSION) {
+				index.close();
+				throw new IOException("File " + fname + " has unsupported version " + version);
+			}
+			headerSize = index.readInt();
+			chunks = new String[index.readInt()];
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = index.readUTF();
+			}
+			recordSize = recordSize(chunks.length);
+			nSteps = (int) ((index.length() - headerSize) / recordSize);
+		}
+
+		public int getSteps () {
+			return nSteps;
+		}
+
+		public String[] getChunks () {
+			return chunks;
+		}
+
+		protected ByteBuffer read (FileChannel channel, long pos, int len) throws IOException {
+			ByteBuffer buf = ByteBuffer.allocate(len);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, pos + buf.position()) < 0) {
+					throw new IOException("Unexpected end of file");
+				}
+			}
+			buf.flip();
+			return buf;
+		}
+
+		public double getTime (int step) throws IOException {
+			return read(index.getChannel(), headerSize + (long) step * recordSize, 8).getDouble();
+		}
+
+		/**
+		 * Returns the index of the last step with time less or equal to the given time, -1 if time precedes the first step
+		 */
+		public int findStep (double time) throws IOException {
+			int lo = 0;
+			int hi = nSteps - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (getTime(mid) <= time) {
+					lo = mid + 1;
+				} else {
+					hi = mid - 1;
+				}
+			}
+			return hi;
+		}
+
+		/**
+		 * Returns the line of the given step in the given chunk file
+		 */
+		public String readLine (int step, int chunk) throws IOException {
+			ByteBuffer entry = read(index.getChannel(), headerSize + (long) step * recordSize + 8 + 12 * chunk, 12);
+			long offset = entry.getLong();
+			int len = entry.getInt();
+			RandomAccessFile file = new RandomAccessFile(new File(folder, chunks[chunk]), "r");
+			try {
+				return new String(read(file.getChannel(), offset, len).array(), Charset.defaultCharset());
+			} finally {
+				file.close();
+			}
+		}
+
+		public void close () throws IOException {
+			index.close();
+		}
+	}
+
+	/**
+	 * Prints the lines of the time step at the given time, for all chunk files or for the given chunk file
+	 */
+	public static void main (String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: DAAChunkIndex file.index time [chunk-file]");
+			System.exit(0);
+		}
+		try {
+			Reader reader = new Reader(args[0]);
+			int step = reader.findStep(Double.parseDouble(args[1]));
+			if (step < 0) {
+				System.err.println("** Error: Time " + args[1] + " precedes the first step");
+				System.exit(1);
+			}
+			System.out.println("Step " + step + " of " + reader.getSteps() + ", time " + reader.getTime(step));
+			String chunks[] = reader.getChunks();
+			for (int i = 0; i < chunks.length; i++) {
+				if (args.length < 3 || chunks[i].equals(args[2]) || chunks[i].endsWith(args[2])) {
+					System.out.println(chunks[i] + ": " + reader.readLine(step, i));
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.List;
+
+import gov.nasa.larcfm.Util.Position;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the bands computation (see --jfr). 
+ * The events mark the lifecycle of each time step (computation, serialization, writing), so GC pauses and 
+ * safepoints in a recording can be lined up with the time steps of the scenario.
+ * Events are emitted also when the recording is started from the command line of the JVM, e.g., 
+ * java -XX:StartFlightRecording=filename=rec.jfr -jar DAIDALUSv2.x.jar ...
+ * When no recording is active, events are not committed, and their cost is negligible.
+ * JFR is available in OpenJDK 11 or greater.
+ */
+public class DAAFlightRecorder {
+	public static final String CATEGORY = "DAA-Displays";
+
+	/**
+	 * Computation of the results of a time step, i.e., DAABandsV2.takeSnapshot
+	 */
+	@Name("daa.Step")
+	@Label("DAA Step")
+	@Description("Computation of bands, resolutions, metrics, contours, hazard zones and monitors of a time step")
+	@Category({ CATEGORY, "DAABandsV2" })
+	@StackTrace(false)
+	public static class StepEvent extends Event {
+		@Label("Scenario")
+		public String scenario;
+		@Label("Step Time")
+		@Description("Time of the step in the scenario, in seconds")
+		public double time;
+		@Label("Traffic")
+		@Description("Number of traffic aircraft")
+		public int traffic;
+		@Label("Track Bands")
+		public int trkBands;
+		@Label("Ground Speed Bands")
+		public int gsBands;
+		@Label("Vertical Speed Bands")
+		public int vsBands;
+		@Label("Altitude Bands")
+		public int altBands;
+		@Label("Contour Vertices")
+		@Description("Number of vertices of the contours of all traffic aircraft")
+		public int contourVertices;
+		@Label("Hazard Zone Vertices")
+		@Description("Number of vertices of the hazard zones of all traffic aircraft")
+		public int hazardZoneVertices;
+
+		/**
+		 * Sets the fields of the event from the results of the step
+		 */
+		public void set (String scenario, DAAStepSnapshot snap) {
+			this.scenario = scenario;
+			time = snap.time;
+			traffic = snap.nTraffic;
+			trkBands = snap.trkBands.size();
+			gsBands = snap.gsBands.size();
+			vsBands = snap.vsBands.size();
+			altBands = snap.altBands.size();
+			contourVertices = 0;
+			hazardZoneVertices = 0;
+			for (int ac = 1; ac <= snap.nTraffic; ac++) {
+				DAAStepSnapshot.Traffic t = snap.getTraffic(ac);
+				for (List<Position> polygon: t.contours) {
+					contourVertices += polygon.size();
+				}
+				hazardZoneVertices += t.violationZone.size() + t.conflictZone.size();
+			}
+		}
+	}
+
+	/**
+	 * Serialization of the results of a time step, i.e., DAABandsV2.serialize
+	 */
+	@Name("daa.Serialize")
+	@Label("DAA Serialize")
+	@Description("Serialization of the results of a time step")
+	@Category({ CATEGORY, "DAABandsV2" })
+	@StackTrace(false)
+	public static class SerializeEvent extends Event {
+		@Label("Step Time")
+		@Description("Time of the step in the scenario, in seconds")
+		public double time;
+		@Label("Bytes")
+		@Description("Size of the json records of the step (0 with --format bin)")
+		@DataAmount
+		public long bytes;
+	}
+
+	/**
+	 * Writing of results to file, i.e., the chunk files of a time step in streaming mode, and the output files at the end
+	 */
+	@Name("daa.Write")
+	@Label("DAA Write")
+	@Description("Writing of results to the output files")
+	@Category({ CATEGORY, "DAABandsV2" })
+	@StackTrace(false)
+	public static class WriteEvent extends Event {
+		@Label("File")
+		public String file;
+		@Label("Bytes Written")
+		@DataAmount
+		public long bytes;
+	}
+
+	/**
+	 * Processing of a scenario, i.e., DAABandsV2.walkFile
+	 */
+	@Name("daa.Run")
+	@Label("DAA Run")
+	@Description("Processing of a scenario")
+	@Category({ CATEGORY, "DAABandsV2" })
+	@StackTrace(false)
+	public static class RunEvent extends Event {
+		@Label("Scenario")
+		public String scenario;
+		@Label("Configuration")
+		public String config;
+		@Label("Ownship")
+		public String ownship;
+		@Label("Mode")
+		@Description("sequential, pipeline, parallel, workers (multiple ownships or configurations) or cached")
+		public String mode;
+		@Label("Output")
+		public String output;
+	}
+
+	/**
+	 * Starts a recording with the default JDK settings (GC, safepoints, etc.) and the events of this class. 
+	 * The recording is written to the given file when it is stopped (see stop).
+	 * @return the recording, null if the recording cannot be started
+	 */
+	public static Recording start (String fname) {
+		try {
+			Recording recording = new Recording(Configuration.getConfiguration("default"));
+			recording.enable(StepEvent.class);
+			recording.enable(SerializeEvent.class);
+			recording.enable(WriteEvent.class);
+			recording.enable(RunEvent.class);
+			recording.setName("DAABandsV2");
+			recording.setToDisk(true);
+			recording.setDestination(Paths.get(fname));
+			recording.start();
+			return recording;
+		} catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+			System.err.println("** Warning: Flight recording cannot be started (" + e + ")");
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the recording and writes it to file
+	 */
+	public static void stop (Recording recording) {
+		if (recording == null) { return; }
+		try {
+			recording.stop();
+			System.out.println("[DAABandsV2] Flight recording written to " + recording.getDestination());
+		} catch (IllegalStateException e) {
+			System.err.println("** Warning: Flight recording cannot be written (" + e + ")");
+		}
+		recording.close();
+	}
+}
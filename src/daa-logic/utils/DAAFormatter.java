@@ -0,0 +1,277 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import gov.nasa.larcfm.Util.f;
+
+import java.util.Random;
+
+/**
+ * Fixed-precision formatter for doubles, used in place of f.FmPrecision in the output paths.
+ * Digits are computed with integer arithmetic on the binary representation of the value and
+ * written directly into the destination buffer, no intermediate String is created.
+ * 
+ * The fast path is taken only when the result does not depend on how the value is rounded,
+ * i.e., when the value is not within half ulp of a rounding tie. In all other cases
+ * (ties, NaN, infinity, large magnitudes, precision outside 1..18) the formatter delegates to f.FmPrecision.
+ * In particular, values whose ulp times 10^precision is 1 or more are always delegated, because every rounding tie 
+ * is within half ulp of the value: at precision 16 (e.g., lat/lon of the polygons) this is the case for all |v| >= 0.5, 
+ * so high precisions are not accelerated.
+ * The conventions of f.FmPrecision (decimal separator, sign of values rounded to zero) are detected when the
+ * class is loaded, and the fast path is disabled if f.FmPrecision does not behave as expected on a set of probes.
+ * 
+ * Running this class (java DAAFormatter [n]) performs a randomized equivalence check against f.FmPrecision.
+ */
+public class DAAFormatter {
+	protected static final int MAX_PRECISION = 18;
+	protected static final long[] pow10 = new long[MAX_PRECISION + 1];
+	static {
+		pow10[0] = 1;
+		for (int i = 1; i < pow10.length; i++) {
+			pow10[i] = pow10[i - 1] * 10;
+		}
+	}
+
+	// conventions used by f.FmPrecision, detected at class load
+	protected static char separator = '.';
+	protected static boolean minusOnRoundedZero = false; // whether small negative values are printed as -0.00
+	protected static boolean minusOnNegativeZero = false; // whether -0.0 is printed as -0.00
+	protected static boolean enabled = false;
+
+	static {
+		enabled = calibrate();
+	}
+
+	/**
+	 * Detects the conventions of f.FmPrecision and checks the fast path against a set of probes
+	 */
+	protected static boolean calibrate () {
+		try {
+			String probe = f.FmPrecision(1.5, 2);
+			if (probe.length() != 4 || !probe.startsWith("1") || !probe.endsWith("50")
+					|| (probe.charAt(1) != '.' && probe.charAt(1) != ',')) {
+				return false;
+			}
+			separator = probe.charAt(1);
+			minusOnRoundedZero = f.FmPrecision(-0.001, 2).startsWith("-");
+			minusOnNegativeZero = f.FmPrecision(-0.0, 2).startsWith("-");
+			enabled = true;
+			double[] probes = {
+				0, -0.0, 1, -1, 0.5, 1.5, -1.5, 0.001, -0.001, 0.004, -0.004, 0.006, -0.006, 0.01, 0.1, 0.125, 0.375,
+				1.005, 2.675, 9.995, 99.995, 1234.5, -1234.5, 12345678.9, 37.1, -122.4194155, 3.14159265358979,
+				1e-5, -1e-5, 1e-20, 1e10, 6076.115485564304, 0.3048, 1852.0 / 3600.0, 1e15 - 1, 1e16 + 2
+			};
+			for (int p = 1; p <= MAX_PRECISION; p++) {
+				for (double v: probes) {
+					if (!format(v, p).equals(f.FmPrecision(v, p))) {
+						enabled = false;
+						return false;
+					}
+				}
+			}
+			return true;
+		} catch (Exception e) {
+			enabled = false;
+			return false;
+		}
+	}
+
+	/**
+	 * Whether the fast path is enabled
+	 */
+	public static boolean isEnabled () {
+		return enabled;
+	}
+
+	/**
+	 * Writes val with the given number of decimal digits into buf, starting at position pos.
+	 * The buffer must have room for at least 40 chars.
+	 * Returns the position after the last char written, or -1 if the value cannot be formatted with the fast path.
+	 */
+	protected static int formatFast (double val, int precision, char[] buf, int pos) {
+		if (!enabled || precision < 1 || precision > MAX_PRECISION || Double.isNaN(val) || Double.isInfinite(val)) {
+			return -1;
+		}
+		long bits = Double.doubleToRawLongBits(val);
+		boolean negative = bits < 0;
+		int exp = (int) ((bits >>> 52) & 0x7ff);
+		long mantissa = bits & 0xfffffffffffffL;
+		if (exp == 0) {
+			exp = 1; // subnormal
+		} else {
+			mantissa |= 1L << 52;
+		}
+		int shift = 1075 - exp; // |val| = mantissa * 2^-shift
+		long scale = pow10[precision];
+		long n; // |val| * 10^precision, rounded to the nearest integer
+		if (mantissa == 0) {
+			n = 0;
+		} else if (shift <= 0) {
+			// |val| >= 2^52, ulp >= 1
+			return -1;
+		} else if (shift < 64 && scale >= (1L << shift)) {
+			// 10^precision * ulp >= 1, a rounding tie is always within half ulp
+			return -1;
+		} else if (shift >= 128) {
+			// mantissa * scale < 2^113, the value is far below half unit
+			n = 0;
+		} else {
+			// 128-bit product mantissa * 10^precision
+			long hi = Math.multiplyHigh(mantissa, scale);
+			long lo = mantissa * scale;
+			// integer part and distance of the fractional part from 1/2 (d = frac - 2^(shift-1), in units of 2^-shift)
+			long dh, dl;
+			if (shift < 64) {
+				if ((hi >>> shift) != 0) { return -1; }
+				n = (hi << (64 - shift)) | (lo >>> shift);
+				long frac = lo & ((1L << shift) - 1);
+				dh = 0;
+				dl = frac - (1L << (shift - 1));
+				if (dl < 0) { dh = -1; }
+			} else {
+				n = hi >>> (shift - 64);
+				long fh = (shift == 64) ? 0 : hi & ((1L << (shift - 64)) - 1);
+				long hh = (shift == 64) ? 0 : 1L << (shift - 65);
+				long hl = (shift == 64) ? Long.MIN_VALUE : 0;
+				dl = lo - hl;
+				dh = fh - hh - (Long.compareUnsigned(lo, hl) < 0 ? 1 : 0);
+			}
+			if (n < 0) { return -1; }
+			// the result is independent of the rounding mode only if no rounding tie is within half ulp of the value
+			// (half ulp is 10^precision / 2 in units of 2^-shift)
+			long halfUlp = scale >> 1;
+			boolean roundUp;
+			if (dh == 0 && dl >= 0) {
+				if (dl <= halfUlp) { return -1; }
+				roundUp = true;
+			} else if (dh == -1 && dl < 0) {
+				if (dl >= -halfUlp) { return -1; }
+				roundUp = false;
+			} else {
+				roundUp = dh >= 0;
+			}
+			if (roundUp) {
+				if (n == Long.MAX_VALUE) { return -1; }
+				n++;
+			}
+		}
+		if (negative && (n == 0 ? (mantissa == 0 ? minusOnNegativeZero : minusOnRoundedZero) : true)) {
+			buf[pos++] = '-';
+		}
+		long intPart = n / scale;
+		long fracPart = n - intPart * scale;
+		// integer digits
+		int start = pos;
+		do {
+			buf[pos++] = (char) ('0' + (intPart % 10));
+			intPart /= 10;
+		} while (intPart > 0);
+		for (int i = start, j = pos - 1; i < j; i++, j--) {
+			char c = buf[i]; buf[i] = buf[j]; buf[j] = c;
+		}
+		buf[pos++] = separator;
+		// decimal digits, zero-padded
+		for (int i = pos + precision - 1; i >= pos; i--) {
+			buf[i] = (char) ('0' + (fracPart % 10));
+			fracPart /= 10;
+		}
+		return pos + precision;
+	}
+
+	/**
+	 * Returns val formatted with the given number of decimal digits, same as f.FmPrecision(val, precision)
+	 */
+	public static String format (double val, int precision) {
+		char[] buf = new char[40];
+		int len = formatFast(val, precision, buf, 0);
+		return (len < 0) ? f.FmPrecision(val, precision) : new String(buf, 0, len);
+	}
+
+	/**
+	 * Appends val formatted with the given number of decimal digits to out, same as out.append(f.FmPrecision(val, precision))
+	 */
+	public static StringBuilder appendTo (StringBuilder out, double val, int precision) {
+		char[] buf = scratch.get();
+		int len = formatFast(val, precision, buf, 0);
+		if (len < 0) {
+			return out.append(f.FmPrecision(val, precision));
+		}
+		return out.append(buf, 0, len);
+	}
+	protected static final ThreadLocal<char[]> scratch = ThreadLocal.withInitial(() -> new char[40]);
+
+	/**
+	 * Randomized equivalence check against f.FmPrecision
+	 * Usage: java DAAFormatter [number of samples] [seed]
+	 */
+	public static void main (String[] args) {
+		long samples = (args.length > 0) ? Long.parseLong(args[0]) : 10000000;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+		System.out.println("DAAFormatter fast path " + (enabled ? "enabled" : "disabled") + " (separator '" + separator
+			+ "', minus on rounded zero " + minusOnRoundedZero + ", minus on negative zero " + minusOnNegativeZero + ")");
+		System.out.println("Checking " + samples + " samples, seed " + seed);
+		Random rnd = new Random(seed);
+		int[] precisions = { 2, 16, 2, 16, 1, 3, 4, 6, 8, 10, 12, 14, 17, 18 };
+		long mismatches = 0;
+		long fast = 0;
+		char[] buf = new char[40];
+		for (long i = 0; i < samples; i++) {
+			int p = precisions[(int) (i % precisions.length)];
+			double v;
+			switch ((int) ((i / precisions.length) % 6)) {
+				case 0: { v = Double.longBitsToDouble(rnd.nextLong()); break; } // any double
+				case 1: { v = (rnd.nextDouble() - 0.5) * Math.pow(10, rnd.nextInt(12) - 4); break; } // typical magnitudes
+				case 2: { v = (rnd.nextInt(2000001) - 1000000) / (double) pow10[Math.min(p, 6)] + rnd.nextInt(3) - 1; break; } // short decimals
+				case 3: { v = (rnd.nextInt(2000001) - 1000000 + 0.5) / (double) pow10[Math.min(p, 15)]; break; } // near ties
+				case 4: { v = Math.nextAfter((rnd.nextInt(200001) - 100000 + 0.5) / pow10[p], rnd.nextBoolean() ? 1 : -1); break; } // next to ties
+				default: { v = (rnd.nextDouble() - 0.5) * 360; break; } // angles, lat/lon
+			}
+			if (formatFast(v, p, buf, 0) >= 0) { fast++; }
+			String expected = f.FmPrecision(v, p);
+			String actual = format(v, p);
+			if (!expected.equals(actual)) {
+				if (mismatches < 20) {
+					System.err.println("** Error: mismatch for " + v + " (precision " + p + "): expected " + expected + ", found " + actual);
+				}
+				mismatches++;
+			}
+		}
+		System.out.println(mismatches + " mismatches, " + fast + " of " + samples + " samples formatted with the fast path");
+		if (mismatches > 0) { System.exit(1); }
+	}
+}
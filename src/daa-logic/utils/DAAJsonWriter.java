@@ -0,0 +1,134 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.PrintWriter;
+
+/**
+ * Append-only JSON writer, used to build the records printed in the output files.
+ * The writer is backed by a reusable buffer: reset() discards the content but keeps the allocated memory,
+ * so the same writer can be used for all the records of all time steps without generating garbage.
+ */
+public class DAAJsonWriter {
+	protected StringBuilder buffer;
+
+	/**
+	 * Constructors
+	 */
+	public DAAJsonWriter () {
+		this(1024);
+	}
+	public DAAJsonWriter (int capacity) {
+		buffer = new StringBuilder(capacity);
+	}
+
+	/**
+	 * discards the content of the writer, the buffer is kept for the next record
+	 */
+	public DAAJsonWriter reset () {
+		buffer.setLength(0);
+		return this;
+	}
+
+	/**
+	 * append functions
+	 */
+	public DAAJsonWriter append (String str) {
+		buffer.append(str);
+		return this;
+	}
+	public DAAJsonWriter append (char c) {
+		buffer.append(c);
+		return this;
+	}
+	public DAAJsonWriter append (int val) {
+		buffer.append(val);
+		return this;
+	}
+	public DAAJsonWriter append (boolean val) {
+		buffer.append(val);
+		return this;
+	}
+	public DAAJsonWriter append (Object obj) {
+		buffer.append(obj);
+		return this;
+	}
+
+	/**
+	 * appends val with the given number of decimal digits, same as append(f.FmPrecision(val, precision))
+	 */
+	public DAAJsonWriter appendFixed (double val, int precision) {
+		DAAFormatter.appendTo(buffer, val, precision);
+		return this;
+	}
+
+	/**
+	 * appends "label": 
+	 */
+	public DAAJsonWriter label (String label) {
+		buffer.append('"').append(label).append("\": ");
+		return this;
+	}
+
+	/**
+	 * appends "str"
+	 */
+	public DAAJsonWriter quote (String str) {
+		buffer.append('"').append(str).append('"');
+		return this;
+	}
+
+	/**
+	 * length of the content, in chars
+	 */
+	public int length () {
+		return buffer.length();
+	}
+
+	/**
+	 * prints the content of the writer on 'out'
+	 */
+	public void writeTo (PrintWriter out) {
+		out.append(buffer);
+	}
+
+	@Override
+	public String toString () {
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,76 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+/**
+ * Property monitor of the results computed by DAIDALUS at each time step (see DAAMonitorsV2).
+ * A monitor computes a verdict (GREEN, YELLOW, RED) for each dimension of the bands from the snapshot of the time step.
+ * Monitors must not modify the snapshot and must not keep state between time steps, so that independent monitors 
+ * can be evaluated concurrently, and on a different thread than the one that computes the bands.
+ * New monitors are added with DAAMonitorsV2.register, or with the --monitor option of DAABandsV2.
+ */
+public interface DAAMonitor {
+	// verdicts, in order of severity
+	public static final byte GREY = -1; // not computed
+	public static final byte GREEN = 0;
+	public static final byte YELLOW = 1;
+	public static final byte RED = 2;
+
+	// dimensions, i.e., index of the verdict of each dimension
+	public static final int HEADING = 0;
+	public static final int HORIZONTAL_SPEED = 1;
+	public static final int VERTICAL_SPEED = 2;
+	public static final int ALTITUDE = 3;
+	public static final int DIMENSIONS = 4;
+
+	/**
+	 * Returns the name of the monitor, e.g., "M1: Finite resolution ⇒ Region is NONE or RECOVERY"
+	 */
+	public String getLabel ();
+
+	/**
+	 * Returns the description of the verdicts, as a json object, e.g., { "green": "...", "yellow": "...", "red": "..." }
+	 */
+	public String getLegend ();
+
+	/**
+	 * Computes the verdict of each dimension for the time step stored in snap
+	 * @param verdicts Verdicts of the time step, the verdict of dimension d is stored in verdicts[offset + d]
+	 */
+	public void check (DAAStepSnapshot snap, byte verdicts[], int offset);
+}
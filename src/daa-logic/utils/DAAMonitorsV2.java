@@ -37,16 +37,43 @@
    TERMINATION OF THIS AGREEMENT.
  **/
 
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
 import gov.nasa.larcfm.ACCoRD.BandsRegion;
-import gov.nasa.larcfm.ACCoRD.Daidalus;
 
+/**
+ * Monitors of the results computed by DAIDALUS. 
+ * The monitors do not query the Daidalus object: they read the results of each time step from the snapshot 
+ * filled by DAABandsV2.takeSnapshot, i.e., the same values printed in the output file, so the same DAIDALUS 
+ * queries are not repeated for the monitors.
+ * The monitors are kept in a registry (see DAAMonitor and register), the built-in monitors are M1..M4.
+ * Verdicts are stored as byte codes in the snapshot, and converted to strings only when the results are printed (see appendResult).
+ * The color transitions of each monitor and dimension are also recorded, so the results can be printed in sparse form, 
+ * i.e., as the intervals where a monitor is not green, with a summary of counts and durations (see setSparse and printSparse).
+ */
 public class DAAMonitorsV2 {
 
-	// NB: You need to update the following items when adding new monitors: N_MONITORS, monitorColor, getLegend and getLabel
-	protected static final int N_MONITORS = 4;
-	public static final int GREEN = 0;
-	public static final int YELLOW = 1;
-	public static final int RED = 2;
+	public static final int GREEN = DAAMonitor.GREEN;
+	public static final int YELLOW = DAAMonitor.YELLOW;
+	public static final int RED = DAAMonitor.RED;
+
+	// names of the dimensions, in the order of the verdicts
+	protected static final String DIMENSION_NAMES[] = { "Heading", "Horizontal Speed", "Vertical Speed", "Altitude" };
+	// results of a monitor at a time step, see getResult
+	protected static final String results[] = new String[1 << (2 * DAAMonitor.DIMENSIONS)];
+
+	// registry of the monitors, new monitors must be registered before the monitors are created
+	protected static final List<DAAMonitor> registry = new ArrayList<DAAMonitor>();
+	static {
+		registry.add(new M1());
+		registry.add(new M2());
+		registry.add(new M3());
+		registry.add(new M4());
+	}
 
 	protected static int bandsRegionToInt (BandsRegion b) {
 		if (b == BandsRegion.NONE) {
@@ -67,108 +94,186 @@ public class DAAMonitorsV2 {
 		return -1;
 	}
 
-	protected int monitorColor[];
-
-	// preferred resolutions
-	protected double resolutionTrk;
-	protected BandsRegion regionTrk;
-	protected double resolutionGs;
-	protected BandsRegion regionGs;
-	protected double resolutionVs;
-	protected BandsRegion regionVs;
-	protected double resolutionAlt;
-	protected BandsRegion regionAlt;
-
-	// other resolutions
-	protected double resolutionTrk_other;
-	protected BandsRegion regionTrk_other;
-	protected double resolutionGs_other;
-	protected BandsRegion regionGs_other;
-	protected double resolutionVs_other;
-	protected BandsRegion regionVs_other;
-	protected double resolutionAlt_other;
-	protected BandsRegion regionAlt_other;
-
-	// current regions
-	protected BandsRegion currentRegionTrk;
-	protected BandsRegion currentRegionGs;
-	protected BandsRegion currentRegionVs;
-	protected BandsRegion currentRegionAlt;
+	protected DAAMonitor monitors[]; // monitors evaluated by this object, i.e., the monitors registered when the object is created
+	protected int monitorColor[]; // most severe verdict of each monitor over all the time steps checked so far
+	protected static volatile boolean parallel = false; // when true, monitors are evaluated concurrently (see setParallel)
+	protected static volatile boolean sparse = false; // when true, the results are printed in sparse form (see setSparse)
+
+	// color transitions, a track is a dimension of a monitor, the color of a monitor (max over the dimensions) is the last track of the monitor
+	protected static final int TRACKS = DAAMonitor.DIMENSIONS + 1;
+	protected byte trackColor[]; // current color of each track
+	protected int nTransitions = 0;
+	protected double transitionTime[] = new double[64];
+	protected int transitionCode[] = new int[64]; // track * 4 + (color - GREY)
+	protected long stepCount[]; // number of time steps of each monitor with each color, index monitor * 4 + (color - GREY)
+	protected double firstTime = Double.NaN; // time of the first and last step checked
+	protected double lastTime = Double.NaN;
 
 	protected DAAMonitorsV2 () {
-		monitorColor = new int[]{ -1, -1, -1, -1 };
-		
-		resolutionTrk = Double.NaN;
-		regionTrk = BandsRegion.UNKNOWN;
-		resolutionGs = Double.NaN;
-		regionGs = BandsRegion.UNKNOWN;
-		resolutionVs = Double.NaN;
-		regionVs = BandsRegion.UNKNOWN;
-		resolutionAlt = Double.NaN;
-		regionAlt = BandsRegion.UNKNOWN;
-
-		resolutionTrk_other = Double.NaN;
-		regionTrk_other = BandsRegion.UNKNOWN;
-		resolutionGs_other = Double.NaN;
-		regionGs_other = BandsRegion.UNKNOWN;
-		resolutionVs_other = Double.NaN;
-		regionVs_other = BandsRegion.UNKNOWN;
-		resolutionAlt_other = Double.NaN;
-		regionAlt_other = BandsRegion.UNKNOWN;
-
-		currentRegionTrk = BandsRegion.UNKNOWN;
-		currentRegionGs = BandsRegion.UNKNOWN;
-		currentRegionVs = BandsRegion.UNKNOWN;
-		currentRegionAlt = BandsRegion.UNKNOWN;
+		synchronized (registry) {
+			monitors = registry.toArray(new DAAMonitor[registry.size()]);
+		}
+		monitorColor = new int[monitors.length];
+		for (int i = 0; i < monitorColor.length; i++) {
+			monitorColor[i] = DAAMonitor.GREY;
+		}
+		trackColor = new byte[monitors.length * TRACKS];
+		Arrays.fill(trackColor, DAAMonitor.GREY);
+		stepCount = new long[monitors.length * 4];
+	}
+
+	/**
+	 * Adds a monitor to the registry, the monitor is evaluated by the monitors created afterwards.
+	 * A monitor of a class that is already registered is not added again (e.g., the options of the service mode 
+	 * are parsed for each request), so that the monitor ids do not change. Returns false if the monitor was not added.
+	 */
+	public static boolean register (DAAMonitor monitor) {
+		synchronized (registry) {
+			for (DAAMonitor m: registry) {
+				if (m.getClass() == monitor.getClass()) { return false; }
+			}
+			registry.add(monitor);
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the registered monitors
+	 */
+	protected static DAAMonitor[] getMonitors () {
+		synchronized (registry) {
+			return registry.toArray(new DAAMonitor[registry.size()]);
+		}
 	}
 
 	static int getSize() {
-		return N_MONITORS;
+		synchronized (registry) {
+			return registry.size();
+		}
 	}
 
-	void check (Daidalus daa) {
-		computeResolutions(daa);
-		computeCurrentRegions(daa);
-	} 
-
-	protected void computeResolutions (Daidalus daa) {
-		boolean preferredTrk = daa.preferredHorizontalDirectionRightOrLeft();
-		resolutionTrk = daa.horizontalDirectionResolution(preferredTrk);
-		regionTrk = daa.regionOfHorizontalDirection(resolutionTrk);
-		resolutionTrk_other = daa.horizontalDirectionResolution(!preferredTrk);
-		regionTrk_other = daa.regionOfHorizontalDirection(resolutionTrk_other);
-
-		boolean preferredGs = daa.preferredHorizontalSpeedUpOrDown();
-		resolutionGs = daa.horizontalSpeedResolution(preferredGs);
-		regionGs = daa.regionOfHorizontalSpeed(resolutionGs);
-		resolutionGs_other = daa.horizontalSpeedResolution(!preferredGs);
-		regionGs_other = daa.regionOfHorizontalSpeed(resolutionGs_other);
-
-		boolean preferredVs = daa.preferredVerticalSpeedUpOrDown();
-		resolutionVs = daa.verticalSpeedResolution(preferredVs);
-		regionVs = daa.regionOfVerticalSpeed(resolutionVs);
-		resolutionVs_other = daa.verticalSpeedResolution(!preferredVs);
-		regionVs_other = daa.regionOfVerticalSpeed(resolutionVs_other);
-
-		boolean preferredAlt = daa.preferredAltitudeUpOrDown();
-		resolutionAlt = daa.altitudeResolution(preferredAlt);
-		regionAlt = daa.regionOfAltitude(resolutionAlt);
-		resolutionAlt_other = daa.altitudeResolution(!preferredAlt);
-		regionAlt_other = daa.regionOfAltitude(resolutionAlt_other);
+	/**
+	 * Evaluates the monitors concurrently, on the common fork-join pool. 
+	 * This pays off only when the monitors are expensive (e.g., custom monitors that analyze the polygons), 
+	 * the built-in monitors take less than a microsecond per time step.
+	 */
+	static void setParallel (boolean parallel) {
+		DAAMonitorsV2.parallel = parallel;
 	}
 
-	protected void computeCurrentRegions (Daidalus daa) {
-		double heading = daa.getOwnshipState().horizontalDirection();
-		currentRegionTrk = daa.regionOfHorizontalDirection(heading);
+	/**
+	 * Prints the results of the monitors in sparse form: only the intervals where a monitor is not green, and a summary 
+	 * for each monitor, instead of one record for each monitor at each time step (see printSparse)
+	 */
+	static void setSparse (boolean sparse) {
+		DAAMonitorsV2.sparse = sparse;
+	}
 
-		double hspeed = daa.getOwnshipState().horizontalSpeed();
-		currentRegionGs = daa.regionOfHorizontalSpeed(hspeed);
+	static boolean isSparse () {
+		return sparse;
+	}
 
-		double vspeed = daa.getOwnshipState().verticalSpeed();
-		currentRegionVs = daa.regionOfVerticalSpeed(vspeed);
+	/**
+	 * Computes the verdicts of the monitors for the time step stored in snap, the verdicts are stored in snap.monitors.
+	 * The verdicts are also accumulated in the colors of the monitors, so time steps must be checked in order.
+	 */
+	void check (DAAStepSnapshot snap) {
+		int n = monitors.length;
+		if (snap.monitors.length != n * DAAMonitor.DIMENSIONS) {
+			snap.monitors = new byte[n * DAAMonitor.DIMENSIONS];
+		}
+		byte verdicts[] = snap.monitors;
+		if (parallel && n > 1) {
+			IntStream.range(0, n).parallel().forEach(i -> monitors[i].check(snap, verdicts, i * DAAMonitor.DIMENSIONS));
+		} else {
+			for (int i = 0; i < n; i++) {
+				monitors[i].check(snap, verdicts, i * DAAMonitor.DIMENSIONS);
+			}
+		}
+		for (int k = 0; k < verdicts.length; k++) {
+			// invalid verdicts of custom monitors are reported as GREY
+			if (verdicts[k] < DAAMonitor.GREY || verdicts[k] > DAAMonitor.RED) { verdicts[k] = DAAMonitor.GREY; }
+		}
+		for (int i = 0; i < n; i++) {
+			int color = getColor(verdicts, i);
+			if (monitorColor[i] < color) { monitorColor[i] = color; }
+		}
+		record(snap.time, verdicts);
+		snap.monitored = true;
+	}
+
+	/**
+	 * Records the color transitions and the color counts of the time step
+	 */
+	protected void record (double time, byte verdicts[]) {
+		if (Double.isNaN(firstTime)) { firstTime = time; }
+		lastTime = time;
+		for (int i = 0; i < monitors.length; i++) {
+			int color = getColor(verdicts, i);
+			stepCount[i * 4 + color - DAAMonitor.GREY]++;
+			for (int d = 0; d < TRACKS; d++) {
+				addTransition(time, i * TRACKS + d, d < DAAMonitor.DIMENSIONS ? verdicts[i * DAAMonitor.DIMENSIONS + d] : color);
+			}
+		}
+	}
+
+	/**
+	 * Adds a transition, if the color of the track changes
+	 */
+	protected void addTransition (double time, int track, int color) {
+		if (trackColor[track] == color) { return; }
+		trackColor[track] = (byte) color;
+		if (nTransitions == transitionTime.length) {
+			transitionTime = Arrays.copyOf(transitionTime, nTransitions * 2);
+			transitionCode = Arrays.copyOf(transitionCode, nTransitions * 2);
+		}
+		transitionTime[nTransitions] = time;
+		transitionCode[nTransitions] = track * 4 + color - DAAMonitor.GREY;
+		nTransitions++;
+	}
+
+	/**
+	 * Returns the most severe verdict of monitor i, i.e., the color of the monitor at the time step
+	 */
+	protected static int getColor (byte verdicts[], int i) {
+		int offset = i * DAAMonitor.DIMENSIONS;
+		int color = DAAMonitor.GREY;
+		for (int d = 0; d < DAAMonitor.DIMENSIONS; d++) {
+			color = Math.max(color, verdicts[offset + d]);
+		}
+		return color;
+	}
+
+	/**
+	 * Appends the result of monitor i at the time step to json, in the format of the output file, e.g., 
+	 * "color": "green", "details": { "Heading": "green", "Horizontal Speed": "green", "Vertical Speed": "green", "Altitude": "green" }
+	 */
+	static void appendResult (DAAJsonWriter json, byte verdicts[], int i) {
+		json.append(getResult(verdicts, i));
+	}
 
-		double alt = daa.getOwnshipState().altitude();
-		currentRegionAlt = daa.regionOfAltitude(alt);
+	/**
+	 * Returns the result of monitor i at the time step, see appendResult.
+	 * The result depends only on the verdicts of the dimensions, so the results are built once and cached, 
+	 * indexed by the verdicts (2 bits per verdict)
+	 */
+	static String getResult (byte verdicts[], int i) {
+		int offset = i * DAAMonitor.DIMENSIONS;
+		int key = 0;
+		for (int d = 0; d < DAAMonitor.DIMENSIONS; d++) {
+			key = (key << 2) | (verdicts[offset + d] - DAAMonitor.GREY);
+		}
+		String result = results[key];
+		if (result == null) {
+			StringBuilder str = new StringBuilder();
+			str.append("\"color\": \"").append(color2string(getColor(verdicts, i))).append("\", \"details\": {");
+			for (int d = 0; d < DAAMonitor.DIMENSIONS; d++) {
+				str.append(d > 0 ? ", \"" : " \"").append(DIMENSION_NAMES[d]).append("\": \"").append(color2string(verdicts[offset + d])).append('"');
+			}
+			result = str.append(" }").toString();
+			results[key] = result; // strings are immutable, a race only builds the same string twice
+		}
+		return result;
 	}
 
 	protected static String color2string (int color) {
@@ -180,9 +285,83 @@ public class DAAMonitorsV2 {
 		}
 	}
 
+	/**
+	 * Merges the colors of the given monitors, used when the scenario is processed in time segments
+	 */
+	void merge (DAAMonitorsV2 monitors) {
+		for (int i = 0; i < monitorColor.length; i++) {
+			if (monitorColor[i] < monitors.monitorColor[i]) { monitorColor[i] = monitors.monitorColor[i]; }
+		}
+		// the given monitors follow in time, transitions that do not change the color at the boundary are dropped
+		for (int k = 0; k < monitors.nTransitions; k++) {
+			int code = monitors.transitionCode[k];
+			addTransition(monitors.transitionTime[k], code / 4, code % 4 + DAAMonitor.GREY);
+		}
+		for (int k = 0; k < stepCount.length; k++) {
+			stepCount[k] += monitors.stepCount[k];
+		}
+		if (Double.isNaN(firstTime)) { firstTime = monitors.firstTime; }
+		if (!Double.isNaN(monitors.lastTime)) { lastTime = monitors.lastTime; }
+	}
+
+	/**
+	 * Prints the results of monitor i in sparse form, i.e., a summary of the time steps of each color and the duration 
+	 * of each color, and the intervals where a dimension of the monitor is not green, in order of start time. 
+	 * An interval ends at the first time step with a different color, or at the last time step.
+	 */
+	void printSparse (PrintWriter out, int i) {
+		double start[] = new double[TRACKS];
+		Arrays.fill(start, firstTime);
+		int color[] = new int[TRACKS];
+		Arrays.fill(color, DAAMonitor.GREY);
+		double duration[] = new double[4]; // duration of each color of the monitor
+		List<String> intervals = new ArrayList<String>();
+		List<Double> startTimes = new ArrayList<Double>();
+		for (int k = 0; k <= nTransitions; k++) {
+			// the last iteration closes the open intervals
+			boolean end = k == nTransitions;
+			int track = end ? -1 : transitionCode[k] / 4 - i * TRACKS;
+			if (!end && (track < 0 || track >= TRACKS)) { continue; }
+			for (int d = 0; d < TRACKS; d++) {
+				if (end || d == track) {
+					double time = end ? lastTime : transitionTime[k];
+					if (d == DAAMonitor.DIMENSIONS) {
+						duration[color[d] - DAAMonitor.GREY] += time - start[d];
+					} else if (color[d] > DAAMonitor.GREEN) {
+						startTimes.add(start[d]);
+						intervals.add("{ \"start\": " + start[d] + ", \"end\": " + time + ", \"monitor\": " + (i + 1)
+							+ ", \"dimension\": \"" + DIMENSION_NAMES[d] + "\", \"color\": \"" + color2string(color[d]) + "\" }");
+					}
+					if (!end) {
+						start[d] = time;
+						color[d] = transitionCode[k] % 4 + DAAMonitor.GREY;
+					}
+				}
+			}
+		}
+		// intervals are closed in order of end time, they are printed in order of start time
+		Integer order[] = new Integer[intervals.size()];
+		for (int k = 0; k < order.length; k++) { order[k] = k; }
+		Arrays.sort(order, (a, b) -> Double.compare(startTimes.get(a), startTimes.get(b)));
+		out.print("\"summary\": { \"steps\": {");
+		for (int c = DAAMonitor.GREEN; c <= DAAMonitor.RED; c++) {
+			out.print((c > DAAMonitor.GREEN ? ", \"" : " \"") + color2string(c) + "\": " + stepCount[i * 4 + c - DAAMonitor.GREY]);
+		}
+		out.print(" }, \"duration\": {");
+		for (int c = DAAMonitor.GREEN; c <= DAAMonitor.RED; c++) {
+			out.print((c > DAAMonitor.GREEN ? ", \"" : " \"") + color2string(c) + "\": " + duration[c - DAAMonitor.GREY]);
+		}
+		out.println(" }, \"intervals\": " + intervals.size() + " },");
+		out.println("\"intervals\": [");
+		for (int k = 0; k < order.length; k++) {
+			out.println(intervals.get(order[k]) + (k < order.length - 1 ? "," : ""));
+		}
+		out.println("]");
+	}
+
 	String getColor (int monitorID) { // monitor ID starts from 1
 		int index = monitorID - 1;
-		if (index < N_MONITORS) {
+		if (index >= 0 && index < monitorColor.length) {
 			return color2string(monitorColor[index]);
 		}
 		return color2string(-1);
@@ -193,114 +372,81 @@ public class DAAMonitorsV2 {
 	 * - Resolution is finite and region is not NONE nor RECOVERY (yellow monitor).
 	 * - Resolution is finite and region is UNKNOWN (red monitor).
 	 */
-	protected int checkM1 (double resolution, BandsRegion region) {
-		if (Double.isFinite(resolution)) {
-			if (region == BandsRegion.UNKNOWN) {
-				return RED;
-			} else if (region != BandsRegion.NONE && region != BandsRegion.RECOVERY) {
-				return YELLOW;
+	protected static class M1 implements DAAMonitor {
+		protected static byte checkM1 (double resolution, BandsRegion region) {
+			if (Double.isFinite(resolution)) {
+				if (region == BandsRegion.UNKNOWN) {
+					return RED;
+				} else if (region != BandsRegion.NONE && region != BandsRegion.RECOVERY) {
+					return YELLOW;
+				}
 			}
+			return GREEN;
 		}
-		return GREEN;
-	}
 
-	protected static String legendM1 () {
-		String green_desc = "Valid finite resolution.";
-		String yellow_desc = "Property failure: resolution is finite and region is not NONE nor RECOVERY.";
-		String red_desc = "Property failure: resolution is finite and region is UNKNOWN.";
-		return "{ " 
-		+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\", \"red\": \"" + red_desc + "\""
-		+ " }";
-	}
+		protected static byte checkM1 (DAAStepSnapshot.Resolution res) {
+			return (byte) Math.max(checkM1(res.preferredResolution, res.preferredRegion), checkM1(res.otherResolution, res.otherRegion));
+		}
 
-	protected static String labelM1 () {
-		return "M1: Finite resolution ⇒ Region is NONE or RECOVERY";
-	}
+		public String getLegend () {
+			String green_desc = "Valid finite resolution.";
+			String yellow_desc = "Property failure: resolution is finite and region is not NONE nor RECOVERY.";
+			String red_desc = "Property failure: resolution is finite and region is UNKNOWN.";
+			return "{ " 
+			+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\", \"red\": \"" + red_desc + "\""
+			+ " }";
+		}
 
-	String m1 () {
-		int monitorIndex = 0;
-		int hr = checkM1(resolutionTrk, regionTrk);
-		int hsr = checkM1(resolutionGs, regionGs);
-		int vsr = checkM1(resolutionVs, regionVs);
-		int ar = checkM1(resolutionAlt, regionAlt);
-
-		int hr_other = checkM1(resolutionTrk_other, regionTrk_other);
-		int hsr_other = checkM1(resolutionGs_other, regionGs_other);
-		int vsr_other = checkM1(resolutionVs_other, regionVs_other);
-		int ar_other = checkM1(resolutionAlt_other, regionAlt_other);
-
-		int max_color = Math.max(hr, Math.max(hsr, Math.max(vsr, Math.max(ar, Math.max(hr_other, Math.max(hsr_other, Math.max(vsr_other, ar_other)))))));
-		if (monitorColor[monitorIndex] < max_color) { monitorColor[monitorIndex] = max_color; }
-
-		return "\"color\": " + "\"" + color2string(max_color) + "\""
-		+ ", \"details\":" 
-		+ " {"
-		+ " \"Heading\": " + "\"" + color2string(Math.max(hr, hr_other)) + "\""
-		+ ", \"Horizontal Speed\": " + "\"" + color2string(Math.max(hsr, hsr_other)) + "\""
-		+ ", \"Vertical Speed\": " + "\"" + color2string(Math.max(vsr, vsr_other)) + "\""
-		+ ", \"Altitude\": " + "\"" + color2string(Math.max(ar, ar_other)) + "\""
-		+ " }";
+		public String getLabel () {
+			return "M1: Finite resolution ⇒ Region is NONE or RECOVERY";
+		}
+
+		public void check (DAAStepSnapshot snap, byte verdicts[], int offset) {
+			verdicts[offset + HEADING] = checkM1(snap.trkResolution);
+			verdicts[offset + HORIZONTAL_SPEED] = checkM1(snap.gsResolution);
+			verdicts[offset + VERTICAL_SPEED] = checkM1(snap.vsResolution);
+			verdicts[offset + ALTITUDE] = checkM1(snap.altResolution);
+		}
 	}
 
 	/**
 	 * Monitor 2: consistent resolutions
 	 * - If region is not RECOVERY and any resolution is NaN and other resolutions are not NaN (yellow monitor).
 	 */
-	protected int checkM2_preferred (double resolution, BandsRegion region) {
-		if (region != BandsRegion.RECOVERY) {
-			boolean exists_resolution_not_NaN = !Double.isNaN(resolutionTrk) || !Double.isNaN(resolutionGs) || !Double.isNaN(resolutionVs);// || !Double.isNaN(resolutionAlt); M2 does not apply to altitude
-			if (Double.isNaN(resolution) && exists_resolution_not_NaN) {
-				return YELLOW;
+	protected static class M2 implements DAAMonitor {
+		protected static byte checkM2 (double resolution, BandsRegion region, boolean exists_resolution_not_NaN) {
+			if (region != BandsRegion.RECOVERY) {
+				if (Double.isNaN(resolution) && exists_resolution_not_NaN) {
+					return YELLOW;
+				}
 			}
+			return GREEN;
 		}
-		return GREEN;
-	}
 
-	protected int checkM2_other (double resolution_, BandsRegion region) {
-		if (region != BandsRegion.RECOVERY) {
-			boolean exists_resolution_not_NaN = !Double.isNaN(resolutionTrk_other) || !Double.isNaN(resolutionGs_other) || !Double.isNaN(resolutionVs_other);// || !Double.isNaN(resolutionAlt_other); M2 does not apply to altitude
-			if (Double.isNaN(resolution_) && exists_resolution_not_NaN) {
-				return YELLOW;
-			}
+		public String getLegend () {
+			String green_desc = "Consistent resolutions.";
+			String yellow_desc = "Property failure: one resolution is NaN and other resolutions are not NaN and region of current value is not RECOVERY.";
+			return "{ " 
+			+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\""
+			+ " }";
 		}
-		return GREEN;
-	}
 
-	protected static String legendM2 () {
-		String green_desc = "Consistent resolutions.";
-		String yellow_desc = "Property failure: one resolution is NaN and other resolutions are not NaN and region of current value is not RECOVERY.";
-		return "{ " 
-		+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\""
-		+ " }";
-	}
-
-	protected static String labelM2 () {
-		return "M2: One resolution is NaN ⇒ All resolutions are NaN";
-	}
+		public String getLabel () {
+			return "M2: One resolution is NaN ⇒ All resolutions are NaN";
+		}
 
-	String m2 () {
-		int monitorIndex = 1;
-		int hr = checkM2_preferred(resolutionTrk, currentRegionTrk);
-		int hsr = checkM2_preferred(resolutionGs, currentRegionGs);
-		int vsr = checkM2_preferred(resolutionVs, currentRegionVs);
-		int ar = GREEN; //checkM2_preferred(resolutionAlt, currentRegionAlt); M2 does not apply to altitude
-
-		int hr_other = checkM2_other(resolutionTrk_other, currentRegionTrk);
-		int hsr_other = checkM2_other(resolutionGs_other, currentRegionGs);
-		int vsr_other = checkM2_other(resolutionVs_other, currentRegionVs);
-		int ar_other = GREEN; //checkM2_other(resolutionAlt_other, currentRegionAlt); M2 does not apply to altitude
-
-		int max_color = Math.max(hr, Math.max(hsr, Math.max(vsr, Math.max(ar, Math.max(hr_other, Math.max(hsr_other, Math.max(vsr_other, ar_other)))))));
-		if (monitorColor[monitorIndex] < max_color) { monitorColor[monitorIndex] = max_color; }
-
-		return "\"color\": " + "\"" + color2string(max_color) + "\""
-		+ ", \"details\":" 
-		+ " {"
-		+ " \"Heading\": " + "\"" + color2string(Math.max(hr, hr_other)) + "\""
-		+ ", \"Horizontal Speed\": " + "\"" + color2string(Math.max(hsr, hsr_other)) + "\""
-		+ ", \"Vertical Speed\": " + "\"" + color2string(Math.max(vsr, vsr_other)) + "\""
-		+ ", \"Altitude\": " + "\"" + color2string(Math.max(ar, ar_other)) + "\""
-		+ " }";
+		public void check (DAAStepSnapshot snap, byte verdicts[], int offset) {
+			// M2 does not apply to altitude
+			boolean preferred_not_NaN = !Double.isNaN(snap.trkResolution.preferredResolution) || !Double.isNaN(snap.gsResolution.preferredResolution) || !Double.isNaN(snap.vsResolution.preferredResolution);
+			boolean other_not_NaN = !Double.isNaN(snap.trkResolution.otherResolution) || !Double.isNaN(snap.gsResolution.otherResolution) || !Double.isNaN(snap.vsResolution.otherResolution);
+			verdicts[offset + HEADING] = (byte) Math.max(checkM2(snap.trkResolution.preferredResolution, snap.trkRegion, preferred_not_NaN), 
+				checkM2(snap.trkResolution.otherResolution, snap.trkRegion, other_not_NaN));
+			verdicts[offset + HORIZONTAL_SPEED] = (byte) Math.max(checkM2(snap.gsResolution.preferredResolution, snap.gsRegion, preferred_not_NaN), 
+				checkM2(snap.gsResolution.otherResolution, snap.gsRegion, other_not_NaN));
+			verdicts[offset + VERTICAL_SPEED] = (byte) Math.max(checkM2(snap.vsResolution.preferredResolution, snap.vsRegion, preferred_not_NaN), 
+				checkM2(snap.vsResolution.otherResolution, snap.vsRegion, other_not_NaN));
+			verdicts[offset + ALTITUDE] = GREEN;
+		}
 	}
 
 	/**
@@ -309,165 +455,99 @@ public class DAAMonitorsV2 {
 	 * - Traffic aircraft has a non-zero alert and the region of the current value (heading, speed) is UNKNOWN (red monitor)
 	 *   Color order is NONE < FAR < MID < NEAR < RECOVERY. 
 	 */
-	protected int checkM3 (Daidalus daa, BandsRegion currentRegion) {
-		for (int ac = 1; ac <= daa.lastTrafficIndex(); ac++) {
-			int alert = daa.alertLevel(ac);
-			int threshold = daa.getCorrectiveRegion().orderOfConflictRegion();
-			if (alert > threshold) {
+	protected static class M3 implements DAAMonitor {
+		protected static byte checkM3 (BandsRegion currentRegion, int maxAlertLevel, int threshold) {
+			// the property holds for all traffic aircraft iff it holds for the most severe alert
+			if (maxAlertLevel > threshold) {
 				if (currentRegion == BandsRegion.UNKNOWN) {
 					return RED;
 				} else {
 					int level = bandsRegionToInt(currentRegion);
-					if (level < alert) {
+					if (level < maxAlertLevel) {
 						return YELLOW;
 					}
 				}
 			}
+			return GREEN;
 		}
-		return GREEN;
-	}
 
-	protected static String legendM3 () {
-		String green_desc = "Valid non-zero alerts.";
-		String yellow_desc = "Property failure: traffic aircraft has a non-zero alert and the region of the current value (heading, speed) is lower than the traffic alert.";
-		String red_desc = "Property failure: traffic aircraft has a non-zero alert and the region of the current value (heading, speed) is UNKNOWN.";
-		return "{ " 
-		+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\", \"red\": \"" + red_desc + "\""
-		+ " }";
-	}
+		public String getLegend () {
+			String green_desc = "Valid non-zero alerts.";
+			String yellow_desc = "Property failure: traffic aircraft has a non-zero alert and the region of the current value (heading, speed) is lower than the traffic alert.";
+			String red_desc = "Property failure: traffic aircraft has a non-zero alert and the region of the current value (heading, speed) is UNKNOWN.";
+			return "{ " 
+			+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\", \"red\": \"" + red_desc + "\""
+			+ " }";
+		}
 
-	protected static String labelM3 () {
-		return "M3: Band(current value) ≥ Alert(traffic)";
-	}
+		public String getLabel () {
+			return "M3: Band(current value) ≥ Alert(traffic)";
+		}
 
-	String m3 (Daidalus daa) {
-		int monitorIndex = 2;
-		int hb = checkM3(daa,currentRegionTrk);
-		int hsb = checkM3(daa,currentRegionGs);
-		int vsb = checkM3(daa,currentRegionVs);
-		int ab = GREEN;//checkM3(currentRegionAlt); // M2 does not apply to altitude
-
-		int max_color = Math.max(hb, Math.max(hsb, Math.max(vsb, ab)));
-		if (monitorColor[monitorIndex] < max_color) { monitorColor[monitorIndex] = max_color; }
-
-		return "\"color\": " + "\"" + color2string(max_color) + "\""
-		+ ", \"details\":" 
-		+ " {"
-		+ " \"Heading\": " + "\"" + color2string(hb) + "\""
-		+ ", \"Horizontal Speed\": " + "\"" + color2string(hsb) + "\""
-		+ ", \"Vertical Speed\": " + "\"" + color2string(vsb) + "\""
-		+ ", \"Altitude\": " + "\"" + color2string(ab) + "\""
-		+ " }";
+		public void check (DAAStepSnapshot snap, byte verdicts[], int offset) {
+			int maxAlertLevel = 0;
+			for (int ac = 1; ac <= snap.nTraffic; ac++) {
+				maxAlertLevel = Math.max(maxAlertLevel, snap.getTraffic(ac).alertLevel);
+			}
+			int threshold = snap.correctiveRegionOrder;
+			verdicts[offset + HEADING] = checkM3(snap.trkRegion, maxAlertLevel, threshold);
+			verdicts[offset + HORIZONTAL_SPEED] = checkM3(snap.gsRegion, maxAlertLevel, threshold);
+			verdicts[offset + VERTICAL_SPEED] = checkM3(snap.vsRegion, maxAlertLevel, threshold);
+			verdicts[offset + ALTITUDE] = GREEN; // M3 does not apply to altitude
+		}
 	}
 
 	/**
 	 * Monitor 4: NONE and RECOVERY
 	 * NONE and RECOVERY appear in the same list of bands (yellow monitor)
 	 */
-	protected int checkM4Trk (Daidalus daa) {
-		boolean none = false;
-		boolean recovery = false;
-		for (int i = 0; i < daa.horizontalDirectionBandsLength(); i++) {
-			BandsRegion b = daa.horizontalDirectionRegionAt(i);
-			if (b == BandsRegion.NONE) {
-				none = true;
-			} else if (b == BandsRegion.RECOVERY) {
-				recovery = true;
+	protected static class M4 implements DAAMonitor {
+		protected static byte checkM4 (List<BandsRegion> regions) {
+			boolean none = false;
+			boolean recovery = false;
+			for (int i = 0; i < regions.size(); i++) {
+				BandsRegion b = regions.get(i);
+				if (b == BandsRegion.NONE) {
+					none = true;
+				} else if (b == BandsRegion.RECOVERY) {
+					recovery = true;
+				}
 			}
+			return (none && recovery) ? YELLOW : GREEN;
 		}
-		return (none && recovery) ? YELLOW : GREEN;
-	}
 
-	protected int checkM4Hs (Daidalus daa) {
-		boolean none = false;
-		boolean recovery = false;
-		for (int i = 0; i < daa.horizontalSpeedBandsLength(); i++) {
-			BandsRegion b = daa.horizontalSpeedRegionAt(i);
-			if (b == BandsRegion.NONE) {
-				none = true;
-			} else if (b == BandsRegion.RECOVERY) {
-				recovery = true;
-			}
+		public String getLegend () {
+			String green_desc = "Valid region colors.";
+			String yellow_desc = "Property failure: NONE and RECOVERY appear in the same list of bands.";
+			return "{ " 
+			+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\""
+			+ " }";
 		}
-		return (none && recovery) ? YELLOW : GREEN;
-	}
 
-	protected int checkM4Vs (Daidalus daa) {
-		boolean none = false;
-		boolean recovery = false;
-		for (int i = 0; i < daa.verticalSpeedBandsLength(); i++) {
-			BandsRegion b = daa.verticalSpeedRegionAt(i);
-			if (b == BandsRegion.NONE) {
-				none = true;
-			} else if (b == BandsRegion.RECOVERY) {
-				recovery = true;
-			}
+		public String getLabel () {
+			return "M4: It is never the case that NONE and RECOVERY appear in the same list of bands";
 		}
-		return (none && recovery) ? YELLOW : GREEN;
-	}
 
-	protected int checkM4Alt (Daidalus daa) {
-		boolean none = false;
-		boolean recovery = false;
-		for (int i = 0; i < daa.altitudeBandsLength(); i++) {
-			BandsRegion b = daa.altitudeRegionAt(i);
-			if (b == BandsRegion.NONE) {
-				none = true;
-			} else if (b == BandsRegion.RECOVERY) {
-				recovery = true;
-			}
+		public void check (DAAStepSnapshot snap, byte verdicts[], int offset) {
+			verdicts[offset + HEADING] = checkM4(snap.trkBands.regions);
+			verdicts[offset + HORIZONTAL_SPEED] = checkM4(snap.gsBands.regions);
+			verdicts[offset + VERTICAL_SPEED] = checkM4(snap.vsBands.regions);
+			verdicts[offset + ALTITUDE] = checkM4(snap.altBands.regions);
 		}
-		return (none && recovery) ? YELLOW : GREEN;
-	}
-
-	protected static String legendM4 () {
-		String green_desc = "Valid region colors.";
-		String yellow_desc = "Property failure: NONE and RECOVERY appear in the same list of bands.";
-		return "{ " 
-		+ "\"green\": \"" + green_desc + "\", \"yellow\": \"" + yellow_desc + "\""
-		+ " }";
-	}
-
-	protected static String labelM4 () {
-		return "M4: It is never the case that NONE and RECOVERY appear in the same list of bands";
-	}
-
-	String m4 (Daidalus daa) {
-		int monitorIndex = 3;
-		int hb = checkM4Trk(daa);
-		int hsb = checkM4Hs(daa);
-		int vsb = checkM4Vs(daa);
-		int ab = checkM4Alt(daa);
-
-		int max_color = Math.max(hb, Math.max(hsb, Math.max(vsb, ab)));
-		if (monitorColor[monitorIndex] < max_color) { monitorColor[monitorIndex] = max_color; }
-
-		return "\"color\": " + "\"" + color2string(max_color) + "\""
-		+ ", \"details\":" 
-		+ " {"
-		+ " \"Heading\": " + "\"" + color2string(hb) + "\""
-		+ ", \"Horizontal Speed\": " + "\"" + color2string(hsb) + "\""
-		+ ", \"Vertical Speed\": " + "\"" + color2string(vsb) + "\""
-		+ ", \"Altitude\": " + "\"" + color2string(ab) + "\""
-		+ " }";
 	}
 
 	static String getLegend (int monitorID) {
-		if (monitorID <= N_MONITORS && monitorID > 0) {
-			if (monitorID == 1) { return legendM1(); }
-			if (monitorID == 2) { return legendM2(); }
-			if (monitorID == 3) { return legendM3(); }
-			if (monitorID == 4) { return legendM4(); }
+		DAAMonitor monitors[] = getMonitors();
+		if (monitorID <= monitors.length && monitorID > 0) {
+			return monitors[monitorID - 1].getLegend();
 		}
 		return "unknown";
 	}
 
 	static String getLabel (int monitorID) {
-		if (monitorID <= N_MONITORS && monitorID > 0) {
-			if (monitorID == 1) { return labelM1(); }
-			if (monitorID == 2) { return labelM2(); }
-			if (monitorID == 3) { return labelM3(); }
-			if (monitorID == 4) { return labelM4(); }
+		DAAMonitor monitors[] = getMonitors();
+		if (monitorID <= monitors.length && monitorID > 0) {
+			return monitors[monitorID - 1].getLabel();
 		}
 		return "unknown";
 	}
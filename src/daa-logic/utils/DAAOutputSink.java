@@ -0,0 +1,205 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Output sink for the single file with all the data.
+ * The file is assembled from the chunk files, so each section is serialized only once:
+ * - json chunks are spliced into the output with FileChannel.transferTo, without copying the data through the JVM
+ * - array chunks (one element per line) are copied with a large buffer, inserting the commas between elements
+ * The sink uses the same line separator and charset of PrintWriter/FileWriter, so the output is identical to 
+ * the output obtained by printing the same data with a PrintWriter.
+ */
+public class DAAOutputSink {
+	public static final int CHUNK_BUFFER_SIZE = 1 << 18; // buffer size of the chunk writers, in chars
+	public static final int COPY_BUFFER_SIZE = 1 << 20; // buffer size used to copy the chunks, in bytes
+
+	protected static final String lineSeparator = System.lineSeparator();
+	protected static final Charset charset = Charset.defaultCharset();
+	protected static final boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+
+	protected FileOutputStream file;
+	protected BufferedOutputStream out;
+	protected byte[] buffer;
+
+	/**
+	 * Creates the output file
+	 */
+	public DAAOutputSink (String fname) throws IOException {
+		file = createOutputStream(fname);
+		out = new BufferedOutputStream(file, COPY_BUFFER_SIZE);
+		buffer = new byte[COPY_BUFFER_SIZE];
+	}
+
+	/**
+	 * Utility function, creates a writer for a chunk file. 
+	 * The writer uses a large buffer and does not flush automatically, the caller is in charge of flushing/closing the writer.
+	 */
+	public static PrintWriter createChunkWriter (String fname) throws IOException {
+		return new PrintWriter(new BufferedWriter(new OutputStreamWriter(createOutputStream(fname)), CHUNK_BUFFER_SIZE), false);
+	}
+
+	/**
+	 * Utility function, creates an output file. An existing file is deleted rather than truncated, 
+	 * because it may be a hard link to a file of the results cache (see DAAResultCache)
+	 */
+	public static FileOutputStream createOutputStream (String fname) throws IOException {
+		Files.deleteIfExists(new File(fname).toPath());
+		return new FileOutputStream(fname);
+	}
+
+	/**
+	 * Utility function, returns the number of bytes used to encode str in the chunk files
+	 */
+	public static int byteLength (String str) {
+		if (!utf8) {
+			return str.getBytes(charset).length;
+		}
+		// utf-8, the length is computed without encoding the string
+		int len = str.length();
+		int bytes = len;
+		for (int i = 0; i < len; i++) {
+			char c = str.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					bytes += 1;
+				} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+					bytes += 2; // 4 bytes for 2 chars
+					i++;
+				} else if (!Character.isSurrogate(c)) { // unpaired surrogates are encoded as '?'
+					bytes += 2;
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Prints str followed by a line separator, same as PrintWriter.println
+	 */
+	public void println (String str) throws IOException {
+		out.write((str + lineSeparator).getBytes(charset));
+	}
+
+	/**
+	 * Copies the content of a chunk file starting from the given byte offset.
+	 * The data is transferred with FileChannel.transferTo, without copying the data in the JVM heap.
+	 */
+	public void splice (File chunk, long offset) throws IOException {
+		out.flush();
+		FileInputStream in = new FileInputStream(chunk);
+		try {
+			FileChannel src = in.getChannel();
+			FileChannel dst = file.getChannel();
+			long size = src.size();
+			long pos = offset;
+			while (pos < size) {
+				pos += src.transferTo(pos, size - pos, dst);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Copies a chunk file with one element per line as a JSON array, same as DAABandsV2.printArray(out, chunk, label)
+	 */
+	public void printArray (File chunk, String label) throws IOException {
+		println("\"" + label + "\": [");
+		InputStream in = new FileInputStream(chunk);
+		try {
+			byte[] separator = lineSeparator.getBytes(charset);
+			byte[] comma = ("," + lineSeparator).getBytes(charset);
+			int len = 0; // number of bytes in the buffer
+			boolean first = true;
+			int n = in.read(buffer, 0, buffer.length);
+			while (n > 0) {
+				len += n;
+				int start = 0; // start of the current line
+				for (int i = 0; i < len; i++) {
+					if (buffer[i] == '\n') {
+						// end of line, the line separator is not copied
+						int end = Math.max(start, i + 1 - separator.length);
+						if (!first) { out.write(comma); }
+						out.write(buffer, start, end - start);
+						first = false;
+						start = i + 1;
+					}
+				}
+				// the last line may be incomplete, move it to the beginning of the buffer
+				len -= start;
+				System.arraycopy(buffer, start, buffer, 0, len);
+				if (len == buffer.length) {
+					// the line is longer than the buffer
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				n = in.read(buffer, len, buffer.length - len);
+			}
+			if (len > 0) {
+				if (!first) { out.write(comma); }
+				out.write(buffer, 0, len);
+			}
+		} finally {
+			in.close();
+		}
+		println("\n]");
+	}
+
+	/**
+	 * Closes the output file
+	 */
+	public void close () throws IOException {
+		out.flush();
+		out.close();
+	}
+}
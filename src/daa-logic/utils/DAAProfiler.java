@@ -39,24 +39,126 @@
 
 import java.io.FileWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.BufferedWriter;
+import java.util.Arrays;
 
 /**
- * Simple profiler utility class for computing performance stats
+ * Simple profiler utility class for computing performance stats.
+ * Time is measured with System.nanoTime. Besides the total time of each step (start/stop), the profiler measures 
+ * the time of each phase of a step (see lap and record), and collects the samples of each phase in a histogram.
+ * Each phase must be measured by a single thread, the results must be read after the threads that measured them have terminated.
+ * The total time of each step is stored in a growable array of longs, so collecting data does not allocate memory 
+ * (except when the array grows), and the collected data is streamed to file when exported.
  */
 
 public class DAAProfiler {
+    // phases of a time step
+    public static final int INGEST = 0; // state ingest, i.e., reading the state of the aircraft and loading it in the Daidalus object
+    public static final int BANDS = 1;
+    public static final int RESOLUTIONS = 2;
+    public static final int METRICS = 3;
+    public static final int CONTOURS = 4;
+    public static final int HAZARD_ZONES = 5;
+    public static final int MONITORS = 6;
+    public static final int SERIALIZATION = 7;
+    public static final int STEP = 8; // total time of the step, from start to stop
+    public static final String PHASES[] = {
+        "ingest", "bands", "resolutions", "metrics", "contours", "hazard zones", "monitors", "serialization", "step"
+    };
+
     long start = 0; // start profiler
     long stop = 0; // stop profiler
     String message = null; // can be used to keep track of what we are profiling, e.g., "time to compute bands"
-    String collected_data = ""; // data collected by the profiler, in millis, separated by SEPARATOR. Data is collected every time the stop method is invoked
-    String SEPARATOR = " ";
-    int LIMIT = 0; // 0 = "no limit"
+    long samples[] = new long[1024]; // data collected by the profiler, in nanos. Data is collected every time the stop method is invoked
+    int nSamples = 0; // number of samples collected
+    int LIMIT = 0; // max number of samples collected, 0 = "no limit"
+
+    Histogram histograms[] = new Histogram[PHASES.length]; // samples of each phase, in nanos
+    long phaseTime[] = new long[PHASES.length]; // time of each phase in the current step, a phase can be measured in multiple laps
+    boolean phaseMeasured[] = new boolean[PHASES.length];
+
+    /**
+     * Histogram with fixed size and bounded relative error: values are grouped in buckets whose width is 1/64 of 
+     * the power of two that precedes the value, so percentiles are accurate within 1.6% for any value in [0, 2^63).
+     * Recording a value does not allocate memory.
+     */
+    static class Histogram {
+        static final int SUB_BITS = 6;
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+        long counts[] = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+
+        static int indexOf (long value) {
+            if (value < SUB_BUCKETS) { return (int) value; }
+            int exp = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+            int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Largest value of the bucket
+         */
+        static long valueOf (int index) {
+            if (index < SUB_BUCKETS) { return index; }
+            int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = index % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+
+        void record (long value) {
+            value = Math.max(0, value);
+            counts[indexOf(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Returns the value below which the given fraction of the samples falls, p in [0, 1]
+         */
+        long percentile (double p) {
+            if (count == 0) { return 0; }
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) { return Math.min(valueOf(i), max); }
+            }
+            return max;
+        }
+
+        double mean () {
+            return count > 0 ? (double) sum / count : 0;
+        }
+    }
+
+    /**
+     * Summary statistics of the collected data, in nanos
+     */
+    static class Summary {
+        long count = 0;
+        double mean = 0;
+        double stddev = 0;
+        long min = 0;
+        long max = 0;
+        long p50 = 0;
+        long p90 = 0;
+        long p99 = 0;
+    }
 
     /**
      * Constructors
      */
-    DAAProfiler () { }
+    DAAProfiler () {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
     DAAProfiler (String title) {
+        this();
         message = title;
     }
 
@@ -64,34 +166,60 @@ public class DAAProfiler {
      * start profiler
      */
     void start () {
-        start = System.currentTimeMillis();
+        start = System.nanoTime();
     }
 
     /**
-     * stop profiler and collect data
+     * stop profiler and collect data, the phases measured with lap since the previous stop are recorded as one sample each
      */
     void stop () {
-        stop = System.currentTimeMillis();
-        try {
-            collected_data += String.valueOf(stop - start) + SEPARATOR;
-        } catch (Exception e) {
-            System.err.println("[DAAProfiler] Warning: Runtime exception while collecting data " + e);
+        stop = System.nanoTime();
+        if (LIMIT <= 0 || nSamples < LIMIT) {
+            if (nSamples == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+            samples[nSamples++] = stop - start;
+        }
+        histograms[STEP].record(stop - start);
+        for (int i = 0; i < phaseTime.length; i++) {
+            if (phaseMeasured[i]) {
+                histograms[i].record(phaseTime[i]);
+                phaseTime[i] = 0;
+                phaseMeasured[i] = false;
+            }
         }
     }
 
+    /**
+     * adds the time elapsed since the given time (System.nanoTime) to the given phase of the current step, returns the current time
+     */
+    long lap (int phase, long since) {
+        long now = System.nanoTime();
+        phaseTime[phase] += now - since;
+        phaseMeasured[phase] = true;
+        return now;
+    }
+
+    /**
+     * records one sample of the given phase, in nanos, used for phases measured outside start/stop (e.g., on another thread)
+     */
+    void record (int phase, long nanos) {
+        histograms[phase].record(nanos);
+    }
+
     /**
      * get elapsed time, in millis
      */
     long getElapsedTime () {
-        long now = System.currentTimeMillis();
-        return now - start;
+        long now = System.nanoTime();
+        return (now - start) / 1000000;
     }
 
     /**
      * get total time, from start to stop, in millis
      */
     long getTotalTime () {
-        return stop - start;
+        return (stop - start) / 1000000;
     }
 
     /**
@@ -112,31 +240,174 @@ public class DAAProfiler {
         return msg;
     }
 
+    /**
+     * computes the summary statistics of the collected data in a single pass: mean and standard deviation 
+     * are computed with Welford's algorithm, percentiles are computed with a histogram filled in the same pass
+     */
+    Summary summarize () {
+        Summary summary = new Summary();
+        Histogram h = new Histogram();
+        double m2 = 0;
+        for (int i = 0; i < nSamples; i++) {
+            long x = samples[i];
+            double delta = x - summary.mean;
+            summary.mean += delta / (i + 1);
+            m2 += delta * (x - summary.mean);
+            summary.min = i == 0 ? x : Math.min(summary.min, x);
+            summary.max = Math.max(summary.max, x);
+            h.record(x);
+        }
+        summary.count = nSamples;
+        summary.stddev = nSamples > 1 ? Math.sqrt(m2 / (nSamples - 1)) : 0;
+        summary.p50 = h.percentile(0.5);
+        summary.p90 = h.percentile(0.9);
+        summary.p99 = h.percentile(0.99);
+        return summary;
+    }
+
+    /**
+     * writes the given time, in nanos, in millis with 3 decimals
+     */
+    static void writeMillis (PrintWriter out, long nanos) {
+        long micros = (nanos + 500) / 1000;
+        long frac = micros % 1000;
+        out.print(micros / 1000);
+        out.print(frac < 10 ? ".00" : frac < 100 ? ".0" : ".");
+        out.print(frac);
+    }
+
+    /**
+     * writes the collected data, one sample per line, in whole millis as in previous versions of the log 
+     * (the csv and json exports have 3 decimals)
+     */
+    void writeCollectedData (PrintWriter out) {
+        out.print("[DAAProfiler] " + (message != null ? message : ""));
+        if (nSamples > 0) {
+            for (int i = 0; i < nSamples; i++) {
+                out.print("\n");
+                out.print((samples[i] + 500000) / 1000000);
+                out.print("ms");
+            }
+            out.print("\n");
+        } else {
+            out.print("\nNo data collected\n");
+        }
+    }
+
+    /**
+     * writes the collected data in csv format, in millis
+     */
+    void writeCollectedDataCsv (PrintWriter out) {
+        out.print("step,time_ms\n");
+        for (int i = 0; i < nSamples; i++) {
+            out.print(i);
+            out.print(",");
+            writeMillis(out, samples[i]);
+            out.print("\n");
+        }
+    }
+
+    /**
+     * writes the percentiles of each phase, the summary statistics and the collected data in json format, in millis
+     */
+    void writeCollectedDataJson (PrintWriter out) {
+        out.print("{\n\"title\": \"" + (message != null ? message : "") + "\",\n\"units\": \"ms\",\n\"phases\": [");
+        boolean first = true;
+        for (int i = 0; i < PHASES.length; i++) {
+            Histogram h = histograms[i];
+            if (h.count > 0) {
+                out.print((first ? "\n" : ",\n") + String.format("{ \"phase\": \"%s\", \"samples\": %d, \"mean\": %.6f, \"p50\": %.6f, \"p90\": %.6f, \"p99\": %.6f, \"max\": %.6f }", 
+                    PHASES[i], h.count, h.mean() / 1e6, h.percentile(0.5) / 1e6, h.percentile(0.9) / 1e6, h.percentile(0.99) / 1e6, h.max / 1e6));
+                first = false;
+            }
+        }
+        Summary s = summarize();
+        out.print("\n],\n\"summary\": " + String.format("{ \"samples\": %d, \"mean\": %.6f, \"stddev\": %.6f, \"min\": %.6f, \"max\": %.6f, \"p50\": %.6f, \"p90\": %.6f, \"p99\": %.6f }", 
+            s.count, s.mean / 1e6, s.stddev / 1e6, s.min / 1e6, s.max / 1e6, s.p50 / 1e6, s.p90 / 1e6, s.p99 / 1e6));
+        out.print(",\n\"samples\": [");
+        for (int i = 0; i < nSamples; i++) {
+            if (i > 0) { out.print(", "); }
+            writeMillis(out, samples[i]);
+        }
+        out.print("]\n}\n");
+    }
+
     /**
      * return collected data as a string
      */
     String printCollectedData () {
-        String[] dt = collected_data.split(SEPARATOR, LIMIT);
-        String msg = "[DAAProfiler] " + (message != null ? message : "");
-        if (dt.length > 0) {
-            for (int i = 0; i < dt.length; i++) {
-                msg += "\n" + dt[i] + "ms";
+        StringWriter str = new StringWriter();
+        PrintWriter out = new PrintWriter(str);
+        writeCollectedData(out);
+        out.flush();
+        return str.toString();
+    }
+
+    /**
+     * return the summary statistics of the collected data, in millis
+     */
+    String printSummary () {
+        Summary s = summarize();
+        return String.format("[DAAProfiler] Summary (ms)%n%-14s %8s %10s %10s %10s %10s %10s %10s %10s%n%-14s %8d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+            "", "samples", "mean", "stddev", "min", "max", "p50", "p90", "p99",
+            "step", s.count, s.mean / 1e6, s.stddev / 1e6, s.min / 1e6, s.max / 1e6, s.p50 / 1e6, s.p90 / 1e6, s.p99 / 1e6);
+    }
+
+    /**
+     * return the percentiles of each phase as a table, in millis
+     */
+    String printPhases () {
+        String msg = String.format("[DAAProfiler] Phases (ms)%n%-14s %8s %10s %10s %10s %10s %10s%n", "phase", "samples", "mean", "p50", "p90", "p99", "max");
+        for (int i = 0; i < PHASES.length; i++) {
+            Histogram h = histograms[i];
+            if (h.count > 0) {
+                msg += String.format("%-14s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", PHASES[i], h.count, 
+                    h.mean() / 1e6, h.percentile(0.5) / 1e6, h.percentile(0.9) / 1e6, h.percentile(0.99) / 1e6, h.max / 1e6);
             }
-            msg += "\n";
-        } else {
-            msg += "\nNo data collected\n";
         }
         return msg;
     }
 
+    /**
+     * print the percentiles of each phase, the summary statistics and the collected data to file, in json format
+     */
+    boolean printCollectedDataToJsonFile (String fname) {
+        try {
+            PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(fname)));
+            writeCollectedDataJson(printWriter);
+            printWriter.close();
+        } catch (java.io.IOException ex) {
+            System.err.println("[DAAProfiler] Warning: exception while printing data to file " + fname);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * print collected data to file, in csv format
+     */
+    boolean printCollectedDataToCsvFile (String fname) {
+        try {
+            PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(fname)));
+            writeCollectedDataCsv(printWriter);
+            printWriter.close();
+        } catch (java.io.IOException ex) {
+            System.err.println("[DAAProfiler] Warning: exception while printing data to file " + fname);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * print collected data to file
      */
     boolean printCollectedDataToFile (String fname) {
         try {
             FileWriter fileWriter = new FileWriter(fname);
-            PrintWriter printWriter = new PrintWriter(fileWriter);
-            printWriter.print(printCollectedData());
+            PrintWriter printWriter = new PrintWriter(new BufferedWriter(fileWriter));
+            printWriter.print(printPhases());
+            printWriter.print(printSummary());
+            writeCollectedData(printWriter);
             printWriter.close();
         } catch (java.io.IOException ex) {
             System.err.println("[DAAProfiler] Warning: exception while printing data to file " + fname);
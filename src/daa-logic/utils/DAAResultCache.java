@@ -0,0 +1,221 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Content-addressed cache of the output files of DAABandsV2 (see --cache-dir).
+ * Results are stored in a folder named after the SHA-256 hash of everything the output depends on 
+ * (scenario bytes, configuration parameters, wind, alerter, ownship, DAIDALUS version, output options), 
+ * so a configuration edit never serves stale results, and a different output name does not trigger a recomputation.
+ * Cache hits are served by hard links to the cached files (copies if hard links are not supported).
+ * The files that contain the output file name (.files, .index) are stored with the canonical name "result" 
+ * and rewritten with the requested name when they are served.
+ * The cache is bounded in size: least recently used entries are evicted when a new entry is stored.
+ */
+public class DAAResultCache {
+	public static final long DEFAULT_MAX_SIZE = 1L << 30; // 1GB
+	public static final String ENTRY_NAME = "result"; // canonical output file name in the cache entries
+
+	protected File folder;
+	protected long maxSize;
+
+	public DAAResultCache (String folder, long maxSize) {
+		this.folder = new File(folder);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Computes the key of a result, i.e., the hash of the scenario file and of the given parameters
+	 */
+	public static String computeKey (String scenario, List<String> params) throws IOException {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (String param : params) {
+				md.update((param != null ? param : "null").getBytes(StandardCharsets.UTF_8));
+				md.update((byte) 0);
+			}
+			byte buffer[] = new byte[DAAOutputSink.COPY_BUFFER_SIZE];
+			try (InputStream in = new FileInputStream(scenario)) {
+				int n = 0;
+				while ((n = in.read(buffer)) > 0) {
+					md.update(buffer, 0, n);
+				}
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Creates the output files from the cache entry with the given key
+	 * @param ofname Output file name
+	 * @param suffixes Suffix of each output file, e.g., "" for ofname, ".files" for ofname.files
+	 * @return true if the entry is in the cache and the output files were created
+	 */
+	public boolean fetch (String key, String ofname, List<String> suffixes) {
+		File entry = new File(folder, key);
+		if (!entry.isDirectory()) { return false; }
+		try {
+			String name = new File(ofname).getName();
+			for (String suffix : suffixes) {
+				File src = new File(entry, ENTRY_NAME + suffix);
+				File dst = new File(ofname + suffix);
+				Files.deleteIfExists(dst.toPath());
+				if (!copyRenamed(src, dst, suffix, ENTRY_NAME, name)) {
+					try {
+						Files.createLink(dst.toPath(), src.toPath());
+					} catch (IOException | UnsupportedOperationException e) {
+						Files.copy(src.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+			}
+			// least recently used entries are evicted first
+			entry.setLastModified(System.currentTimeMillis());
+			return true;
+		} catch (IOException e) {
+			System.err.println("** Warning: Cache entry " + entry + " could not be used (" + e + ")");
+			return false;
+		}
+	}
+
+	/**
+	 * Stores the output files in the cache, and evicts the least recently used entries if the cache exceeds its maximum size.
+	 * The entry is written in a temporary folder and then renamed, so that concurrent readers never see a partial entry.
+	 */
+	public boolean store (String key, String ofname, List<String> suffixes) {
+		File entry = new File(folder, key);
+		if (entry.isDirectory()) { return true; }
+		File tmp = new File(folder, key + ".tmp-" + Thread.currentThread().getId() + "-" + System.nanoTime());
+		try {
+			Files.createDirectories(tmp.toPath());
+			String name = new File(ofname).getName();
+			for (String suffix : suffixes) {
+				File src = new File(ofname + suffix);
+				File dst = new File(tmp, ENTRY_NAME + suffix);
+				if (!copyRenamed(src, dst, suffix, name, ENTRY_NAME)) {
+					Files.copy(src.toPath(), dst.toPath());
+				}
+			}
+			if (!tmp.renameTo(entry)) {
+				// another process stored the same entry
+				delete(tmp);
+			}
+		} catch (IOException e) {
+			System.err.println("** Warning: Results could not be stored in cache " + folder + " (" + e + ")");
+			delete(tmp);
+			return false;
+		}
+		evict();
+		return true;
+	}
+
+	/**
+	 * Utility function, copies the files that contain the output file name, replacing the name
+	 * @return false if the file does not contain the output file name
+	 */
+	protected boolean copyRenamed (File src, File dst, String suffix, String from, String to) throws IOException {
+		if (suffix.equals(".files")) {
+			Charset charset = Charset.defaultCharset();
+			String files = new String(Files.readAllBytes(src.toPath()), charset);
+			files = files.replace("\"file\": \"" + from, "\"file\": \"" + to);
+			Files.write(dst.toPath(), files.getBytes(charset));
+			return true;
+		}
+		if (suffix.equals(".index")) {
+			DAAChunkIndex.copy(src.getPath(), dst.getPath(), from, to);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Evicts the least recently used entries until the size of the cache is below the maximum size
+	 */
+	public void evict () {
+		File entries[] = folder.listFiles(f -> f.isDirectory() && !f.getName().contains(".tmp-"));
+		if (entries == null) { return; }
+		long sizes[] = new long[entries.length];
+		long total = 0;
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < entries.length; i++) {
+			sizes[i] = size(entries[i]);
+			total += sizes[i];
+		}
+		for (int i = 0; i < entries.length && total > maxSize; i++) {
+			System.out.println("[DAAResultCache] Evicting " + entries[i].getName());
+			delete(entries[i]);
+			total -= sizes[i];
+		}
+	}
+
+	protected static long size (File dir) {
+		long size = 0;
+		File files[] = dir.listFiles();
+		if (files != null) {
+			for (File f : files) { size += f.length(); }
+		}
+		return size;
+	}
+
+	protected static void delete (File dir) {
+		File files[] = dir.listFiles();
+		if (files != null) {
+			for (File f : files) { f.delete(); }
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,229 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gov.nasa.larcfm.ACCoRD.BandsRegion;
+import gov.nasa.larcfm.ACCoRD.RecoveryInformation;
+import gov.nasa.larcfm.ACCoRD.TrafficState;
+import gov.nasa.larcfm.Util.Interval;
+import gov.nasa.larcfm.Util.Position;
+import gov.nasa.larcfm.Util.Velocity;
+
+/**
+ * Snapshot of the results computed by DAIDALUS at one time step.
+ * A snapshot holds everything needed to print the output records of the time step, 
+ * so that the records can be printed without querying the Daidalus object, e.g., in a different thread.
+ * The snapshot is also the input of the monitors (see DAAMonitorsV2.check), so each DAIDALUS query is performed once per time step.
+ * Snapshots are reusable: the per-traffic entries are kept when the snapshot is reset, and overwritten by the next time step.
+ */
+public class DAAStepSnapshot {
+
+	/**
+	 * Aircraft state, in internal units
+	 */
+	public static class AircraftState {
+		public String id;
+		public double sx, sy, sz;
+		public double vx, vy, vz;
+		public double altitude;
+		public double track;
+		public double heading;
+		public double groundspeed;
+		public double airspeed;
+		public double verticalspeed;
+		public boolean wind;
+
+		public AircraftState set (TrafficState ac, boolean wind) {
+			Velocity av = ac.getAirVelocity();
+			Velocity gv = ac.getGroundVelocity();
+			id = ac.getId();
+			sx = ac.get_s().x; sy = ac.get_s().y; sz = ac.get_s().z;
+			vx = ac.get_v().x; vy = ac.get_v().y; vz = ac.get_v().z;
+			altitude = ac.altitude();
+			track = gv.compassAngle();
+			heading = ac.horizontalDirection();
+			groundspeed = gv.gs();
+			airspeed = av.gs();
+			verticalspeed = ac.verticalSpeed();
+			this.wind = wind;
+			return this;
+		}
+	}
+
+	/**
+	 * Alert and metrics of a traffic aircraft, in internal units
+	 */
+	public static class Traffic {
+		public AircraftState state = new AircraftState();
+		// alert
+		public int alertLevel;
+		public BandsRegion alertRegion;
+		public String alerter;
+		public int alerterIndex;
+		// metrics
+		public double horizontalSeparation, verticalSeparation;
+		public double horizontalMissDistance, verticalMissDistance;
+		public double horizontalClosureRate, verticalClosureRate;
+		public double tcpa, tcoa, taumod;
+		// polygons
+		public List<List<Position>> contours = new ArrayList<List<Position>>();
+		public List<Position> violationZone = new ArrayList<Position>();
+		public List<Position> conflictZone = new ArrayList<Position>();
+	}
+
+	/**
+	 * Bands of one dimension, ranges are in the units of the output
+	 */
+	public static class Bands {
+		public List<Interval> ranges = new ArrayList<Interval>();
+		public List<BandsRegion> regions = new ArrayList<BandsRegion>();
+
+		public void clear () {
+			ranges.clear();
+			regions.clear();
+		}
+		public void add (Interval range, BandsRegion region) {
+			ranges.add(range);
+			regions.add(region);
+		}
+		public int size () {
+			return ranges.size();
+		}
+	}
+
+	/**
+	 * Resolutions and recovery information of one dimension, in internal units
+	 */
+	public static class Resolution {
+		public double preferredResolution;
+		public double otherResolution;
+		public BandsRegion preferredRegion;
+		public BandsRegion otherRegion;
+		public boolean preferred;
+		public boolean recoveryComputed;
+		public boolean recoverySaturated;
+		public double timeToRecovery;
+		public int nFactor;
+		public double recoveryHorizontalDistance;
+		public double recoveryVerticalDistance;
+
+		public void set (double res, double res_sec, BandsRegion region, BandsRegion region_sec, boolean preferred, RecoveryInformation recoveryInfo) {
+			preferredResolution = res;
+			otherResolution = res_sec;
+			preferredRegion = region;
+			otherRegion = region_sec;
+			this.preferred = preferred;
+			recoveryComputed = recoveryInfo.recoveryBandsComputed();
+			recoverySaturated = recoveryInfo.recoveryBandsSaturated();
+			timeToRecovery = recoveryInfo.timeToRecovery();
+			nFactor = recoveryInfo.nFactor();
+			recoveryHorizontalDistance = recoveryInfo.recoveryHorizontalDistance();
+			recoveryVerticalDistance = recoveryInfo.recoveryVerticalDistance();
+		}
+	}
+
+	public double time;
+
+	// ownship
+	public AircraftState ownship = new AircraftState();
+	public Position ownshipPosition;
+	public BandsRegion trkRegion;
+	public BandsRegion gsRegion;
+	public BandsRegion vsRegion;
+	public BandsRegion altRegion;
+
+	// wind, from direction
+	public double windDeg;
+	public double windKnot;
+
+	// traffic aircraft, only the first nTraffic entries are valid
+	public int nTraffic;
+	public int correctiveRegionOrder; // order of the corrective region of the ownship, used by the monitors
+	protected List<Traffic> traffic = new ArrayList<Traffic>();
+
+	// bands
+	public Bands trkBands = new Bands();
+	public Bands gsBands = new Bands();
+	public Bands vsBands = new Bands();
+	public Bands altBands = new Bands();
+
+	// resolutions
+	public Resolution trkResolution = new Resolution();
+	public Resolution gsResolution = new Resolution();
+	public Resolution vsResolution = new Resolution();
+	public Resolution altResolution = new Resolution();
+
+	// verdicts of the monitors, DAAMonitor.DIMENSIONS verdicts for each monitor (see DAAMonitorsV2.check), valid when monitored is true
+	public byte monitors[] = new byte[DAAMonitorsV2.getSize() * DAAMonitor.DIMENSIONS];
+	public boolean monitored;
+
+	// stats (min/max values and most severe alert level)
+	public String stats;
+
+	/**
+	 * Prepares the snapshot for a new time step with n traffic aircraft
+	 */
+	public void reset (int n) {
+		nTraffic = n;
+		while (traffic.size() < n) {
+			traffic.add(new Traffic());
+		}
+		for (int i = 0; i < n; i++) {
+			Traffic ac = traffic.get(i);
+			ac.contours.clear();
+			ac.violationZone.clear();
+			ac.conflictZone.clear();
+		}
+		trkBands.clear();
+		gsBands.clear();
+		vsBands.clear();
+		altBands.clear();
+		monitored = false;
+		stats = null;
+	}
+
+	/**
+	 * Returns the traffic aircraft with index ac (traffic indexes start from 1, as in Daidalus)
+	 */
+	public Traffic getTraffic (int ac) {
+		return traffic.get(ac - 1);
+	}
+}
@@ -0,0 +1,338 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import gov.nasa.larcfm.ACCoRD.Daidalus;
+import gov.nasa.larcfm.Util.Position;
+import gov.nasa.larcfm.Util.Units;
+import gov.nasa.larcfm.Util.Velocity;
+
+/**
+ * Incremental reader of aircraft states (see --tail), reads a file that is still being written, or a named pipe, 
+ * in the same column format accepted by DaidalusFileWalker: a header line with the column names, an optional line 
+ * with the units, and one line per aircraft state. The first column is the aircraft name, positions are given 
+ * as lat/lon/alt or sx/sy/sz, velocities as vx/vy/vz or trk/gs/vs, the time column is time (or tm). 
+ * Other columns are ignored. Lines are separated by commas and/or spaces, lines starting with # are comments.
+ *
+ * Lines are read on a separate thread, so a time step can be completed while the input is idle: 
+ * a time step is complete when a state with a different time arrives, or when no state arrives for flushDelay 
+ * milliseconds, which bounds the latency of the last step of a burst. States that arrive after their step 
+ * has been completed are discarded with a warning, as are malformed lines (e.g., a line being written when the reader 
+ * was started, or a state with a non-numeric value).
+ * A named pipe ends when the writer closes it, a regular file ends when it does not grow for idleTimeout milliseconds 
+ * (never, if idleTimeout <= 0).
+ */
+public class DAATailReader {
+	public static final long POLL_INTERVAL = 10; // ms, polling interval of a regular file at end of file
+	protected static final Line END = new Line(null, 0);
+
+	/**
+	 * A line of the input, with the time when it was received
+	 */
+	protected static class Line {
+		public final String text;
+		public final long arrival; // System.nanoTime()
+		public Line (String text, long arrival) {
+			this.text = text;
+			this.arrival = arrival;
+		}
+	}
+
+	/**
+	 * The states of a time step
+	 */
+	public static class Step {
+		public double time; // in seconds
+		public List<String[]> states = new ArrayList<String[]>();
+		public long arrival; // System.nanoTime() when the last state of the step was received
+	}
+
+	protected final String fname;
+	protected final long flushDelay;
+	protected final long idleTimeout;
+	protected final BlockingQueue<Line> lines = new LinkedBlockingQueue<Line>();
+	protected Thread thread = null;
+	protected volatile boolean stopped = false;
+
+	// header
+	protected String columns[] = null;
+	protected String units[] = null;
+	protected int lat, lon, alt, vx, vy, vz, time;
+	protected int last; // last column used
+	protected boolean latlon, trkgsvs;
+
+	// time step being assembled
+	protected Step pending = null;
+	protected double lastTime = Double.NaN; // time of the last completed step
+	protected int discarded = 0;
+
+	public DAATailReader (String fname, long flushDelay, long idleTimeout) {
+		this.fname = fname;
+		this.flushDelay = flushDelay;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Starts reading the input
+	 */
+	public void start () {
+		thread = new Thread(() -> readLines());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop () {
+		stopped = true;
+		if (thread != null) { thread.interrupt(); }
+	}
+
+	/**
+	 * Number of states discarded because they arrived after their time step was completed
+	 */
+	public int getDiscarded () {
+		return discarded;
+	}
+
+	/**
+	 * Reader thread, splits the input in lines. A line is queued only when its line separator has been read, 
+	 * because the writer may not have completed it yet.
+	 */
+	protected void readLines () {
+		boolean regularFile = new File(fname).isFile();
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		Charset charset = Charset.defaultCharset();
+		try (InputStream in = new FileInputStream(fname)) {
+			byte buffer[] = new byte[1 << 16];
+			long idleSince = System.nanoTime();
+			while (!stopped) {
+				int n = in.read(buffer);
+				if (n < 0) {
+					if (!regularFile) { break; }
+					if (idleTimeout > 0 && System.nanoTime() - idleSince >= idleTimeout * 1000000L) { break; }
+					Thread.sleep(POLL_INTERVAL);
+					continue;
+				}
+				long arrival = System.nanoTime();
+				idleSince = arrival;
+				int start = 0;
+				for (int i = 0; i < n; i++) {
+					if (buffer[i] == '\n') {
+						line.write(buffer, start, i - start);
+						lines.put(new Line(new String(line.toByteArray(), charset), arrival));
+						line.reset();
+						start = i + 1;
+					}
+				}
+				line.write(buffer, start, n - start);
+			}
+			if (line.size() > 0) {
+				lines.put(new Line(new String(line.toByteArray(), charset), System.nanoTime()));
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} catch (IOException e) {
+			System.err.println("** Error: " + e);
+		}
+		lines.add(END);
+	}
+
+	/**
+	 * Returns the next complete time step, waits until the step is complete, null at the end of the input
+	 */
+	public Step next () throws InterruptedException {
+		while (true) {
+			Line line = pending != null ? lines.poll(flushDelay, TimeUnit.MILLISECONDS) : lines.take();
+			if (line == null || line == END) {
+				// input idle for flushDelay, or end of input: the pending step is complete
+				// (the end marker is queued again for the next call)
+				if (line == END) { lines.add(END); }
+				Step step = pending;
+				pending = null;
+				if (step != null) {
+					lastTime = step.time;
+					return step;
+				}
+				if (line == END) { return null; }
+				continue;
+			}
+			String text = line.text.trim();
+			if (text.isEmpty() || text.startsWith("#")) { continue; }
+			String fields[] = text.split("[,\\s]+");
+			if (columns == null) {
+				try {
+					parseHeader(fields);
+				} catch (IllegalArgumentException e) {
+					System.err.println("** Warning: " + e.getMessage() + ", the line is discarded");
+				}
+				continue;
+			}
+			if (units == null) {
+				units = new String[columns.length];
+				if (fields[0].startsWith("[") || fields[0].equalsIgnoreCase("unitless")) {
+					for (int i = 0; i < units.length; i++) {
+						units[i] = i < fields.length ? fields[i].replace("[", "").replace("]", "") : "unspecified";
+					}
+					continue;
+				}
+				setDefaultUnits();
+			}
+			if (fields.length <= last) {
+				System.err.println("** Warning: Incomplete state (" + text + ")");
+				continue;
+			}
+			double t = 0;
+			try {
+				t = Units.from(units[time], Double.parseDouble(fields[time]));
+				for (int i : new int[] { lat, lon, alt, vx, vy, vz }) { Double.parseDouble(fields[i]); }
+			} catch (NumberFormatException e) {
+				System.err.println("** Warning: Invalid state (" + text + ")");
+				continue;
+			}
+			if (t <= lastTime) {
+				// the step has already been completed
+				discarded++;
+				System.err.println("** Warning: State of " + fields[0] + " at time " + t + " arrived late and was discarded");
+				continue;
+			}
+			Step step = null;
+			if (pending != null && pending.time != t) {
+				step = pending;
+				pending = null;
+				lastTime = step.time;
+			}
+			if (pending == null) {
+				pending = new Step();
+				pending.time = t;
+			}
+			pending.states.add(fields);
+			pending.arrival = line.arrival;
+			if (step != null) { return step; }
+		}
+	}
+
+	protected int indexOf (String... names) {
+		for (int i = 0; i < columns.length; i++) {
+			for (String name : names) {
+				if (columns[i].equalsIgnoreCase(name)) { return i; }
+			}
+		}
+		return -1;
+	}
+
+	protected void parseHeader (String fields[]) {
+		columns = fields;
+		latlon = indexOf("lat") >= 0;
+		lat = latlon ? indexOf("lat") : indexOf("sx");
+		lon = latlon ? indexOf("lon") : indexOf("sy");
+		alt = latlon ? indexOf("alt") : indexOf("sz");
+		trkgsvs = indexOf("vx") < 0;
+		vx = trkgsvs ? indexOf("trk") : indexOf("vx");
+		vy = trkgsvs ? indexOf("gs") : indexOf("vy");
+		vz = trkgsvs ? indexOf("vs") : indexOf("vz");
+		time = indexOf("time", "tm");
+		last = Math.max(Math.max(Math.max(lat, lon), Math.max(alt, vx)), Math.max(Math.max(vy, vz), time));
+		if (lat < 0 || lon < 0 || alt < 0 || vx < 0 || vy < 0 || vz < 0 || time < 0) {
+			columns = null;
+			throw new IllegalArgumentException("Unsupported columns in " + fname + " (" + String.join(" ", fields) + ")");
+		}
+	}
+
+	/**
+	 * Units used when the input does not have a line with the units, same as DaidalusFileWalker
+	 */
+	protected void setDefaultUnits () {
+		for (int i = 0; i < units.length; i++) { units[i] = "unspecified"; }
+		units[lat] = latlon ? "deg" : "nmi";
+		units[lon] = latlon ? "deg" : "nmi";
+		units[alt] = "ft";
+		units[vx] = trkgsvs ? "deg" : "knot";
+		units[vy] = "knot";
+		units[vz] = "fpm";
+		units[time] = "s";
+	}
+
+	/**
+	 * Loads a time step in the Daidalus object. The ownship is the aircraft with the given name, 
+	 * or the first aircraft of the step if the name is null. Returns false, and the Daidalus object is not modified, 
+	 * if the named ownship is not in the step.
+	 */
+	public boolean load (Step step, Daidalus daa, String ownshipName) {
+		int own = ownshipName != null ? -1 : 0;
+		for (int i = 0; ownshipName != null && i < step.states.size(); i++) {
+			if (step.states.get(i)[0].equals(ownshipName)) { own = i; break; }
+		}
+		if (own < 0) { return false; }
+		String fields[] = step.states.get(own);
+		daa.setOwnshipState(fields[0], getPosition(fields), getVelocity(fields), step.time);
+		for (int i = 0; i < step.states.size(); i++) {
+			if (i != own) {
+				fields = step.states.get(i);
+				daa.addTrafficState(fields[0], getPosition(fields), getVelocity(fields));
+			}
+		}
+		return true;
+	}
+
+	protected Position getPosition (String fields[]) {
+		double a = Double.parseDouble(fields[lat]);
+		double b = Double.parseDouble(fields[lon]);
+		double c = Double.parseDouble(fields[alt]);
+		return latlon ? Position.makeLatLonAlt(a, units[lat], b, units[lon], c, units[alt])
+			: Position.makeXYZ(a, units[lat], b, units[lon], c, units[alt]);
+	}
+
+	protected Velocity getVelocity (String fields[]) {
+		double a = Double.parseDouble(fields[vx]);
+		double b = Double.parseDouble(fields[vy]);
+		double c = Double.parseDouble(fields[vz]);
+		return trkgsvs ? Velocity.makeTrkGsVs(a, units[vx], b, units[vy], c, units[vz])
+			: Velocity.makeVxyz(a, b, units[vx], c, units[vz]);
+	}
+}
@@ -0,0 +1,213 @@
+/**
+
+   Notices:
+
+   Copyright 2016 United States Government as represented by the
+   Administrator of the National Aeronautics and Space Administration. No
+   copyright is claimed in the United States under Title 17,
+   U.S. Code. All Other Rights Reserved.
+
+   Disclaimers
+
+   No Warranty: THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY
+   WARRANTY OF ANY KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY,
+   INCLUDING, BUT NOT LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE
+   WILL CONFORM TO SPECIFICATIONS, ANY IMPLIED WARRANTIES OF
+   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR FREEDOM FROM
+   INFRINGEMENT, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL BE ERROR
+   FREE, OR ANY WARRANTY THAT DOCUMENTATION, IF PROVIDED, WILL CONFORM TO
+   THE SUBJECT SOFTWARE. THIS AGREEMENT DOES NOT, IN ANY MANNER,
+   CONSTITUTE AN ENDORSEMENT BY GOVERNMENT AGENCY OR ANY PRIOR RECIPIENT
+   OF ANY RESULTS, RESULTING DESIGNS, HARDWARE, SOFTWARE PRODUCTS OR ANY
+   OTHER APPLICATIONS RESULTING FROM USE OF THE SUBJECT SOFTWARE.
+   FURTHER, GOVERNMENT AGENCY DISCLAIMS ALL WARRANTIES AND LIABILITIES
+   REGARDING THIRD-PARTY SOFTWARE, IF PRESENT IN THE ORIGINAL SOFTWARE,
+   AND DISTRIBUTES IT "AS IS."
+
+   Waiver and Indemnity: RECIPIENT AGREES TO WAIVE ANY AND ALL CLAIMS
+   AGAINST THE UNITED STATES GOVERNMENT, ITS CONTRACTORS AND
+   SUBCONTRACTORS, AS WELL AS ANY PRIOR RECIPIENT.  IF RECIPIENT'S USE OF
+   THE SUBJECT SOFTWARE RESULTS IN ANY LIABILITIES, DEMANDS, DAMAGES,
+   EXPENSES OR LOSSES ARISING FROM SUCH USE, INCLUDING ANY DAMAGES FROM
+   PRODUCTS BASED ON, OR RESULTING FROM, RECIPIENT'S USE OF THE SUBJECT
+   SOFTWARE, RECIPIENT SHALL INDEMNIFY AND HOLD HARMLESS THE UNITED
+   STATES GOVERNMENT, ITS CONTRACTORS AND SUBCONTRACTORS, AS WELL AS ANY
+   PRIOR RECIPIENT, TO THE EXTENT PERMITTED BY LAW.  RECIPIENT'S SOLE
+   REMEDY FOR ANY SUCH MATTER SHALL BE THE IMMEDIATE, UNILATERAL
+   TERMINATION OF THIS AGREEMENT.
+ **/
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results of the time steps processed so far, one list of json records for each section of the output
+ */
+class JsonBands {
+	public DAAJsonWriter json; // reusable buffer, used to build the records of each time step
+	public DAAStepSnapshot snapshot; // reusable snapshot of the results of each time step
+	public DAAMonitorsV2 monitors;
+	public DAABinaryWriter binary; // results in binary format (--format bin), null in json mode
+	public List<Double> stepTimes; // time of each step, used to index the chunk files
+	public List<String> ownshipArray;
+	public List<String> alertsArray;
+	public List<String> metricsArray; 
+	public List<String> windVectorsArray; 
+	public List<String> trkArray;
+	public List<String> gsArray;
+	public List<String> vsArray;
+	public List<String> altArray; 
+	public List<String> resTrkArray; 
+	public List<String> resGsArray;
+	public List<String> resVsArray; 
+	public List<String> resAltArray; 
+	public List<String> contoursArray;
+	public List<String> hazardZonesArray;
+	public List<List<String>> monitorArrays; // results of each monitor (see DAAMonitorsV2)
+
+	/**
+	 * Constructor
+	 */
+	public JsonBands () {
+		json = new DAAJsonWriter();
+		snapshot = new DAAStepSnapshot();
+		stepTimes = new ArrayList<Double>();
+
+		trkArray = new ArrayList<String>();
+		gsArray = new ArrayList<String>();
+		vsArray = new ArrayList<String>();
+		altArray = new ArrayList<String>();
+		alertsArray = new ArrayList<String>();
+
+		windVectorsArray = new ArrayList<String>();
+
+		ownshipArray = new ArrayList<String>();
+		metricsArray = new ArrayList<String>();
+
+		resTrkArray = new ArrayList<String>();
+		resGsArray = new ArrayList<String>();
+		resVsArray = new ArrayList<String>();
+		resAltArray = new ArrayList<String>();
+
+		contoursArray = new ArrayList<String>();
+		hazardZonesArray = new ArrayList<String>();
+
+		monitors = new DAAMonitorsV2();
+		monitorArrays = new ArrayList<List<String>>();
+		for (int i = 0; i < monitors.monitors.length; i++) {
+			monitorArrays.add(new ArrayList<String>());
+		}
+	}
+
+	/**
+	 * Releases the data collected so far, used in streaming mode once the data has been written to file
+	 */
+	public void clear () {
+		stepTimes.clear();
+		trkArray.clear();
+		gsArray.clear();
+		vsArray.clear();
+		altArray.clear();
+		alertsArray.clear();
+
+		windVectorsArray.clear();
+
+		ownshipArray.clear();
+		metricsArray.clear();
+
+		resTrkArray.clear();
+		resGsArray.clear();
+		resVsArray.clear();
+		resAltArray.clear();
+
+		contoursArray.clear();
+		hazardZonesArray.clear();
+
+		for (List<String> array: monitorArrays) {
+			array.clear();
+		}
+
+		if (binary != null) { binary.clear(); }
+	}
+
+	/**
+	 * Labels of the lists returned by getArrays, used in diagnostic messages, the lists of the monitors follow (monitor-1, monitor-2, ...)
+	 */
+	public static final String arrayLabels[] = {
+		"ownship", "alerts", "wind", "metrics",
+		"hd-bands", "hs-bands", "vs-bands", "alt-bands",
+		"hd-res", "hs-res", "vs-res", "alt-res",
+		"contours", "hazardzones"
+	};
+
+	/**
+	 * Returns the label of the i-th list returned by getArrays
+	 */
+	public static String getArrayLabel (int i) {
+		return i < arrayLabels.length ? arrayLabels[i] : "monitor-" + (i - arrayLabels.length + 1);
+	}
+
+	/**
+	 * Returns all the lists of results, in the order given by arrayLabels
+	 */
+	public List<List<String>> getArrays () {
+		List<List<String>> arrays = new ArrayList<List<String>>();
+		arrays.add(ownshipArray);
+		arrays.add(alertsArray);
+		arrays.add(windVectorsArray);
+		arrays.add(metricsArray);
+		arrays.add(trkArray);
+		arrays.add(gsArray);
+		arrays.add(vsArray);
+		arrays.add(altArray);
+		arrays.add(resTrkArray);
+		arrays.add(resGsArray);
+		arrays.add(resVsArray);
+		arrays.add(resAltArray);
+		arrays.add(contoursArray);
+		arrays.add(hazardZonesArray);
+		arrays.addAll(monitorArrays);
+		return arrays;
+	}
+
+	/**
+	 * Appends the results collected in jb, used to stitch together the results of consecutive time segments
+	 */
+	public void append (JsonBands jb) {
+		appendRecords(jb);
+		monitors.merge(jb.monitors);
+	}
+
+	/**
+	 * Appends the records collected in jb, without merging the monitors. Used by the writer stage of the pipeline, 
+	 * where the monitors are updated by the serializer stage only.
+	 */
+	public void appendRecords (JsonBands jb) {
+		List<List<String>> arrays = getArrays();
+		List<List<String>> other = jb.getArrays();
+		for (int i = 0; i < arrays.size(); i++) {
+			arrays.get(i).addAll(other.get(i));
+		}
+		stepTimes.addAll(jb.stepTimes);
+		if (jb.binary != null) {
+			if (binary == null) { binary = new DAABinaryWriter(jb.binary.metrics); }
+			binary.append(jb.binary);
+		}
+	}
+
+	/**
+	 * Returns the number of chars of the records collected so far, used for the flight recorder events (see DAAFlightRecorder)
+	 * @param last If true, only the last record of each list is counted, i.e., the records of the last time step
+	 */
+	public long size (boolean last) {
+		long size = 0;
+		for (List<String> array: getArrays()) {
+			if (last) {
+				size += array.isEmpty() ? 0 : array.get(array.size() - 1).length();
+			} else {
+				for (String record: array) { size += record.length(); }
+			}
+		}
+		return size;
+	}
+}